@@ -0,0 +1,239 @@
+package se.kth.iv1351.db.soundgood.benchmark;
+
+import se.kth.iv1351.db.soundgood.integration.SchemaMigrator;
+import se.kth.iv1351.db.soundgood.model.CatalogSnapshot;
+import se.kth.iv1351.db.soundgood.model.RentalInstrument;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates and seeds the database the benchmarks run against. By default this is a
+ * local PostgreSQL database named <code>soundgood_bench</code>, another database is
+ * selected with the same <code>soundgood.db.*</code> properties as the application.
+ *
+ * The read benchmarks also run against an embedded H2 database in PostgreSQL mode,
+ * f.e. <code>-Dsoundgood.db.url=jdbc:h2:mem:soundgood;MODE=PostgreSQL;DB_CLOSE_DELAY=-1</code>.
+ * The rent and terminate statements use data-modifying CTEs, so
+ * {@link ControllerBenchmark} needs a real PostgreSQL database. A PostgreSQL database
+ * is created by the application's schema migrations, including their indexes. H2 gets
+ * the same tables without the PostgreSQL specific indexes.
+ *
+ * The seeded database is dropped and recreated, never point the benchmarks at a
+ * database with data that should be kept.
+ */
+public class BenchmarkDatabase {
+
+    static final String DEFAULT_URL = "jdbc:postgresql://localhost:5432/soundgood_bench";
+
+    /**
+     * The instrument names in the seeded catalog, each name is one instrument type.
+     */
+    public static final String[] INSTRUMENT_NAMES =
+            {"guitar", "piano", "violin", "cello", "drums", "flute", "saxophone", "trumpet"};
+
+    private static final String[] BRANDS = {"Yamaha", "Fender", "Gibson", "Steinway", "Roland", "Pearl"};
+    private static final String[] CONDITIONS = {"excellent", "good", "fair", "poor"};
+    private static final int INSERT_BATCH_SIZE = 1000;
+    private static final int LAST_CATALOG_MIGRATION = 5;
+
+    private BenchmarkDatabase() {
+    }
+
+    /**
+     * Points the application at the benchmark database, unless another database has
+     * been configured. Must be called before a DAO is created.
+     */
+    public static void configure() {
+        if (System.getProperty("soundgood.db.url") == null) {
+            System.setProperty("soundgood.db.url", DEFAULT_URL);
+        }
+        if (!isPostgreSQL() && System.getProperty("soundgood.db.migrate") == null) {
+            System.setProperty("soundgood.db.migrate", "false");
+        }
+        if (!isPostgreSQL() && System.getProperty("soundgood.archive.intervalMillis") == null) {
+            System.setProperty("soundgood.archive.intervalMillis", "0");
+        }
+        if (!isPostgreSQL() && System.getProperty("soundgood.changeEvents") == null) {
+            System.setProperty("soundgood.changeEvents", "false");
+        }
+        if (!isPostgreSQL() && System.getProperty("soundgood.rentalSummaries") == null) {
+            System.setProperty("soundgood.rentalSummaries", "false");
+        }
+    }
+
+    /**
+     * Recreates the schema and seeds a catalog of the specified size. Rental ids are
+     * 0 to catalogSize - 1. Every instrument whose id is divisible by four is rented,
+     * all other instruments are available.
+     *
+     * @param catalogSize The number of rental instruments.
+     * @throws SQLException If the database could not be seeded.
+     */
+    public static void seed(int catalogSize) throws SQLException {
+        configure();
+
+        try (Connection connection = openConnection()) {
+            connection.setAutoCommit(false);
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS rental_instrument");
+                statement.execute("DROP TABLE IF EXISTS rental_history");
+                statement.execute("DROP TABLE IF EXISTS overdue_scan");
+                statement.execute("DROP TABLE IF EXISTS rental_utilization");
+                statement.execute("DROP TABLE IF EXISTS monthly_rental_revenue");
+                statement.execute("DROP TABLE IF EXISTS instrument");
+                statement.execute("DROP TABLE IF EXISTS soundgood_schema_version");
+            }
+
+            if (isPostgreSQL()) {
+                SchemaMigrator.migrate(connection, LAST_CATALOG_MIGRATION);
+            } else {
+                createTables(connection);
+            }
+
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO instrument (id, name, type) VALUES (?, ?, ?)")) {
+                for (int i = 0; i < INSTRUMENT_NAMES.length; i++) {
+                    insert.setInt(1, i);
+                    insert.setString(2, INSTRUMENT_NAMES[i]);
+                    insert.setString(3, i < 4 ? "string" : "wind");
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+
+            Timestamp returnDate = new Timestamp(System.currentTimeMillis() + 30L * 24 * 3600 * 1000);
+
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO rental_instrument (rental_instrument_foreign_id, brand, is_available, condition,"
+                            + " instrument_id, student_id, return_date, monthly_cost, terminated)"
+                            + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, false)")) {
+                for (int id = 0; id < catalogSize; id++) {
+                    boolean rented = id % 4 == 0;
+                    insert.setString(1, String.valueOf(id));
+                    insert.setString(2, BRANDS[id % BRANDS.length]);
+                    insert.setBoolean(3, !rented);
+                    insert.setString(4, CONDITIONS[id % CONDITIONS.length]);
+                    insert.setInt(5, id % INSTRUMENT_NAMES.length);
+                    insert.setString(6, rented ? "s" + id : null);
+                    insert.setTimestamp(7, rented ? returnDate : null);
+                    insert.setDouble(8, 100 + (id % 50) * 10);
+                    insert.addBatch();
+                    if (id % INSERT_BATCH_SIZE == INSERT_BATCH_SIZE - 1) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+
+            // The rental summaries are computed from the seeded rentals by their migration.
+            if (isPostgreSQL()) {
+                SchemaMigrator.migrate(connection);
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ANALYZE rental_instrument");
+            } catch (SQLException notSupported) {
+                // Embedded databases without ANALYZE are fine for benchmarking.
+            }
+
+            connection.commit();
+        }
+    }
+
+    /**
+     * Creates the same catalog as {@link #seed}, in memory and in catalog order. Every
+     * string is a separate object, as when it is read from a result set.
+     *
+     * @param catalogSize The number of rental instruments.
+     * @return The instruments of the seeded catalog.
+     */
+    public static List<RentalInstrument> catalog(int catalogSize) {
+        Timestamp returnDate = new Timestamp(System.currentTimeMillis() + 30L * 24 * 3600 * 1000);
+        List<RentalInstrument> instruments = new ArrayList<>(catalogSize);
+
+        for (int id = 0; id < catalogSize; id++) {
+            boolean rented = id % 4 == 0;
+            int instrumentId = id % INSTRUMENT_NAMES.length;
+            instruments.add(new RentalInstrument(
+                    String.valueOf(id),
+                    new String(BRANDS[id % BRANDS.length]),
+                    new String(INSTRUMENT_NAMES[instrumentId]),
+                    new String(instrumentId < 4 ? "string" : "wind"),
+                    !rented,
+                    100 + (id % 50) * 10,
+                    new String(CONDITIONS[id % CONDITIONS.length]),
+                    instrumentId,
+                    rented ? new Timestamp(returnDate.getTime()) : null,
+                    rented ? "s" + id : null));
+        }
+
+        instruments.sort(CatalogSnapshot.CATALOG_ORDER);
+        return instruments;
+    }
+
+    /**
+     * Creates the tables of the migration scripts for databases that can't run them.
+     */
+    private static void createTables(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE instrument ("
+                    + " id INT PRIMARY KEY,"
+                    + " name VARCHAR(100) NOT NULL,"
+                    + " type VARCHAR(100) NOT NULL)");
+            statement.execute("CREATE TABLE rental_instrument ("
+                    + " rental_instrument_foreign_id VARCHAR(20) NOT NULL,"
+                    + " brand VARCHAR(100),"
+                    + " is_available BOOLEAN NOT NULL,"
+                    + " condition VARCHAR(50),"
+                    + " instrument_id INT NOT NULL REFERENCES instrument (id),"
+                    + " student_id VARCHAR(20),"
+                    + " return_date TIMESTAMP,"
+                    + " monthly_cost DECIMAL(10, 2) NOT NULL,"
+                    + " terminated BOOLEAN NOT NULL,"
+                    + " version INT NOT NULL DEFAULT 0)");
+        }
+    }
+
+    /**
+     * @return A new connection to the benchmark database, with auto commit on.
+     * @throws SQLException If unable to connect.
+     */
+    public static Connection openConnection() throws SQLException {
+        configure();
+        return DriverManager.getConnection(System.getProperty("soundgood.db.url"),
+                System.getProperty("soundgood.db.user", "postgres"),
+                System.getProperty("soundgood.db.password", "VgS4HN"));
+    }
+
+    /**
+     * @return <code>true</code> if the benchmark database is a PostgreSQL database.
+     */
+    public static boolean isPostgreSQL() {
+        return System.getProperty("soundgood.db.url", DEFAULT_URL).startsWith("jdbc:postgresql:");
+    }
+
+    /**
+     * Returns the id of an available instrument that no other benchmark thread uses.
+     *
+     * @param threadIndex  A number unique to the calling thread, starting at zero.
+     * @param offset       1, 2 or 3, so that one thread can own three different instruments.
+     * @param catalogSize  The size of the seeded catalog.
+     * @return The rental id of an instrument that is available after seeding.
+     */
+    public static String availableInstrumentFor(int threadIndex, int offset, int catalogSize) {
+        int id = 4 * threadIndex + offset;
+        if (id >= catalogSize) {
+            throw new IllegalStateException("Catalog of size " + catalogSize + " is too small for "
+                    + (threadIndex + 1) + " threads");
+        }
+        return String.valueOf(id);
+    }
+}
@@ -0,0 +1,52 @@
+package se.kth.iv1351.db.soundgood.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs all benchmarks, first with one thread and then with one thread per
+ * processor, with allocation profiling turned on.
+ *
+ * The catalog size is set with <code>-Dsoundgood.bench.catalogSize=...</code>, a
+ * comma separated list of sizes, and a regular expression selecting benchmarks may
+ * be given as the first argument. The <code>soundgood.db.*</code> properties are
+ * passed on to the forked benchmark JVMs.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "se\\.kth\\.iv1351\\.db\\.soundgood\\..*Benchmark";
+        String[] catalogSizes = System.getProperty("soundgood.bench.catalogSize", "1000,100000").split(",");
+        int[] threadCounts = {1, Runtime.getRuntime().availableProcessors()};
+
+        for (int threads : threadCounts) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .param("catalogSize", catalogSizes)
+                    .threads(threads)
+                    .forks(1)
+                    .warmupIterations(3)
+                    .measurementIterations(5)
+                    .addProfiler(GCProfiler.class)
+                    .jvmArgsAppend(databaseProperties());
+
+            new Runner(options.build()).run();
+        }
+    }
+
+    private static String[] databaseProperties() {
+        List<String> properties = new ArrayList<>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("soundgood.")) {
+                properties.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        return properties.toArray(new String[0]);
+    }
+}
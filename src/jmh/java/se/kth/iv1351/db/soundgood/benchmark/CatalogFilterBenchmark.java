@@ -0,0 +1,94 @@
+package se.kth.iv1351.db.soundgood.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import se.kth.iv1351.db.soundgood.model.CatalogFilter;
+import se.kth.iv1351.db.soundgood.model.ColumnarCatalog;
+import se.kth.iv1351.db.soundgood.model.RentalInstrument;
+import se.kth.iv1351.db.soundgood.model.RentalInstrumentDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares filtering the catalog as a list of instrument objects against the
+ * {@link ColumnarCatalog}, for a selective filter ("available pianos costing at most
+ * 300 kr") and a broad one (all available instruments). Needs no database.
+ *
+ * The build benchmarks create each structure from the instruments' values. With the
+ * GC profiler, their <code>gc.alloc.rate.norm</code> is the memory each structure
+ * takes for the whole catalog.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class CatalogFilterBenchmark {
+
+    private static final CatalogFilter SELECTIVE = new CatalogFilter("piano", true, null, 300.0, null);
+    private static final CatalogFilter BROAD = new CatalogFilter(null, true, null, null, null);
+
+    @Param({"1000", "100000"})
+    public int catalogSize;
+
+    private List<RentalInstrument> objects;
+    private ColumnarCatalog columns;
+
+    @Setup(Level.Trial)
+    public void build() {
+        objects = BenchmarkDatabase.catalog(catalogSize);
+        columns = new ColumnarCatalog(objects);
+    }
+
+    @Benchmark
+    public List<RentalInstrumentDTO> selectiveFilterOfObjects() {
+        return filterObjects(SELECTIVE);
+    }
+
+    @Benchmark
+    public List<RentalInstrumentDTO> selectiveFilterOfColumns() {
+        return columns.filter(SELECTIVE);
+    }
+
+    @Benchmark
+    public List<RentalInstrumentDTO> broadFilterOfObjects() {
+        return filterObjects(BROAD);
+    }
+
+    @Benchmark
+    public List<RentalInstrumentDTO> broadFilterOfColumns() {
+        return columns.filter(BROAD);
+    }
+
+    @Benchmark
+    public int countOfColumns() {
+        return columns.count(SELECTIVE);
+    }
+
+    @Benchmark
+    public List<RentalInstrument> buildObjects() {
+        return BenchmarkDatabase.catalog(catalogSize);
+    }
+
+    @Benchmark
+    public ColumnarCatalog buildColumns() {
+        return new ColumnarCatalog(objects);
+    }
+
+    private List<RentalInstrumentDTO> filterObjects(CatalogFilter filter) {
+        List<RentalInstrumentDTO> matches = new ArrayList<>();
+        for (RentalInstrument instrument : objects) {
+            if (filter.matches(instrument)) {
+                matches.add(instrument);
+            }
+        }
+        return matches;
+    }
+}
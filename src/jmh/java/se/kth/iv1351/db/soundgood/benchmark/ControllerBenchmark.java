@@ -0,0 +1,106 @@
+package se.kth.iv1351.db.soundgood.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.ThreadParams;
+import se.kth.iv1351.db.soundgood.controller.Controller;
+import se.kth.iv1351.db.soundgood.model.RentalOutcome;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the write paths of {@link Controller}. Each benchmark thread rents and
+ * returns its own instruments, so the threads never compete for the same row.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ControllerBenchmark {
+
+    /**
+     * The controller and the seeded catalog, shared by all benchmark threads.
+     */
+    @State(Scope.Benchmark)
+    public static class Catalog {
+
+        @Param({"1000", "100000"})
+        public int catalogSize;
+
+        Controller controller;
+
+        @Setup(Level.Trial)
+        public void seed() throws Exception {
+            BenchmarkDatabase.seed(catalogSize);
+            controller = new Controller();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            controller.close();
+        }
+    }
+
+    /**
+     * An available instrument, owned by one thread, which is returned again after
+     * each rent.
+     */
+    @State(Scope.Thread)
+    public static class Rent {
+
+        Controller controller;
+        String rentalInstrumentId;
+        String studentId;
+
+        @Setup(Level.Trial)
+        public void pickInstrument(Catalog catalog, ThreadParams thread) {
+            controller = catalog.controller;
+            rentalInstrumentId = BenchmarkDatabase.availableInstrumentFor(thread.getThreadIndex(), 1, catalog.catalogSize);
+            studentId = "bench-rent-" + thread.getThreadIndex();
+        }
+
+        @TearDown(Level.Invocation)
+        public void returnInstrument() throws Exception {
+            controller.terminateRental(rentalInstrumentId);
+        }
+    }
+
+    /**
+     * An instrument, owned by one thread, which is rented before each return.
+     */
+    @State(Scope.Thread)
+    public static class Return {
+
+        Controller controller;
+        String rentalInstrumentId;
+        String studentId;
+
+        @Setup(Level.Trial)
+        public void pickInstrument(Catalog catalog, ThreadParams thread) {
+            controller = catalog.controller;
+            rentalInstrumentId = BenchmarkDatabase.availableInstrumentFor(thread.getThreadIndex(), 2, catalog.catalogSize);
+            studentId = "bench-return-" + thread.getThreadIndex();
+        }
+
+        @Setup(Level.Invocation)
+        public void rentInstrument() throws Exception {
+            controller.rentInstrumentToStudent(rentalInstrumentId, studentId);
+        }
+    }
+
+    @Benchmark
+    public RentalOutcome rentInstrumentToStudent(Rent rent) throws Exception {
+        return rent.controller.rentInstrumentToStudent(rent.rentalInstrumentId, rent.studentId);
+    }
+
+    @Benchmark
+    public RentalOutcome terminateRental(Return rental) throws Exception {
+        return rental.controller.terminateRental(rental.rentalInstrumentId);
+    }
+}
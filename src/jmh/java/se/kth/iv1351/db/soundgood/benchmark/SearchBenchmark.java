@@ -0,0 +1,65 @@
+package se.kth.iv1351.db.soundgood.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import se.kth.iv1351.db.soundgood.model.InstrumentSearchIndex;
+import se.kth.iv1351.db.soundgood.model.RentalInstrument;
+import se.kth.iv1351.db.soundgood.model.RentalInstrumentDTO;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures searches of the {@link InstrumentSearchIndex}, by a prefix of a name, by
+ * a misspelled brand and name, and of available instruments only, as well as one
+ * change of the index. Needs no database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    private static final int LIMIT = 20;
+
+    @Param({"1000", "300000"})
+    public int catalogSize;
+
+    private List<RentalInstrument> instruments;
+    private InstrumentSearchIndex index;
+    private int changed;
+
+    @Setup(Level.Trial)
+    public void build() {
+        instruments = BenchmarkDatabase.catalog(catalogSize);
+        index = new InstrumentSearchIndex(instruments);
+    }
+
+    @Benchmark
+    public List<RentalInstrumentDTO> prefix() {
+        return index.search("guit", false, LIMIT);
+    }
+
+    @Benchmark
+    public List<RentalInstrumentDTO> misspelled() {
+        return index.search("yamha gutiar", false, LIMIT);
+    }
+
+    @Benchmark
+    public List<RentalInstrumentDTO> availableOnly() {
+        return index.search("pearl drums excellent", true, LIMIT);
+    }
+
+    @Benchmark
+    public int update() {
+        RentalInstrument instrument = instruments.get(changed++ % instruments.size());
+        index.update(instrument.getId(), instrument);
+        return index.size();
+    }
+}
@@ -0,0 +1,69 @@
+package se.kth.iv1351.db.soundgood.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import se.kth.iv1351.db.soundgood.integration.SoundgoodDAO;
+import se.kth.iv1351.db.soundgood.model.RentalInstrumentDTO;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the read queries of {@link SoundgoodDAO} against a seeded catalog.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SoundgoodDAOBenchmark {
+
+    /**
+     * The DAO and the seeded catalog, shared by all benchmark threads.
+     */
+    @State(Scope.Benchmark)
+    public static class Catalog {
+
+        @Param({"1000", "100000"})
+        public int catalogSize;
+
+        SoundgoodDAO dao;
+
+        @Setup(Level.Trial)
+        public void seed() throws Exception {
+            BenchmarkDatabase.seed(catalogSize);
+            dao = new SoundgoodDAO();
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            dao.close();
+        }
+
+        String randomInstrumentId() {
+            return String.valueOf(ThreadLocalRandom.current().nextInt(catalogSize));
+        }
+    }
+
+    @Benchmark
+    public List<? extends RentalInstrumentDTO> findAllRentalInstruments(Catalog catalog) throws Exception {
+        return catalog.dao.findAllRentalInstruments();
+    }
+
+    @Benchmark
+    public List<? extends RentalInstrumentDTO> findAllAvailableRentalInstrumentsByName(Catalog catalog)
+            throws Exception {
+        return catalog.dao.findAllAvailableRentalInstrumentsByName(BenchmarkDatabase.INSTRUMENT_NAMES[0]);
+    }
+
+    @Benchmark
+    public RentalInstrumentDTO findSpecificRentalInstrumentById(Catalog catalog) throws Exception {
+        return catalog.dao.findSpecificRentalInstrumentById(catalog.randomInstrumentId(), false);
+    }
+}
@@ -0,0 +1,90 @@
+package se.kth.iv1351.db.soundgood.integration;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import se.kth.iv1351.db.soundgood.benchmark.BenchmarkDatabase;
+import se.kth.iv1351.db.soundgood.model.RentalInstrument;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading the catalog with <code>SELECT *</code> and a column label lookup
+ * for every value, as the DAO used to, against the explicit projection and the
+ * index based {@link RentalInstrumentMapper}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class RowMappingBenchmark {
+
+    private static final String JOIN =
+            " FROM rental_instrument LEFT JOIN instrument ON rental_instrument.instrument_id = instrument.id"
+                    + " WHERE terminated IS false ORDER BY name, rental_instrument_foreign_id";
+
+    @Param({"1000", "100000"})
+    public int catalogSize;
+
+    private Connection connection;
+    private PreparedStatement selectAll;
+    private PreparedStatement selectColumns;
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException {
+        BenchmarkDatabase.seed(catalogSize);
+        connection = BenchmarkDatabase.openConnection();
+        selectAll = connection.prepareStatement("SELECT *" + JOIN);
+        selectColumns = connection.prepareStatement("SELECT " + RentalInstrumentMapper.COLUMNS + JOIN);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public List<RentalInstrument> selectAllMappedByLabel() throws SQLException {
+        List<RentalInstrument> instruments = new ArrayList<>();
+        try (ResultSet result = selectAll.executeQuery()) {
+            while (result.next()) {
+                instruments.add(new RentalInstrument(
+                        result.getString("rental_instrument_foreign_id"),
+                        result.getString("brand"),
+                        result.getString("name"),
+                        result.getString("type"),
+                        result.getBoolean("is_available"),
+                        result.getDouble("monthly_cost"),
+                        result.getString("condition"),
+                        result.getInt("instrument_id"),
+                        result.getTimestamp("return_date"),
+                        result.getString("student_id")));
+            }
+        }
+        return instruments;
+    }
+
+    @Benchmark
+    public List<RentalInstrument> projectionMappedByIndex() throws SQLException {
+        List<RentalInstrument> instruments = new ArrayList<>();
+        try (ResultSet result = selectColumns.executeQuery()) {
+            RentalInstrumentMapper mapper = new RentalInstrumentMapper(result);
+            while (result.next()) {
+                instruments.add(mapper.map(result));
+            }
+        }
+        return instruments;
+    }
+}
@@ -0,0 +1,78 @@
+package se.kth.iv1351.db.soundgood.view;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import se.kth.iv1351.db.soundgood.benchmark.BenchmarkDatabase;
+import se.kth.iv1351.db.soundgood.model.RentalInstrument;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares printing a listing one <code>println</code> per instrument, as the
+ * interpreter used to, against the {@link InstrumentRenderer} formats. The stream
+ * flushes on every line, like <code>System.out</code>, but discards the output, so
+ * that only formatting and flushing is measured. Needs no database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+    @Param({"1000", "50000"})
+    public int catalogSize;
+
+    private List<RentalInstrument> instruments;
+    private PrintStream out;
+    private InstrumentRenderer renderer;
+
+    @Setup(Level.Trial)
+    public void build() {
+        instruments = BenchmarkDatabase.catalog(catalogSize);
+        out = new PrintStream(new BufferedOutputStream(OutputStream.nullOutputStream()), true);
+        renderer = new InstrumentRenderer(out, Charset.defaultCharset());
+    }
+
+    @Benchmark
+    public int printlnPerInstrument() {
+        for (RentalInstrument instrument : instruments) out.println(instrument);
+        return instruments.size();
+    }
+
+    @Benchmark
+    public int renderText() {
+        return render(InstrumentRenderer.Format.TEXT);
+    }
+
+    @Benchmark
+    public int renderTable() {
+        return render(InstrumentRenderer.Format.TABLE);
+    }
+
+    @Benchmark
+    public int renderCsv() {
+        return render(InstrumentRenderer.Format.CSV);
+    }
+
+    @Benchmark
+    public int renderJson() {
+        return render(InstrumentRenderer.Format.JSON);
+    }
+
+    private int render(InstrumentRenderer.Format format) {
+        renderer.begin(format);
+        for (RentalInstrument instrument : instruments) renderer.render(instrument);
+        return renderer.finish();
+    }
+}
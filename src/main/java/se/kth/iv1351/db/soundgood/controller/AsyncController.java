@@ -0,0 +1,187 @@
+package se.kth.iv1351.db.soundgood.controller;
+
+import se.kth.iv1351.db.soundgood.model.RentalInstrumentDTO;
+import se.kth.iv1351.db.soundgood.model.RentalInstrumentException;
+import se.kth.iv1351.db.soundgood.model.RentalOutcome;
+import se.kth.iv1351.db.soundgood.model.RentalOverview;
+import se.kth.iv1351.db.soundgood.model.RentalRequest;
+import se.kth.iv1351.db.soundgood.model.RentalRequestResult;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Performs the operations of a {@link Controller} asynchronously. Each method returns
+ * at once with a future that is completed when the operation is done, so that
+ * independent lookups can run in parallel, each on its own pooled connection.
+ *
+ * The operations run on a bounded pool of threads, by default as many as the
+ * database connection pool may open. A future that fails is always completed with a
+ * {@link RentalInstrumentException}, also if the operation was rejected because too
+ * many operations are queued.
+ */
+public class AsyncController {
+
+    /**
+     * The maximum number of operations waiting for a thread.
+     */
+    public static final int MAX_QUEUED_OPERATIONS = Integer.getInteger("soundgood.async.maxQueued", 1000);
+
+    private final Controller controller;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * An operation of the controller, which may throw the controller's checked exception.
+     */
+    private interface Operation<T> {
+        T perform() throws RentalInstrumentException;
+    }
+
+    /**
+     * Creates a new instance, with as many threads as the controller's connection pool
+     * may open connections.
+     *
+     * @param controller The controller performing the operations.
+     */
+    public AsyncController(Controller controller) {
+        this(controller, Integer.getInteger("soundgood.async.threads",
+                controller.getConnectionPoolUsage().getMaxSize()));
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param controller The controller performing the operations.
+     * @param threads    The maximum number of operations performed at the same time.
+     */
+    public AsyncController(Controller controller, int threads) {
+        this.controller = controller;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_OPERATIONS), runnable -> {
+            Thread thread = new Thread(runnable, "soundgood-async-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @see Controller#getAllRentalInstruments()
+     */
+    public CompletableFuture<List<? extends RentalInstrumentDTO>> getAllRentalInstruments() {
+        return submit(controller::getAllRentalInstruments);
+    }
+
+    /**
+     * @see Controller#getAllAvailableRentalInstruments()
+     */
+    public CompletableFuture<List<? extends RentalInstrumentDTO>> getAllAvailableRentalInstruments() {
+        return submit(controller::getAllAvailableRentalInstruments);
+    }
+
+    /**
+     * @see Controller#getAllRentalInstrumentsByName(String)
+     */
+    public CompletableFuture<List<? extends RentalInstrumentDTO>> getAllRentalInstrumentsByName(String instrumentName) {
+        return submit(() -> controller.getAllRentalInstrumentsByName(instrumentName));
+    }
+
+    /**
+     * @see Controller#getAllAvailableRentalInstrumentsByName(String)
+     */
+    public CompletableFuture<List<? extends RentalInstrumentDTO>> getAllAvailableRentalInstrumentsByName(
+            String instrumentName) {
+        return submit(() -> controller.getAllAvailableRentalInstrumentsByName(instrumentName));
+    }
+
+    /**
+     * @see Controller#getRentalInstrument(String)
+     */
+    public CompletableFuture<RentalInstrumentDTO> getRentalInstrument(String rentalInstrumentId) {
+        return submit(() -> controller.getRentalInstrument(rentalInstrumentId));
+    }
+
+    /**
+     * @see Controller#getRentedInstrumentsByStudent(String)
+     */
+    public CompletableFuture<List<? extends RentalInstrumentDTO>> getRentedInstrumentsByStudent(String studentId) {
+        return submit(() -> controller.getRentedInstrumentsByStudent(studentId));
+    }
+
+    /**
+     * @see Controller#rentInstrumentToStudent(String, String)
+     */
+    public CompletableFuture<RentalOutcome> rentInstrumentToStudent(String rentalInstrumentId, String studentId) {
+        return submit(() -> controller.rentInstrumentToStudent(rentalInstrumentId, studentId));
+    }
+
+    /**
+     * @see Controller#terminateRental(String)
+     */
+    public CompletableFuture<RentalOutcome> terminateRental(String rentalInstrumentId) {
+        return submit(() -> controller.terminateRental(rentalInstrumentId));
+    }
+
+    /**
+     * @see Controller#rentInstruments(List)
+     */
+    public CompletableFuture<List<RentalRequestResult>> rentInstruments(List<RentalRequest> requests) {
+        return submit(() -> controller.rentInstruments(requests));
+    }
+
+    /**
+     * @see Controller#terminateRentals(List)
+     */
+    public CompletableFuture<List<RentalRequestResult>> terminateRentals(List<String> rentalInstrumentIds) {
+        return submit(() -> controller.terminateRentals(rentalInstrumentIds));
+    }
+
+    /**
+     * Reads the available instruments, the student's rentals and the requested
+     * instrument in parallel.
+     *
+     * @param studentId          The student ID (s_id) of the student.
+     * @param rentalInstrumentId The ID of the requested rental instrument.
+     * @return A future completed when all three have been read, or with the first failure.
+     */
+    public CompletableFuture<RentalOverview> getRentalOverview(String studentId, String rentalInstrumentId) {
+        CompletableFuture<List<? extends RentalInstrumentDTO>> available = getAllAvailableRentalInstruments();
+        CompletableFuture<List<? extends RentalInstrumentDTO>> rented = getRentedInstrumentsByStudent(studentId);
+        CompletableFuture<RentalInstrumentDTO> instrument = getRentalInstrument(rentalInstrumentId);
+
+        return CompletableFuture.allOf(available, rented, instrument)
+                .thenApply(allRead -> new RentalOverview(available.join(), rented.join(), instrument.join()));
+    }
+
+    /**
+     * Stops accepting operations. Operations already submitted are still performed.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> submit(Operation<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(operation.perform());
+                } catch (RentalInstrumentException rie) {
+                    future.completeExceptionally(rie);
+                } catch (RuntimeException re) {
+                    future.completeExceptionally(new RentalInstrumentException("Operation failed", re));
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            future.completeExceptionally(
+                    new RentalInstrumentException("Too many operations in progress, try again later", ree));
+        }
+        return future;
+    }
+}
@@ -1,24 +1,157 @@
 package se.kth.iv1351.db.soundgood.controller;
 
+import se.kth.iv1351.db.soundgood.integration.ContentionStatistics;
+import se.kth.iv1351.db.soundgood.integration.OverdueReport;
+import se.kth.iv1351.db.soundgood.integration.PoolUsage;
+import se.kth.iv1351.db.soundgood.integration.RentalChangeSubscriber;
 import se.kth.iv1351.db.soundgood.integration.SoundgoodDAO;
 import se.kth.iv1351.db.soundgood.integration.SoundgoodDBEException;
+import se.kth.iv1351.db.soundgood.integration.StatementStatistics;
+import se.kth.iv1351.db.soundgood.integration.WriteMode;
+import se.kth.iv1351.db.soundgood.model.CatalogFilter;
+import se.kth.iv1351.db.soundgood.model.CatalogSnapshot;
+import se.kth.iv1351.db.soundgood.model.ClaimPreference;
+import se.kth.iv1351.db.soundgood.model.InstrumentClaim;
+import se.kth.iv1351.db.soundgood.model.InstrumentSearchIndex;
+import se.kth.iv1351.db.soundgood.model.OverdueScan;
+import se.kth.iv1351.db.soundgood.model.RentalChange;
+import se.kth.iv1351.db.soundgood.model.RentalCountDrift;
+import se.kth.iv1351.db.soundgood.model.RentalCounters;
+import se.kth.iv1351.db.soundgood.model.RentalHistoryEntry;
 import se.kth.iv1351.db.soundgood.model.RentalInstrumentDTO;
 import se.kth.iv1351.db.soundgood.model.RentalInstrumentException;
-
+import se.kth.iv1351.db.soundgood.model.RentalInstrumentPage;
+import se.kth.iv1351.db.soundgood.model.RentalOutcome;
+import se.kth.iv1351.db.soundgood.model.RentalReport;
+import se.kth.iv1351.db.soundgood.model.RentalRequest;
+import se.kth.iv1351.db.soundgood.model.RentalRequestResult;
+
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 public class Controller {
 
+    /**
+     * The maximum number of instruments one student may rent at the same time.
+     */
+    public static final int MAX_RENTALS_PER_STUDENT = 2;
+
+    /**
+     * The number of rows fetched in each round trip when streaming instruments, unless
+     * another fetch size is specified.
+     */
+    public static final int DEFAULT_FETCH_SIZE = Integer.getInteger("soundgood.cursor.fetchSize", 500);
+
+    /**
+     * The number of items of a bulk rent or return that are performed in one transaction.
+     * Must be at least 1, the bulk operations are otherwise rejected.
+     */
+    public static final int BATCH_CHUNK_SIZE = Integer.getInteger("soundgood.batch.chunkSize", 100);
+
+    /**
+     * How often the per-student rental counters are compared with the database.
+     */
+    public static final long RENTAL_COUNTER_RECONCILE_MILLIS =
+            Long.getLong("soundgood.rentalCounters.reconcileMillis", 60_000);
+
+    /**
+     * How often rentals that have become overdue are searched for in the background.
+     * Zero, the default, if they are only searched for on request. The scan changes
+     * the mark shared by all clients of the database, so it should be enabled in one
+     * client only, and it then needs {@link #OVERDUE_REPORT_FILE}.
+     */
+    public static final long OVERDUE_SCAN_MILLIS = Long.getLong("soundgood.overdue.scanMillis", 0);
+
+    /**
+     * The file that newly overdue rentals are appended to, <code>null</code> if none
+     * has been specified. Rentals can't be searched for overdue ones without it.
+     */
+    public static final String OVERDUE_REPORT_FILE = System.getProperty("soundgood.overdue.reportFile");
+
+    /**
+     * How often terminated rentals are moved to the rental history, zero if they are
+     * only moved on request.
+     */
+    public static final long ARCHIVE_MILLIS = Long.getLong("soundgood.archive.intervalMillis", 60_000);
+
+    /**
+     * The number of terminated rentals that are moved to the rental history in one transaction.
+     */
+    public static final int ARCHIVE_BATCH_SIZE = Integer.getInteger("soundgood.archive.batchSize", 1000);
+
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+
     private final SoundgoodDAO soundgoodDB;
+    private final AtomicReference<CatalogSnapshot> catalog = new AtomicReference<>();
+    private final Object catalogRefreshLock = new Object();
+    private final InstrumentSearchIndex searchIndex;
+    private volatile boolean catalogStale;
+    private final RentalCounters rentalCounters;
+    private final ScheduledExecutorService backgroundTasks;
+    private volatile RentalCountDrift lastReconciliation;
+    private volatile OverdueScan lastOverdueScan;
+    private final Object overdueScanLock = new Object();
+    private final Object archiveLock = new Object();
+    private final AtomicLong rentalsArchived = new AtomicLong();
+    private final boolean receivesRemoteChanges;
+    private final AtomicLong remoteChangesApplied = new AtomicLong();
 
     /**
-     * Creates a new instance, and retrieves a connection to the database.
+     * Creates a new instance, and opens a pool of connections to the database.
+     * The instance may be used by several threads at the same time. The rentals
+     * and terminations made by other clients of the same database are applied to
+     * the in-memory catalog as they are committed.
      *
      * @throws SoundgoodDBEException If unable to connect to the database.
+     * @throws IllegalStateException If overdue rentals are searched for in the
+     *                               background, but no report file is specified.
      */
     public Controller() throws SoundgoodDBEException {
+        if (OVERDUE_SCAN_MILLIS > 0 && OVERDUE_REPORT_FILE == null) {
+            throw new IllegalStateException("soundgood.overdue.scanMillis needs soundgood.overdue.reportFile");
+        }
         soundgoodDB = new SoundgoodDAO();
+
+        // Changes committed while the catalog is loaded wait for the lock, and are
+        // applied to the loaded catalog. Applying a change twice does no harm. The DAO
+        // has opened its connections and change listener, so it is closed if the
+        // catalog can't be loaded.
+        try {
+            synchronized (catalogRefreshLock) {
+                receivesRemoteChanges = soundgoodDB.subscribeToRentalChanges(new RemoteRentalChanges());
+                catalog.set(CatalogSnapshot.of(0, soundgoodDB.findAllRentalInstruments()));
+                searchIndex = new InstrumentSearchIndex(catalog.get().getAll());
+                rentalCounters = new RentalCounters(soundgoodDB.countActiveRentalsByStudent());
+            }
+        } catch (SoundgoodDBEException | RuntimeException e) {
+            soundgoodDB.close();
+            throw e;
+        }
+
+        backgroundTasks = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "soundgood-background");
+            thread.setDaemon(true);
+            return thread;
+        });
+        backgroundTasks.scheduleWithFixedDelay(this::reconcileInBackground,
+                RENTAL_COUNTER_RECONCILE_MILLIS, RENTAL_COUNTER_RECONCILE_MILLIS, TimeUnit.MILLISECONDS);
+        if (OVERDUE_SCAN_MILLIS > 0) {
+            backgroundTasks.scheduleWithFixedDelay(this::scanOverdueInBackground,
+                    OVERDUE_SCAN_MILLIS, OVERDUE_SCAN_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        if (ARCHIVE_MILLIS > 0) {
+            backgroundTasks.scheduleWithFixedDelay(this::archiveInBackground,
+                    ARCHIVE_MILLIS, ARCHIVE_MILLIS, TimeUnit.MILLISECONDS);
+        }
     }
 
 
@@ -29,11 +162,7 @@ public class Controller {
      * @throws RentalInstrumentException If a problem exists with the rental instrument
      */
     public List<? extends RentalInstrumentDTO> getAllRentalInstruments() throws RentalInstrumentException {
-        try {
-            return soundgoodDB.findAllRentalInstruments();
-        } catch (SoundgoodDBEException e) {
-            throw new RentalInstrumentException("Unable to retrieve all instruments", e);
-        }
+        return currentCatalog().getAll();
     }
 
     /**
@@ -44,11 +173,7 @@ public class Controller {
      * @throws RentalInstrumentException If a problem exists with the rental instrument
      */
     public List<? extends RentalInstrumentDTO> getAllAvailableRentalInstruments() throws RentalInstrumentException {
-        try {
-            return soundgoodDB.findAllAvailableRentalInstruments();
-        } catch (SoundgoodDBEException e) {
-            throw new RentalInstrumentException("Unable to retrieve all instruments", e);
-        }
+        return currentCatalog().getAvailable();
     }
 
     /**
@@ -60,11 +185,7 @@ public class Controller {
      * @throws RentalInstrumentException If a problem exists with the rental instrument
      */
     public List<? extends RentalInstrumentDTO> getAllRentalInstrumentsByName(String instrumentName) throws RentalInstrumentException {
-        try {
-            return soundgoodDB.findAllRentalInstrumentsByName(instrumentName);
-        } catch (SoundgoodDBEException e) {
-            throw new RentalInstrumentException("Unable to retrieve all instruments", e);
-        }
+        return currentCatalog().getByName(instrumentName);
     }
 
     /**
@@ -78,8 +199,90 @@ public class Controller {
      * @throws RentalInstrumentException If a problem exists with the rental instrument
      */
     public List<? extends RentalInstrumentDTO> getAllAvailableRentalInstrumentsByName(String instrumentName) throws RentalInstrumentException {
+        return currentCatalog().getAvailableByName(instrumentName);
+    }
+
+    /**
+     * Finds the rental instruments matching a filter, f.e. available pianos costing at
+     * most 300 kr per month, in the in-memory catalog.
+     *
+     * @param filter The criteria of the instruments to find
+     * @return The matching instruments, ordered by name and rental id
+     * @throws RentalInstrumentException If the catalog had to be reloaded and that failed
+     */
+    public List<? extends RentalInstrumentDTO> filterRentalInstruments(CatalogFilter filter)
+            throws RentalInstrumentException {
+        return currentCatalog().filter(filter);
+    }
+
+    /**
+     * Searches the catalog by instrument name, brand and condition. A word of the
+     * search matches a whole word, the start of a word or a misspelled word, f.e.
+     * "guit", "Guitar" and "gutiar" all match guitars.
+     *
+     * @param query         The words to search for.
+     * @param availableOnly If true, only available instruments are returned.
+     * @param limit         The maximum number of instruments to return.
+     * @return The matching instruments, best match first.
+     * @throws RentalInstrumentException If the catalog had to be reloaded and that failed.
+     */
+    public List<RentalInstrumentDTO> searchRentalInstruments(String query, boolean availableOnly, int limit)
+            throws RentalInstrumentException {
+        currentCatalog();
+        return searchIndex.search(query, availableOnly, limit);
+    }
+
+    /**
+     * Returns one page of rental instruments, read directly from the database. The
+     * page starts after the instrument with the specified name and rental id, which
+     * are the last name and id of the previous page.
+     *
+     * @param instrumentName The name of the type of rental instruments, or <code>null</code> for all
+     * @param availableOnly If true, only available instruments are listed
+     * @param previousPage The previous page, or <code>null</code> to read the first page
+     * @param pageSize The maximum number of instruments on the page
+     * @return The page of rental instruments
+     * @throws RentalInstrumentException If the instruments could not be read
+     */
+    public RentalInstrumentPage getRentalInstrumentPage(String instrumentName, boolean availableOnly,
+                                                        RentalInstrumentPage previousPage, int pageSize)
+            throws RentalInstrumentException {
+        if (pageSize < 1) {
+            throw new RentalInstrumentException("Page size must be at least one, was " + pageSize);
+        }
+
+        String afterName = previousPage == null ? null : previousPage.getLastName();
+        String afterId = previousPage == null ? null : previousPage.getLastId();
+
+        try {
+            List<? extends RentalInstrumentDTO> instruments =
+                    soundgoodDB.findRentalInstrumentPage(instrumentName, availableOnly, afterName, afterId, pageSize + 1);
+            boolean hasNextPage = instruments.size() > pageSize;
+            if (hasNextPage) {
+                instruments = instruments.subList(0, pageSize);
+            }
+            return new RentalInstrumentPage(instruments, hasNextPage);
+        } catch (SoundgoodDBEException e) {
+            throw new RentalInstrumentException("Unable to retrieve page of instruments", e);
+        }
+    }
+
+    /**
+     * Reads rental instruments from the database through a cursor and hands them to
+     * the consumer one at a time, in the same order as the listings. Memory use does
+     * not depend on the number of instruments.
+     *
+     * @param instrumentName The name of the type of rental instruments, or <code>null</code> for all
+     * @param availableOnly If true, only available instruments are read
+     * @param fetchSize The number of instruments fetched in each round trip to the database
+     * @param consumer Receives each instrument
+     * @throws RentalInstrumentException If the instruments could not be read
+     */
+    public void streamRentalInstruments(String instrumentName, boolean availableOnly, int fetchSize,
+                                        Consumer<? super RentalInstrumentDTO> consumer)
+            throws RentalInstrumentException {
         try {
-            return soundgoodDB.findAllAvailableRentalInstrumentsByName(instrumentName);
+            soundgoodDB.streamRentalInstruments(instrumentName, availableOnly, fetchSize, consumer);
         } catch (SoundgoodDBEException e) {
             throw new RentalInstrumentException("Unable to retrieve all instruments", e);
         }
@@ -109,43 +312,73 @@ public class Controller {
     }
 
     /**
-     * Terminates a specific rental based on the rental instrument id
+     * Returns the instruments a student currently rents, read from the database.
+     *
+     * @param studentId The student ID (s_id) of the student
+     * @return The instruments the student rents, empty if none
+     * @throws RentalInstrumentException If the instruments could not be read
+     */
+    public List<? extends RentalInstrumentDTO> getRentedInstrumentsByStudent(String studentId)
+            throws RentalInstrumentException {
+        if (studentId == null) {
+            throw new RentalInstrumentException("No student to find rentals for");
+        }
+
+        try {
+            return soundgoodDB.findRentedInstrumentsByStudent(studentId);
+        } catch (SoundgoodDBEException e) {
+            throw new RentalInstrumentException("Could not find rentals of student " + studentId, e);
+        }
+    }
+
+    /**
+     * Terminates a specific rental based on the rental instrument id. The rental is
+     * terminated and the instrument made available again in one atomic database
+     * operation, which is rolled back if it fails.
      *
      * @param rentalInstrumentId The rental instrument ID for the rental that should be terminated
+     * @return Whether the rental was terminated, or why not
      * @throws RentalInstrumentException If a problem exists with the rental instrument
      */
-    public void terminateRental(String rentalInstrumentId) throws RentalInstrumentException {
+    public RentalOutcome terminateRental(String rentalInstrumentId) throws RentalInstrumentException {
 
         String failMsg = "Could not terminate rental for instrument with id " + rentalInstrumentId;
 
         if (rentalInstrumentId == null) throw new RentalInstrumentException(failMsg);
 
-        if (getRentalInstrument(rentalInstrumentId).getStudent_id() == null)
-            throw new RentalInstrumentException("Can't end rental of chosen instrument");
-
-        RentalInstrumentDTO rentalInformation;
+        RentalOutcome outcome = null;
+        String studentId = currentStudentOf(rentalInstrumentId);
+        rentalCounters.beginChange(studentId);
 
         try {
-            rentalInformation = soundgoodDB.findSpecificRentalInstrumentById(rentalInstrumentId, true);
-            soundgoodDB.terminateRental(rentalInformation.getId(), false);
-            soundgoodDB.createRentalInstrumentRow(rentalInformation);
+            outcome = soundgoodDB.terminateRental(rentalInstrumentId);
         } catch (SoundgoodDBEException sdbe) {
             throw new RentalInstrumentException(failMsg, sdbe);
-        } catch (Exception e) {
-            commitOngoingRental(failMsg);
-            throw e;
+        } finally {
+            rentalCounters.endChange(studentId, outcome != null && outcome.isSuccessful() ? -1 : 0);
+        }
+
+        if (outcome.isSuccessful()) {
+            refreshCatalog(rentalInstrumentId);
         }
 
+        return outcome;
     }
 
     /**
-     * Rents a specific instrument to a student.
+     * Rents a specific instrument to a student. A student who already rents the maximum
+     * number of instruments according to the rental counters is rejected without asking
+     * the database. Otherwise, the availability of the instrument and the number of
+     * instruments the student already rents are checked in the same atomic database
+     * operation that rents the instrument.
      *
      * @param rentalInstrumentId The ID of the rental instrument to be rented
      * @param studentId The student ID (s_id) of the student who is renting the instrument
+     * @return Whether the instrument was rented, or why the rental was rejected
      * @throws RentalInstrumentException If a problem exists with the rental instrument
      */
-    public void rentInstrumentToStudent(String rentalInstrumentId, String studentId) throws RentalInstrumentException {
+    public RentalOutcome rentInstrumentToStudent(String rentalInstrumentId, String studentId)
+            throws RentalInstrumentException {
 
         String failMsg = "Could not start rental for rental instrument " + rentalInstrumentId;
 
@@ -154,45 +387,539 @@ public class Controller {
             throw new RentalInstrumentException(failMsg);
         }
 
-        RentalInstrumentDTO instrumentToFind = getRentalInstrument(rentalInstrumentId);
+        if (studentId == null)
+            throw new RentalInstrumentException("No student to rent the instrument");
 
-        // Check Conditions
-        List<? extends RentalInstrumentDTO> rentedInstruments = new ArrayList<>();
+        if (rentalCounters.get(studentId) >= MAX_RENTALS_PER_STUDENT) {
+            return RentalOutcome.RENTAL_LIMIT_REACHED;
+        }
+
+        RentalOutcome outcome = null;
+        rentalCounters.beginChange(studentId);
+
+        try {
+            outcome = soundgoodDB.rentInstrument(rentalInstrumentId, studentId, MAX_RENTALS_PER_STUDENT);
+        } catch (SoundgoodDBEException sdbe) {
+            throw new RentalInstrumentException(failMsg, sdbe);
+        } finally {
+            rentalCounters.endChange(studentId, outcome != null && outcome.isSuccessful() ? 1 : 0);
+        }
+
+        if (outcome.isSuccessful()) {
+            refreshCatalog(rentalInstrumentId);
+        }
+
+        return outcome;
+    }
+
+    /**
+     * Rents any available instrument with the specified name to a student, f.e. any
+     * guitar. Instruments that other students are renting at the same moment are
+     * skipped, so concurrent renters each get a different instrument without waiting.
+     *
+     * @param instrumentName The name of the instrument, f.e. guitar
+     * @param studentId The student ID (s_id) of the student who is renting the instrument
+     * @param preference Which of the available instruments to rent
+     * @return The rented instrument, or why none was rented
+     * @throws RentalInstrumentException If a problem exists with the rental instrument
+     */
+    public InstrumentClaim rentAnyInstrument(String instrumentName, String studentId, ClaimPreference preference)
+            throws RentalInstrumentException {
+
+        if (instrumentName == null)
+            throw new RentalInstrumentException("No instrument to rent");
 
         if (studentId == null)
             throw new RentalInstrumentException("No student to rent the instrument");
 
-        if (!instrumentToFind.isAvailable())
-            throw new RentalInstrumentException("Instrument is unavailable");
+        if (rentalCounters.get(studentId) >= MAX_RENTALS_PER_STUDENT) {
+            return new InstrumentClaim(RentalOutcome.RENTAL_LIMIT_REACHED, null);
+        }
+
+        InstrumentClaim claim = null;
+        rentalCounters.beginChange(studentId);
 
         try {
-            rentedInstruments = soundgoodDB.findRentedInstrumentsByStudent(studentId);
-        } catch (Exception e) {
-            throw new RentalInstrumentException("Could not count number of rental instruments on student");
+            claim = soundgoodDB.rentAnyInstrument(instrumentName, studentId, MAX_RENTALS_PER_STUDENT, preference);
+        } catch (SoundgoodDBEException sdbe) {
+            throw new RentalInstrumentException("Could not rent any " + instrumentName, sdbe);
+        } finally {
+            rentalCounters.endChange(studentId, claim != null && claim.isSuccessful() ? 1 : 0);
         }
 
-        if ( rentedInstruments.size() >= 2)
-            throw new RentalInstrumentException("Student has rented max capacity");
+        if (claim.isSuccessful()) {
+            refreshCatalog(claim.getRentalInstrumentId());
+        }
+
+        return claim;
+    }
+
+    /**
+     * Rents many instruments at once, f.e. at the start of a term. The rentals are
+     * sent to the database in batches, and each batch is one transaction. The same
+     * checks are made as when renting one instrument.
+     *
+     * @param requests The instruments to rent, and the students renting them
+     * @return The result of each request, in the same order as the requests
+     * @throws RentalInstrumentException If the database could not be reached
+     */
+    public List<RentalRequestResult> rentInstruments(List<RentalRequest> requests) throws RentalInstrumentException {
+        List<RentalRequestResult> results = null;
+        beginChanges(requests);
 
-        // Try to rent instrument
         try {
-            RentalInstrumentDTO rentalInformation = soundgoodDB.findSpecificRentalInstrumentById(rentalInstrumentId, true);
-            soundgoodDB.updateRentalInformation(rentalInformation.getId(), studentId);
+            results = soundgoodDB.rentInstruments(requests, MAX_RENTALS_PER_STUDENT, BATCH_CHUNK_SIZE);
         } catch (SoundgoodDBEException sdbe) {
-            throw new RentalInstrumentException(failMsg, sdbe);
-        } catch (Exception e) {
-            commitOngoingRental(failMsg);
-            throw e;
+            throw new RentalInstrumentException("Could not perform bulk rental", sdbe);
+        } finally {
+            endChanges(requests, results, 1);
+        }
+
+        refreshCatalogAfterBatch(results);
+        return results;
+    }
+
+    /**
+     * Terminates many rentals at once, f.e. at the end of a term. The terminations are
+     * sent to the database in batches, and each batch is one transaction.
+     *
+     * @param rentalInstrumentIds The rental instrument IDs of the rentals to terminate
+     * @return The result of each termination, in the same order as the IDs
+     * @throws RentalInstrumentException If the database could not be reached
+     */
+    public List<RentalRequestResult> terminateRentals(List<String> rentalInstrumentIds)
+            throws RentalInstrumentException {
+        List<RentalRequest> requests = new ArrayList<>(rentalInstrumentIds.size());
+        List<RentalRequest> renters = new ArrayList<>(rentalInstrumentIds.size());
+        for (String rentalInstrumentId : rentalInstrumentIds) {
+            requests.add(new RentalRequest(rentalInstrumentId, null));
+            renters.add(new RentalRequest(rentalInstrumentId, currentStudentOf(rentalInstrumentId)));
+        }
+
+        List<RentalRequestResult> results = null;
+        beginChanges(renters);
+
+        try {
+            results = soundgoodDB.terminateRentals(requests, BATCH_CHUNK_SIZE);
+        } catch (SoundgoodDBEException sdbe) {
+            throw new RentalInstrumentException("Could not perform bulk termination", sdbe);
+        } finally {
+            endChanges(renters, results, -1);
+        }
+
+        refreshCatalogAfterBatch(results);
+        return results;
+    }
+
+    /**
+     * Returns how the connections to the database are currently used, which can be
+     * used to size the connection pool under load.
+     *
+     * @return The number of active, idle and waiting database connections.
+     */
+    public PoolUsage getConnectionPoolUsage() {
+        return soundgoodDB.getPoolUsage();
+    }
+
+    /**
+     * @return The number of active, idle and waiting connections to the read-only
+     * replica, or <code>null</code> if reads are not routed to a replica.
+     */
+    public PoolUsage getReplicaPoolUsage() {
+        return soundgoodDB.getReplicaPoolUsage();
+    }
+
+    /**
+     * Returns call counts, error counts, row counts and latency percentiles of each
+     * database operation.
+     *
+     * @return The statistics of all database operations.
+     */
+    public List<StatementStatistics> getStatementStatistics() {
+        return soundgoodDB.getStatementStatistics();
+    }
+
+    /**
+     * @return How rents and terminations are protected against concurrent changes,
+     * selected with the <code>soundgood.writeMode</code> system property.
+     */
+    public WriteMode getWriteMode() {
+        return soundgoodDB.getWriteMode();
+    }
+
+    /**
+     * @return The attempts, conflicts and retries of optimistic rents and terminations.
+     */
+    public ContentionStatistics getContentionStatistics() {
+        return soundgoodDB.getContentionStatistics();
+    }
+
+    /**
+     * Clears the statistics of all database operations.
+     */
+    public void resetStatementStatistics() {
+        soundgoodDB.resetStatementStatistics();
+    }
+
+    /**
+     * Compares the per-student rental counters with the database, and corrects those
+     * that differ. This is also done regularly in the background.
+     *
+     * @return The differences that were found.
+     * @throws RentalInstrumentException If the rentals could not be counted.
+     */
+    public RentalCountDrift reconcileRentalCounters() throws RentalInstrumentException {
+        try {
+            long readAfter = rentalCounters.getSequence();
+            RentalCountDrift drift =
+                    rentalCounters.reconcile(soundgoodDB.countActiveRentalsByStudent(), readAfter);
+            lastReconciliation = drift;
+            return drift;
+        } catch (SoundgoodDBEException e) {
+            throw new RentalInstrumentException("Unable to count the rentals of each student", e);
+        }
+    }
+
+    /**
+     * @return The result of the latest reconciliation of the rental counters, or
+     * <code>null</code> if none has been made.
+     */
+    public RentalCountDrift getLastReconciliation() {
+        return lastReconciliation;
+    }
+
+    /**
+     * Searches for the rentals that have become overdue since the previous search, and
+     * appends them to the overdue report. This is also done regularly in the background,
+     * if {@link #OVERDUE_SCAN_MILLIS} is set.
+     *
+     * @return The time range that was searched and the number of rentals found.
+     * @throws RentalInstrumentException If no report file is specified, the rentals
+     *                                   could not be searched for, or the report could
+     *                                   not be written.
+     */
+    public OverdueScan scanOverdueRentals() throws RentalInstrumentException {
+        if (OVERDUE_REPORT_FILE == null) {
+            throw new RentalInstrumentException(
+                    "No overdue report file, specify one with -Dsoundgood.overdue.reportFile");
+        }
+        synchronized (overdueScanLock) {
+            try (OverdueReport report = new OverdueReport(Path.of(OVERDUE_REPORT_FILE))) {
+                OverdueScan scan = soundgoodDB.scanNewlyOverdueRentals(report, DEFAULT_FETCH_SIZE);
+                lastOverdueScan = scan;
+                return scan;
+            } catch (SoundgoodDBEException | IOException e) {
+                throw new RentalInstrumentException("Unable to scan for overdue rentals", e);
+            }
+        }
+    }
+
+    /**
+     * Lists the rentals that were overdue when the latest search for overdue rentals
+     * was made, and that have not been terminated since.
+     *
+     * @return The overdue rentals, ordered by return date.
+     * @throws RentalInstrumentException If the rentals could not be read.
+     */
+    public List<? extends RentalInstrumentDTO> getOverdueRentals() throws RentalInstrumentException {
+        try {
+            return soundgoodDB.findOverdueRentals();
+        } catch (SoundgoodDBEException e) {
+            throw new RentalInstrumentException("Unable to retrieve overdue rentals", e);
+        }
+    }
+
+    /**
+     * @return The result of the latest search for overdue rentals made by this
+     * controller, or <code>null</code> if none has been made.
+     */
+    public OverdueScan getLastOverdueScan() {
+        return lastOverdueScan;
+    }
+
+    /**
+     * Moves all terminated rentals to the rental history, one batch per transaction.
+     * This is also done regularly in the background.
+     *
+     * @return The number of rentals that were moved.
+     * @throws RentalInstrumentException If the rentals could not be moved. The batches
+     *                                   moved before the failure stay moved.
+     */
+    public long archiveTerminatedRentals() throws RentalInstrumentException {
+        synchronized (archiveLock) {
+            long archived = 0;
+            try {
+                int batch;
+                do {
+                    batch = soundgoodDB.archiveTerminatedRentals(ARCHIVE_BATCH_SIZE);
+                    archived += batch;
+                    rentalsArchived.addAndGet(batch);
+                } while (batch > 0);
+                return archived;
+            } catch (SoundgoodDBEException e) {
+                throw new RentalInstrumentException("Unable to archive terminated rentals", e);
+            }
+        }
+    }
+
+    /**
+     * Lists the terminated rentals of a student.
+     *
+     * @param studentId The id of the student.
+     * @return The student's terminated rentals, latest first.
+     * @throws RentalInstrumentException If the rental history could not be read.
+     */
+    public List<RentalHistoryEntry> getRentalHistoryOfStudent(String studentId) throws RentalInstrumentException {
+        try {
+            return soundgoodDB.findRentalHistoryByStudent(studentId);
+        } catch (SoundgoodDBEException e) {
+            throw new RentalInstrumentException("Unable to retrieve the rental history of student " + studentId, e);
+        }
+    }
+
+    /**
+     * Lists the terminated rentals of a rental instrument.
+     *
+     * @param rentalInstrumentId The rental id of the instrument.
+     * @return The instrument's terminated rentals, latest first.
+     * @throws RentalInstrumentException If the rental history could not be read.
+     */
+    public List<RentalHistoryEntry> getRentalHistoryOfInstrument(String rentalInstrumentId)
+            throws RentalInstrumentException {
+        try {
+            return soundgoodDB.findRentalHistoryByInstrument(rentalInstrumentId);
+        } catch (SoundgoodDBEException e) {
+            throw new RentalInstrumentException(
+                    "Unable to retrieve the rental history of instrument " + rentalInstrumentId, e);
+        }
+    }
+
+    /**
+     * Reads the rental analytics, which are kept up to date by every rent and return.
+     *
+     * @param months The number of months to read the revenue of.
+     * @return The utilization of each instrument type and the revenue of the latest months.
+     * @throws RentalInstrumentException If the analytics could not be read.
+     */
+    public RentalReport getRentalReport(int months) throws RentalInstrumentException {
+        try {
+            return soundgoodDB.readRentalReport(months);
+        } catch (SoundgoodDBEException e) {
+            throw new RentalInstrumentException("Unable to retrieve the rental report", e);
+        }
+    }
+
+    /**
+     * Computes the utilization of each instrument type from the rentals, replacing the
+     * one kept up to date by rents and returns.
+     *
+     * @throws RentalInstrumentException If the utilization could not be computed.
+     */
+    public void recomputeRentalUtilization() throws RentalInstrumentException {
+        try {
+            soundgoodDB.recomputeRentalUtilization();
+        } catch (SoundgoodDBEException e) {
+            throw new RentalInstrumentException("Unable to recompute the rental utilization", e);
         }
     }
 
+    /**
+     * @return The number of terminated rentals this controller has moved to the rental history.
+     */
+    public long getRentalsArchived() {
+        return rentalsArchived.get();
+    }
+
+    /**
+     * @return The number of changes made by other clients that have been applied to
+     * the in-memory catalog, or -1 if changes of other clients are not received.
+     */
+    public long getRemoteChangesApplied() {
+        return receivesRemoteChanges ? remoteChangesApplied.get() : -1;
+    }
+
+    /**
+     * Returns the version of the in-memory catalog used by the list operations. The
+     * version is increased each time the catalog changes.
+     *
+     * @return The current catalog version.
+     * @throws RentalInstrumentException If the catalog had to be reloaded and that failed.
+     */
+    public long getCatalogVersion() throws RentalInstrumentException {
+        return currentCatalog().getVersion();
+    }
+
+    /**
+     * Reloads the whole in-memory catalog from the database. This is only needed if the
+     * catalog was changed by someone else than this controller.
+     *
+     * @throws RentalInstrumentException If the catalog could not be read.
+     */
+    public void reloadCatalog() throws RentalInstrumentException {
+        synchronized (catalogRefreshLock) {
+            try {
+                CatalogSnapshot previous = catalog.get();
+                catalog.set(CatalogSnapshot.of(previous.getVersion() + 1, soundgoodDB.findAllRentalInstruments()));
+                searchIndex.rebuild(catalog.get().getAll());
+                catalogStale = false;
+            } catch (SoundgoodDBEException e) {
+                throw new RentalInstrumentException("Unable to retrieve all instruments", e);
+            }
+        }
+    }
+
+    /**
+     * Stops the background tasks and the listening for changes made by other clients,
+     * and closes all connections to the database. A background task that is running
+     * is given some time to finish first. The instance can't be used afterwards.
+     */
+    public void close() {
+        backgroundTasks.shutdown();
+        try {
+            if (!backgroundTasks.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                backgroundTasks.shutdownNow();
+            }
+        } catch (InterruptedException ie) {
+            backgroundTasks.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        soundgoodDB.close();
+    }
+
+    private void reconcileInBackground() {
+        try {
+            RentalCountDrift drift = reconcileRentalCounters();
+            if (drift.hasDrift()) {
+                System.err.println("Rental counters drifted, " + drift);
+            }
+        } catch (RentalInstrumentException e) {
+            System.err.println("Could not reconcile rental counters: " + e.getMessage());
+        }
+    }
+
+    private void scanOverdueInBackground() {
+        try {
+            scanOverdueRentals();
+        } catch (RentalInstrumentException e) {
+            System.err.println("Could not scan for overdue rentals: " + e.getMessage());
+        }
+    }
 
-    private void commitOngoingRental(String failMsg) throws RentalInstrumentException {
+    private void archiveInBackground() {
         try {
-            soundgoodDB.commit();
-        } catch (SoundgoodDBEException bdbe) {
-            throw new RentalInstrumentException(failMsg, bdbe);
+            archiveTerminatedRentals();
+        } catch (RentalInstrumentException e) {
+            System.err.println("Could not archive terminated rentals: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The student renting an instrument is taken from the catalog, which is updated
+     * after each change. If it is wrong, the reconciliation corrects the counters.
+     */
+    private String currentStudentOf(String rentalInstrumentId) {
+        RentalInstrumentDTO instrument = catalog.get().getById(rentalInstrumentId);
+        return instrument == null ? null : instrument.getStudent_id();
+    }
+
+    private void beginChanges(List<RentalRequest> requests) {
+        for (RentalRequest request : requests) {
+            rentalCounters.beginChange(request.getStudentId());
         }
+    }
 
+    private void endChanges(List<RentalRequest> requests, List<RentalRequestResult> results, int delta) {
+        for (int i = 0; i < requests.size(); i++) {
+            boolean performed = results != null && results.get(i).isSuccessful();
+            rentalCounters.endChange(requests.get(i).getStudentId(), performed ? delta : 0);
+        }
+    }
+
+    private CatalogSnapshot currentCatalog() throws RentalInstrumentException {
+        if (catalogStale) {
+            reloadCatalog();
+        }
+        return catalog.get();
+    }
+
+    /**
+     * A bulk operation may change a large part of the catalog, so the catalog is
+     * reloaded with one query instead of re-reading each changed instrument.
+     */
+    private void refreshCatalogAfterBatch(List<RentalRequestResult> results) {
+        for (RentalRequestResult result : results) {
+            if (result.isSuccessful()) {
+                try {
+                    reloadCatalog();
+                } catch (RentalInstrumentException e) {
+                    catalogStale = true;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Re-reads one instrument after it has been changed and swaps in a new catalog
+     * snapshot containing the change. Refreshes are serialized, so a later refresh
+     * of the same instrument always wins. If the instrument can't be read, the whole
+     * catalog is reloaded on next use instead.
+     */
+    private void refreshCatalog(String rentalInstrumentId) {
+        synchronized (catalogRefreshLock) {
+            try {
+                RentalInstrumentDTO changed =
+                        soundgoodDB.findSpecificRentalInstrumentById(rentalInstrumentId, false, true);
+                catalog.set(catalog.get().withInstrument(rentalInstrumentId, changed));
+                searchIndex.update(rentalInstrumentId, changed);
+            } catch (SoundgoodDBEException e) {
+                catalogStale = true;
+            }
+        }
+    }
+
+    /**
+     * Applies a change made by another client to the catalog and to the rental
+     * counters. An instrument that is not in the catalog is read from the database.
+     */
+    private void applyRemoteChange(RentalChange change) {
+        String rentalInstrumentId = change.getRentalInstrumentId();
+
+        synchronized (catalogRefreshLock) {
+            CatalogSnapshot current = catalog.get();
+            RentalInstrumentDTO before = current.getById(rentalInstrumentId);
+
+            if (before == null) {
+                refreshCatalog(rentalInstrumentId);
+            } else {
+                RentalInstrumentDTO changed = change.applyTo(before);
+                catalog.set(current.withInstrument(rentalInstrumentId, changed));
+                searchIndex.update(rentalInstrumentId, changed);
+
+                if (!Objects.equals(before.getStudent_id(), change.getStudentId())) {
+                    rentalCounters.beginChange(before.getStudent_id());
+                    rentalCounters.endChange(before.getStudent_id(), -1);
+                    rentalCounters.beginChange(change.getStudentId());
+                    rentalCounters.endChange(change.getStudentId(), 1);
+                }
+            }
+        }
+        remoteChangesApplied.incrementAndGet();
+    }
+
+    /**
+     * Receives the changes made by other clients, from the DAO's listener thread.
+     */
+    private class RemoteRentalChanges implements RentalChangeSubscriber {
+
+        @Override
+        public void rentalChanged(RentalChange change) {
+            applyRemoteChange(change);
+        }
+
+        @Override
+        public void changesMissed() {
+            catalogStale = true;
+        }
     }
 }
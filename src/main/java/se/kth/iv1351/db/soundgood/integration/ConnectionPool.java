@@ -0,0 +1,247 @@
+package se.kth.iv1351.db.soundgood.integration;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded pool of connections to the Soundgood database. Callers borrow a
+ * connection for the duration of one transaction and then release it, which
+ * makes it possible for several threads to use the database at the same time.
+ *
+ * The pool keeps at least <code>minSize</code> connections open and never opens
+ * more than <code>maxSize</code>. Idle connections are validated before they are
+ * handed out, and connections that have been idle for longer than
+ * <code>maxIdleMillis</code> are closed, down to the minimum size.
+ *
+ * A read-only pool opens connections in read-only mode, for example to a replica
+ * of the database, so that its connections can't be used to change data by mistake.
+ */
+class ConnectionPool {
+
+    private static final long VALIDATE_AFTER_IDLE_MILLIS = 5000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long maxIdleMillis;
+    private final long borrowTimeoutMillis;
+    private final boolean readOnly;
+
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService evictor;
+    private int active;
+    private int waiting;
+    private int opening;
+    private boolean closed;
+
+    /**
+     * Creates a new pool and opens the minimum number of connections.
+     *
+     * @param url                 JDBC url of the database.
+     * @param user                Database user.
+     * @param password            Password of the database user.
+     * @param minSize             Number of connections that are always kept open.
+     * @param maxSize             Maximum number of open connections.
+     * @param maxIdleMillis       How long a connection above the minimum size may stay idle
+     *                            before it is closed.
+     * @param borrowTimeoutMillis How long a caller waits for a free connection before giving up.
+     * @param readOnly            If true, all connections are opened in read-only mode.
+     * @throws SQLException If the initial connections could not be opened.
+     */
+    ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                   long maxIdleMillis, long borrowTimeoutMillis, boolean readOnly) throws SQLException {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size, min: " + minSize + ", max: " + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.maxIdleMillis = maxIdleMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.readOnly = readOnly;
+
+        for (int i = 0; i < minSize; i++) {
+            idle.push(openConnection());
+        }
+
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "soundgood-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long evictionInterval = Math.max(1000, maxIdleMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdleConnections,
+                evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection, opening a new one if none is idle and the pool is not
+     * full. Blocks if all connections are in use.
+     *
+     * @return A connection that only the calling thread may use until it is released.
+     * @throws SQLException If no connection became available in time, or if a new
+     *                      connection could not be opened.
+     */
+    PooledConnection borrow() throws SQLException {
+        long deadline = System.currentTimeMillis() + borrowTimeoutMillis;
+
+        while (true) {
+            PooledConnection candidate = null;
+            boolean mayOpen = false;
+
+            synchronized (this) {
+                while (!closed && idle.isEmpty() && active + opening >= maxSize) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new SQLException("Timed out waiting for a database connection, pool usage: "
+                                + getUsage());
+                    }
+                    waiting++;
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection", ie);
+                    } finally {
+                        waiting--;
+                    }
+                }
+                if (closed) {
+                    throw new SQLException("Connection pool is closed");
+                }
+                if (!idle.isEmpty()) {
+                    candidate = idle.pop();
+                    active++;
+                } else {
+                    opening++;
+                    mayOpen = true;
+                }
+            }
+
+            if (mayOpen) {
+                return openForBorrower();
+            }
+            if (isUsable(candidate)) {
+                return candidate;
+            }
+            discard(candidate);
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the pool.
+     *
+     * @param connection The connection to return.
+     */
+    void release(PooledConnection connection) {
+        connection.markReleased();
+        synchronized (this) {
+            active--;
+            if (closed) {
+                connection.close();
+            } else {
+                idle.push(connection);
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Closes a borrowed connection instead of returning it to the pool. Used when
+     * the connection is known to be broken.
+     *
+     * @param connection The connection to close.
+     */
+    void discard(PooledConnection connection) {
+        connection.close();
+        synchronized (this) {
+            active--;
+            notifyAll();
+        }
+    }
+
+    /**
+     * @return The current number of active, idle and waiting connections.
+     */
+    synchronized PoolUsage getUsage() {
+        return new PoolUsage(active, idle.size(), waiting, maxSize);
+    }
+
+    /**
+     * Closes all idle connections and stops the pool. Borrowed connections are
+     * closed when they are released.
+     */
+    void close() {
+        evictor.shutdownNow();
+        synchronized (this) {
+            closed = true;
+            for (PooledConnection connection : idle) {
+                connection.close();
+            }
+            idle.clear();
+            notifyAll();
+        }
+    }
+
+    private PooledConnection openForBorrower() throws SQLException {
+        try {
+            PooledConnection connection = openConnection();
+            synchronized (this) {
+                active++;
+            }
+            return connection;
+        } finally {
+            synchronized (this) {
+                opening--;
+                notifyAll();
+            }
+        }
+    }
+
+    private PooledConnection openConnection() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, user, password);
+        connection.setAutoCommit(false);
+        connection.setReadOnly(readOnly);
+        return new PooledConnection(connection, this);
+    }
+
+    private boolean isUsable(PooledConnection connection) {
+        long idleTime = System.currentTimeMillis() - connection.getLastReleased();
+        return idleTime < VALIDATE_AFTER_IDLE_MILLIS || connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+    }
+
+    private void evictIdleConnections() {
+        List<PooledConnection> evicted = new ArrayList<>();
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+            while (oldestFirst.hasNext() && active + idle.size() > minSize) {
+                PooledConnection connection = oldestFirst.next();
+                if (now - connection.getLastReleased() < maxIdleMillis) {
+                    break;
+                }
+                oldestFirst.remove();
+                evicted.add(connection);
+            }
+        }
+
+        for (PooledConnection connection : evicted) {
+            connection.close();
+        }
+    }
+}
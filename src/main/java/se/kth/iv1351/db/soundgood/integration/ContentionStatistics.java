@@ -0,0 +1,85 @@
+package se.kth.iv1351.db.soundgood.integration;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts attempts, conflicts and retries of the optimistic rents and terminations.
+ */
+public class ContentionStatistics {
+
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder serializationFailures = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    void recordAttempt() {
+        attempts.increment();
+    }
+
+    void recordConflict() {
+        conflicts.increment();
+    }
+
+    void recordSerializationFailure() {
+        serializationFailures.increment();
+    }
+
+    void recordRetry() {
+        retries.increment();
+    }
+
+    void recordExhausted() {
+        exhausted.increment();
+    }
+
+    /**
+     * Clears all counters.
+     */
+    void reset() {
+        attempts.reset();
+        conflicts.reset();
+        serializationFailures.reset();
+        retries.reset();
+        exhausted.reset();
+    }
+
+    /**
+     * @return The number of times a change was tried, including retries.
+     */
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    /**
+     * @return The number of updates that missed since the row version had changed.
+     */
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    /**
+     * @return The number of attempts that failed with a serialization failure or deadlock.
+     */
+    public long getSerializationFailures() {
+        return serializationFailures.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * @return The number of operations that failed since all attempts conflicted.
+     */
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "attempts: " + getAttempts() + ", conflicts: " + getConflicts()
+                + ", serialization failures: " + getSerializationFailures()
+                + ", retries: " + getRetries() + ", gave up: " + getExhausted();
+    }
+}
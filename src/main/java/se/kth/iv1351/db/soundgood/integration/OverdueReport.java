@@ -0,0 +1,81 @@
+package se.kth.iv1351.db.soundgood.integration;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+
+import se.kth.iv1351.db.soundgood.model.RentalInstrumentDTO;
+
+/**
+ * An append-only file with a line for each rental that has become overdue. Each
+ * line holds, separated by tabs, the time the rental was found, the return date, the
+ * rental id, the student, the instrument name and the brand. Lines are never
+ * changed or removed.
+ *
+ * A rental is reported at least once. The lines of a scan are written before the
+ * scan is committed, so if the commit fails, the next scan writes them again with a
+ * later time found. The rental id and the return date identify a rental that has
+ * become overdue, a reader drops the lines repeating them.
+ */
+public class OverdueReport implements Closeable {
+
+    private static final char SEPARATOR = '\t';
+
+    private final BufferedWriter writer;
+    private final String foundAt;
+
+    /**
+     * Opens the report for appending, creating the file if it does not exist.
+     *
+     * @param file The report file.
+     * @throws IOException If the file could not be opened.
+     */
+    public OverdueReport(Path file) throws IOException {
+        this.writer = Files.newBufferedWriter(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        this.foundAt = new Timestamp(System.currentTimeMillis()).toString();
+    }
+
+    /**
+     * Adds one overdue rental to the report.
+     *
+     * @param rental The overdue rental.
+     * @throws UncheckedIOException If the line could not be written.
+     */
+    public void append(RentalInstrumentDTO rental) {
+        try {
+            writer.append(foundAt).append(SEPARATOR)
+                    .append(String.valueOf(rental.getReturnDate())).append(SEPARATOR)
+                    .append(rental.getId()).append(SEPARATOR)
+                    .append(rental.getStudent_id()).append(SEPARATOR)
+                    .append(rental.getName()).append(SEPARATOR)
+                    .append(rental.getBrand());
+            writer.newLine();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Writes all appended lines to the file.
+     *
+     * @throws IOException If the lines could not be written.
+     */
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    /**
+     * Writes all appended lines to the file and closes it.
+     *
+     * @throws IOException If the lines could not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,48 @@
+package se.kth.iv1351.db.soundgood.integration;
+
+/**
+ * A snapshot of how the connections in a {@link ConnectionPool} are used at
+ * one point in time.
+ */
+public class PoolUsage {
+
+    private final int active;
+    private final int idle;
+    private final int waiting;
+    private final int maxSize;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param active  Number of connections currently borrowed.
+     * @param idle    Number of open connections waiting in the pool.
+     * @param waiting Number of callers blocked waiting for a connection.
+     * @param maxSize The maximum number of connections the pool may open.
+     */
+    public PoolUsage(int active, int idle, int waiting, int maxSize) {
+        this.active = active;
+        this.idle = idle;
+        this.waiting = waiting;
+        this.maxSize = maxSize;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getWaiting() {
+        return waiting;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public String toString() {
+        return "active: " + active + ", idle: " + idle + ", waiting: " + waiting + ", max: " + maxSize;
+    }
+}
@@ -0,0 +1,118 @@
+package se.kth.iv1351.db.soundgood.integration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A database connection owned by a {@link ConnectionPool}, together with the
+ * prepared statements that have been created on it. Statements are prepared
+ * the first time they are requested and then reused for as long as the
+ * connection stays in the pool.
+ *
+ * An instance is only ever used by the one thread that has borrowed it.
+ */
+class PooledConnection {
+
+    private final Connection connection;
+    private final ConnectionPool pool;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+    private long lastReleased;
+
+    /**
+     * Wraps a newly opened connection.
+     *
+     * @param connection The physical connection, with auto commit turned off.
+     * @param pool       The pool the connection belongs to.
+     */
+    PooledConnection(Connection connection, ConnectionPool pool) {
+        this.connection = connection;
+        this.pool = pool;
+        this.lastReleased = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the prepared statement for the specified SQL, preparing it on
+     * this connection if it has not been used before.
+     *
+     * @param sql The SQL of the statement.
+     * @return A prepared statement belonging to this connection.
+     * @throws SQLException If the statement could not be prepared.
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Commits the ongoing transaction on this connection.
+     *
+     * @throws SQLException If the commit failed.
+     */
+    void commit() throws SQLException {
+        connection.commit();
+    }
+
+    /**
+     * Rolls back the ongoing transaction on this connection.
+     *
+     * @throws SQLException If the rollback failed.
+     */
+    void rollback() throws SQLException {
+        connection.rollback();
+    }
+
+    /**
+     * @return The physical connection.
+     */
+    Connection getConnection() {
+        return connection;
+    }
+
+    boolean isValid(int timeoutSeconds) {
+        try {
+            return connection.isValid(timeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return The pool this connection is returned to when it is released.
+     */
+    ConnectionPool getPool() {
+        return pool;
+    }
+
+    long getLastReleased() {
+        return lastReleased;
+    }
+
+    void markReleased() {
+        lastReleased = System.currentTimeMillis();
+    }
+
+    /**
+     * Closes all prepared statements and the physical connection. Failures are
+     * ignored, since the connection is discarded anyway.
+     */
+    void close() {
+        for (PreparedStatement statement : statements.values()) {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+            }
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package se.kth.iv1351.db.soundgood.integration;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import se.kth.iv1351.db.soundgood.model.RentalChange;
+
+/**
+ * Listens for the rental changes that the DAOs of all clients publish on a PostgreSQL
+ * notification channel, and hands the changes made by other clients to a subscriber.
+ * The listener has a connection of its own, outside the connection pool. If that
+ * connection breaks, it is reopened and the subscriber is told that changes may have
+ * been missed.
+ *
+ * A change is published as one notification, with the payload
+ * <code>origin|rentalInstrumentId|available|studentId|returnDate</code>, where
+ * available is 1 or 0 and the last two fields are empty if not set.
+ */
+class RentalChangeListener {
+
+    static final String CHANNEL = "soundgood_rental_changes";
+    static final String FIELD_SEPARATOR = "|";
+
+    private static final int POLL_MILLIS = 500;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 10_000;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final String origin;
+    private final RentalChangeSubscriber subscriber;
+    private final Thread thread;
+    private Connection connection;
+    private volatile boolean stopped;
+
+    /**
+     * Starts listening. Changes committed after this constructor has returned are
+     * delivered to the subscriber.
+     *
+     * @param url        JDBC url of the database.
+     * @param user       Database user.
+     * @param password   Password of the database user.
+     * @param origin     The origin of the changes published by this client, which are skipped.
+     * @param subscriber Receives the changes of other clients.
+     * @throws SQLException If the connection could not be opened.
+     */
+    RentalChangeListener(String url, String user, String password, String origin,
+                         RentalChangeSubscriber subscriber) throws SQLException {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.origin = origin;
+        this.subscriber = subscriber;
+        connection = listen();
+
+        thread = new Thread(this::deliverChanges, "soundgood-change-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops listening and closes the connection.
+     */
+    void stop() {
+        stopped = true;
+        thread.interrupt();
+    }
+
+    /**
+     * Parses a notification payload.
+     *
+     * @param payload The payload of a notification on the channel.
+     * @return The fields of the payload, the origin first.
+     */
+    static String[] fieldsOf(String payload) {
+        return payload.split("\\" + FIELD_SEPARATOR, -1);
+    }
+
+    private void deliverChanges() {
+        long reconnectDelay = POLL_MILLIS;
+
+        while (!stopped) {
+            try {
+                if (connection == null) {
+                    connection = listen();
+                    reconnectDelay = POLL_MILLIS;
+                    subscriber.changesMissed();
+                }
+                PGNotification[] notifications =
+                        connection.unwrap(PGConnection.class).getNotifications(POLL_MILLIS);
+                if (notifications == null) continue;
+
+                for (PGNotification notification : notifications) {
+                    deliver(notification.getParameter());
+                }
+            } catch (SQLException brokenConnection) {
+                closeQuietly();
+                if (stopped) break;
+                System.err.println("Lost the connection listening for rental changes: "
+                        + brokenConnection.getMessage());
+                try {
+                    Thread.sleep(reconnectDelay);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+                reconnectDelay = Math.min(MAX_RECONNECT_DELAY_MILLIS, reconnectDelay * 2);
+            } catch (RuntimeException subscriberFailure) {
+                System.err.println("Could not apply a rental change: " + subscriberFailure);
+            }
+        }
+        closeQuietly();
+    }
+
+    private void deliver(String payload) {
+        String[] fields = fieldsOf(payload);
+        if (fields.length != 5) {
+            subscriber.changesMissed();
+            return;
+        }
+        if (origin.equals(fields[0])) return;
+
+        Timestamp returnDate;
+        try {
+            returnDate = fields[4].isEmpty() ? null : Timestamp.valueOf(fields[4]);
+        } catch (IllegalArgumentException notATimestamp) {
+            subscriber.changesMissed();
+            return;
+        }
+
+        subscriber.rentalChanged(new RentalChange(
+                fields[1], "1".equals(fields[2]), fields[3].isEmpty() ? null : fields[3], returnDate));
+    }
+
+    private Connection listen() throws SQLException {
+        Connection listening = DriverManager.getConnection(url, user, password);
+        try (Statement statement = listening.createStatement()) {
+            statement.execute("LISTEN " + CHANNEL);
+        } catch (SQLException sqle) {
+            listening.close();
+            throw sqle;
+        }
+        return listening;
+    }
+
+    private void closeQuietly() {
+        if (connection == null) return;
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+        connection = null;
+    }
+}
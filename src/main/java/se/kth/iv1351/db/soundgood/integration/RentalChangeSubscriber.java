@@ -0,0 +1,23 @@
+package se.kth.iv1351.db.soundgood.integration;
+
+import se.kth.iv1351.db.soundgood.model.RentalChange;
+
+/**
+ * Receives the rental changes committed by other clients of the Soundgood database.
+ * The methods are called by a background thread, one call at a time.
+ */
+public interface RentalChangeSubscriber {
+
+    /**
+     * Called after another client has committed a change to a rental instrument.
+     *
+     * @param change The new rental state of the instrument.
+     */
+    void rentalChanged(RentalChange change);
+
+    /**
+     * Called when changes may have been lost, f.e. because the connection used to
+     * listen for changes was broken. Everything read before this call may be stale.
+     */
+    void changesMissed();
+}
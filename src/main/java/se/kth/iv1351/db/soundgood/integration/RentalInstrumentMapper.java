@@ -0,0 +1,86 @@
+package se.kth.iv1351.db.soundgood.integration;
+
+import se.kth.iv1351.db.soundgood.model.RentalInstrument;
+import se.kth.iv1351.db.soundgood.model.ValueDictionary;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps rows of the <code>rental_instrument</code>/<code>instrument</code> join to
+ * {@link RentalInstrument} objects. The column indexes are looked up once, when the
+ * mapper is created for a result set, and every row is then read by index instead
+ * of by column label. Names, types, brands and conditions are replaced by the shared
+ * instances of {@link ValueDictionary}, so that the instruments do not keep one copy
+ * of these strings each.
+ */
+class RentalInstrumentMapper {
+
+    /**
+     * The columns read by the mapper, to be used as the projection of every query
+     * whose rows are mapped to rental instruments.
+     */
+    static final String COLUMNS =
+            "rental_instrument.rental_instrument_foreign_id"
+                    + ", rental_instrument.brand"
+                    + ", instrument.name"
+                    + ", instrument.type"
+                    + ", rental_instrument.is_available"
+                    + ", rental_instrument.monthly_cost"
+                    + ", rental_instrument.condition"
+                    + ", rental_instrument.instrument_id"
+                    + ", rental_instrument.return_date"
+                    + ", rental_instrument.student_id";
+
+    private final int rentalIdIndex;
+    private final int brandIndex;
+    private final int nameIndex;
+    private final int typeIndex;
+    private final int isAvailableIndex;
+    private final int monthlyCostIndex;
+    private final int conditionIndex;
+    private final int instrumentIdIndex;
+    private final int returnDateIndex;
+    private final int studentIdIndex;
+
+    /**
+     * Creates a mapper for the specified result set, resolving the index of each
+     * column that is read.
+     *
+     * @param result The result set whose rows will be mapped.
+     * @throws SQLException If a column is missing from the result set.
+     */
+    RentalInstrumentMapper(ResultSet result) throws SQLException {
+        rentalIdIndex = result.findColumn("rental_instrument_foreign_id");
+        brandIndex = result.findColumn("brand");
+        nameIndex = result.findColumn("name");
+        typeIndex = result.findColumn("type");
+        isAvailableIndex = result.findColumn("is_available");
+        monthlyCostIndex = result.findColumn("monthly_cost");
+        conditionIndex = result.findColumn("condition");
+        instrumentIdIndex = result.findColumn("instrument_id");
+        returnDateIndex = result.findColumn("return_date");
+        studentIdIndex = result.findColumn("student_id");
+    }
+
+    /**
+     * Creates a rental instrument from the current row of the result set.
+     *
+     * @param result The result set this mapper was created for, positioned on a row.
+     * @return The rental instrument of the current row.
+     * @throws SQLException If a column could not be read.
+     */
+    RentalInstrument map(ResultSet result) throws SQLException {
+        return new RentalInstrument(
+                result.getString(rentalIdIndex),
+                ValueDictionary.BRANDS.canonical(result.getString(brandIndex)),
+                ValueDictionary.INSTRUMENT_NAMES.canonical(result.getString(nameIndex)),
+                ValueDictionary.INSTRUMENT_TYPES.canonical(result.getString(typeIndex)),
+                result.getBoolean(isAvailableIndex),
+                result.getDouble(monthlyCostIndex),
+                ValueDictionary.CONDITIONS.canonical(result.getString(conditionIndex)),
+                result.getInt(instrumentIdIndex),
+                result.getTimestamp(returnDateIndex),
+                result.getString(studentIdIndex));
+    }
+}
@@ -0,0 +1,171 @@
+package se.kth.iv1351.db.soundgood.integration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Brings the Soundgood database schema up to date by applying the versioned SQL
+ * scripts in <code>db/migration</code> on the class path. The applied versions are
+ * recorded in the table <code>soundgood_schema_version</code>, and each script is
+ * applied once, in its own transaction, in version order.
+ *
+ * Scripts are named <code>V&lt;version&gt;__&lt;description&gt;.sql</code>. A new
+ * script must also be added to {@link #MIGRATIONS}. Statements in a script are
+ * separated by a semicolon at the end of a line.
+ */
+public class SchemaMigrator {
+
+    /**
+     * All migration scripts, in version order.
+     */
+    static final String[] MIGRATIONS = {
+            "V1__create_schema.sql",
+            "V2__add_row_version.sql",
+            "V3__partial_indexes.sql",
+            "V4__overdue_scan.sql",
+            "V5__rental_history.sql",
+            "V6__rental_summaries.sql",
+            "V7__catalog_order.sql"
+    };
+
+    private static final String MIGRATION_PATH = "/db/migration/";
+    private static final String VERSION_TABLE_NAME = "soundgood_schema_version";
+
+    private SchemaMigrator() {
+    }
+
+    /**
+     * Applies all migrations that have not been applied to the database.
+     *
+     * @param connection A connection to the database. Its auto commit mode is restored
+     *                   when the migrations are done.
+     * @return The number of migrations that were applied.
+     * @throws SQLException If a migration failed. The failed migration is rolled back,
+     *                      earlier migrations stay applied.
+     */
+    public static int migrate(Connection connection) throws SQLException {
+        return migrate(connection, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Applies the migrations up to and including the specified version that have not
+     * been applied to the database.
+     *
+     * @param connection  A connection to the database. Its auto commit mode is restored
+     *                    when the migrations are done.
+     * @param lastVersion The version of the last migration to apply.
+     * @return The number of migrations that were applied.
+     * @throws SQLException If a migration failed. The failed migration is rolled back,
+     *                      earlier migrations stay applied.
+     */
+    public static int migrate(Connection connection, int lastVersion) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        int applied = 0;
+
+        try {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS " + VERSION_TABLE_NAME + " ("
+                        + " version INT PRIMARY KEY,"
+                        + " script VARCHAR(200) NOT NULL,"
+                        + " installed_on TIMESTAMP NOT NULL)");
+            }
+            connection.commit();
+
+            for (String script : MIGRATIONS) {
+                if (versionOf(script) <= lastVersion && apply(connection, script)) {
+                    applied++;
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+
+        return applied;
+    }
+
+    /**
+     * Applies one script unless it has already been applied. The version table is
+     * locked first, so that two applications starting at the same time do not both
+     * apply the same script.
+     */
+    private static boolean apply(Connection connection, String script) throws SQLException {
+        int version = versionOf(script);
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("LOCK TABLE " + VERSION_TABLE_NAME + " IN EXCLUSIVE MODE");
+
+            try (ResultSet result = statement.executeQuery(
+                    "SELECT count(*) FROM " + VERSION_TABLE_NAME + " WHERE version = " + version)) {
+                result.next();
+                if (result.getInt(1) > 0) {
+                    connection.commit();
+                    return false;
+                }
+            }
+
+            for (String sql : statementsOf(script)) {
+                statement.execute(sql);
+            }
+        }
+
+        try (PreparedStatement record = connection.prepareStatement(
+                "INSERT INTO " + VERSION_TABLE_NAME + " (version, script, installed_on) VALUES (?, ?, ?)")) {
+            record.setInt(1, version);
+            record.setString(2, script);
+            record.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            record.executeUpdate();
+        }
+
+        connection.commit();
+        return true;
+    }
+
+    private static int versionOf(String script) {
+        return Integer.parseInt(script.substring(1, script.indexOf("__")));
+    }
+
+    private static List<String> statementsOf(String script) throws SQLException {
+        String text;
+        try (InputStream in = SchemaMigrator.class.getResourceAsStream(MIGRATION_PATH + script)) {
+            if (in == null) {
+                throw new SQLException("Missing migration script " + script);
+            }
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException ioe) {
+            throw new SQLException("Could not read migration script " + script, ioe);
+        }
+
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+
+        for (String line : text.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                continue;
+            }
+            current.append(line).append('\n');
+            if (trimmed.endsWith(";")) {
+                statements.add(current.substring(0, current.lastIndexOf(";")));
+                current.setLength(0);
+            }
+        }
+        if (current.toString().trim().length() > 0) {
+            statements.add(current.toString());
+        }
+
+        return statements;
+    }
+}
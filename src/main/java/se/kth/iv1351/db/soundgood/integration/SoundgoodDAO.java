@@ -1,16 +1,36 @@
 package se.kth.iv1351.db.soundgood.integration;
 
+import se.kth.iv1351.db.soundgood.model.ClaimPreference;
+import se.kth.iv1351.db.soundgood.model.InstrumentClaim;
+import se.kth.iv1351.db.soundgood.model.MonthlyRevenue;
+import se.kth.iv1351.db.soundgood.model.OverdueScan;
+import se.kth.iv1351.db.soundgood.model.RentalHistoryEntry;
 import se.kth.iv1351.db.soundgood.model.RentalInstrument;
 import se.kth.iv1351.db.soundgood.model.RentalInstrumentDTO;
-
+import se.kth.iv1351.db.soundgood.model.RentalOutcome;
+import se.kth.iv1351.db.soundgood.model.RentalReport;
+import se.kth.iv1351.db.soundgood.model.RentalRequest;
+import se.kth.iv1351.db.soundgood.model.RentalRequestResult;
+import se.kth.iv1351.db.soundgood.model.TypeUtilization;
+import se.kth.iv1351.db.soundgood.model.ValueDictionary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.*;
 import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 
 public class SoundgoodDAO {
 
     private static final String RENTAL_INSTRUMENT_TABLE_NAME = "rental_instrument";
     private static final String INSTRUMENT_TABLE_NAME = "instrument";
+    private static final String OVERDUE_SCAN_TABLE_NAME = "overdue_scan";
+    private static final String RENTAL_HISTORY_TABLE_NAME = "rental_history";
+    private static final String RENTAL_UTILIZATION_TABLE_NAME = "rental_utilization";
+    private static final String MONTHLY_REVENUE_TABLE_NAME = "monthly_rental_revenue";
 
     private static final String ID_COL_NAME = "id";
     private static final String RENTAL_ID_COL_NAME = "rental_instrument_foreign_id";
@@ -26,122 +46,278 @@ public class SoundgoodDAO {
     private static final String NUMBER_OF_INSTRUMENTS_COL_NAME = "numberOfInstruments";
     private static final String TERMINATED_COL_NAME = "terminated";
     private static final String BRAND_COL_NAME = "brand";
+    private static final String FOUND_COL_NAME = "found";
+    private static final String UPDATED_COL_NAME = "updated";
+    private static final String VERSION_COL_NAME = "version";
+    private static final String SCANNER_COL_NAME = "scanner";
+    private static final String SCANNED_UNTIL_COL_NAME = "scanned_until";
+    private static final String OVERDUE_SCANNER = "overdue";
+    private static final String ENDED_AT_COL_NAME = "ended_at";
+    private static final String OLDEST_MONTH_COL_NAME = "oldest_month";
+    private static final String INSTRUMENT_TYPE_COL_NAME = "instrument_type";
+    private static final String INSTRUMENTS_COL_NAME = "instruments";
+    private static final String RENTED_COL_NAME = "rented";
+    private static final String MONTHLY_REVENUE_COL_NAME = "monthly_revenue";
+    private static final String MONTH_COL_NAME = "month";
+    private static final String RENTALS_COL_NAME = "rentals";
+    private static final String REVENUE_COL_NAME = "revenue";
+    private static final String SERIALIZATION_FAILURE_SQL_STATE = "40001";
+    private static final String DEADLOCK_DETECTED_SQL_STATE = "40P01";
+    private static final int STUDENT_LOCK_CLASS = 1351;
+    private static final String STUDENT_LOCK_COL_NAME = "student_lock";
+
+    /**
+     * The order of the catalog listings, by name and then by rental id. The ids are
+     * ordered by length first, so numeric ids are in numeric order, and then as text.
+     * Both columns have the C collation, see V7, so this is the order of
+     * {@link se.kth.iv1351.db.soundgood.model.CatalogSnapshot#CATALOG_ORDER}. Names
+     * are never null, they would come last in both.
+     */
+    private static final String CATALOG_ORDER_BY = " ORDER BY " + NAME_COL_NAME
+            + ", length(" + RENTAL_ID_COL_NAME + "), " + RENTAL_ID_COL_NAME;
+
+    private static final String DB_URL_PROPERTY = "soundgood.db.url";
+    private static final String DB_USER_PROPERTY = "soundgood.db.user";
+    private static final String DB_PASSWORD_PROPERTY = "soundgood.db.password";
+    private static final String POOL_MIN_SIZE_PROPERTY = "soundgood.pool.minSize";
+    private static final String POOL_MAX_SIZE_PROPERTY = "soundgood.pool.maxSize";
+    private static final String POOL_MAX_IDLE_MILLIS_PROPERTY = "soundgood.pool.maxIdleMillis";
+    private static final String POOL_BORROW_TIMEOUT_MILLIS_PROPERTY = "soundgood.pool.borrowTimeoutMillis";
+    private static final String MIGRATE_PROPERTY = "soundgood.db.migrate";
+    private static final String WRITE_MODE_PROPERTY = "soundgood.writeMode";
+    private static final String MAX_ATTEMPTS_PROPERTY = "soundgood.optimistic.maxAttempts";
+    private static final String BASE_BACKOFF_MILLIS_PROPERTY = "soundgood.optimistic.baseBackoffMillis";
+    private static final String REPLICA_URL_PROPERTY = "soundgood.replica.url";
+    private static final String REPLICA_USER_PROPERTY = "soundgood.replica.user";
+    private static final String REPLICA_PASSWORD_PROPERTY = "soundgood.replica.password";
+    private static final String READ_YOUR_WRITES_MILLIS_PROPERTY = "soundgood.replica.readYourWritesMillis";
+    private static final String CHANGE_EVENTS_PROPERTY = "soundgood.changeEvents";
+    private static final String RENTAL_SUMMARIES_PROPERTY = "soundgood.rentalSummaries";
+    private static final long MAX_BACKOFF_MILLIS = 100;
+
+    private String findAllInstruments;
+    private String findAllAvailableRentalInstruments;
+    private String findAllInstrumentsByName;
+    private String findAllAvailableRentalInstrumentsByName;
+    private String findSpecificRentalInstrumentById;
+    private String findSpecificRentalInstrumentByIdLockingForUpdate;
+    private String lockStudents;
+    private String rentInstrument;
+    private String terminateRental;
+    private String rentInstrumentInBatch;
+    private final Map<ClaimPreference, String> rentAnyInstrument = new EnumMap<>(ClaimPreference.class);
+    private String terminateRentalInBatch;
+    private String readRentState;
+    private String rentInstrumentAtVersion;
+    private String readTerminateState;
+    private String terminateRentalAtVersion;
+    private String findRentedInstrumentsByStudent;
+    private String countActiveRentalsByStudent;
+    private String findInstrumentPage;
+    private String findInstrumentPageByName;
+    private String findAvailableInstrumentPage;
+    private String findAvailableInstrumentPageByName;
+    private String publishRentalChanges;
+    private String lockOverdueScanMark;
+    private String findNewlyOverdueRentals;
+    private String advanceOverdueScanMark;
+    private String findOverdueRentals;
+    private String findOldestTerminatedMonth;
+    private String archiveTerminatedRentals;
+    private String findRentalHistoryByStudent;
+    private String findRentalHistoryByInstrument;
+    private String updateRentalUtilization;
+    private String addMonthlyRevenue;
+    private String readRentalUtilization;
+    private String readMonthlyRevenue;
+    private String lockRentalUtilization;
+    private String recomputeRentalUtilization;
+
+    private ConnectionPool pool;
+    private ConnectionPool replicaPool;
+    private String dbUrl;
+    private String dbUser;
+    private String dbPassword;
+    private final boolean publishChanges = Boolean.parseBoolean(System.getProperty(CHANGE_EVENTS_PROPERTY, "true"));
+    private final boolean updateRentalSummaries =
+            Boolean.parseBoolean(System.getProperty(RENTAL_SUMMARIES_PROPERTY, "true"));
+    private final String origin = UUID.randomUUID().toString();
+    private RentalChangeListener changeListener;
+    private final long readYourWritesMillis = Long.getLong(READ_YOUR_WRITES_MILLIS_PROPERTY, 1000L);
+    private final WriteMode writeMode =
+            WriteMode.valueOf(System.getProperty(WRITE_MODE_PROPERTY, WriteMode.LOCKING.name()).toUpperCase());
+    private final int maxAttempts = Integer.getInteger(MAX_ATTEMPTS_PROPERTY, 5);
+    private final long baseBackoffMillis = Long.getLong(BASE_BACKOFF_MILLIS_PROPERTY, 2L);
+    private final ContentionStatistics contention = new ContentionStatistics();
+
+    private final Map<String, StatementStatistics> statistics = new LinkedHashMap<>();
+    private final StatementStatistics findAllRentalInstrumentsStats = register("findAllRentalInstruments");
+    private final StatementStatistics findAllRentalInstrumentsByNameStats = register("findAllRentalInstrumentsByName");
+    private final StatementStatistics findAllAvailableRentalInstrumentsStats =
+            register("findAllAvailableRentalInstruments");
+    private final StatementStatistics findAllAvailableRentalInstrumentsByNameStats =
+            register("findAllAvailableRentalInstrumentsByName");
+    private final StatementStatistics findRentalInstrumentPageStats = register("findRentalInstrumentPage");
+    private final StatementStatistics streamRentalInstrumentsStats = register("streamRentalInstruments");
+    private final StatementStatistics findSpecificRentalInstrumentByIdStats =
+            register("findSpecificRentalInstrumentById");
+    private final StatementStatistics rentInstrumentStats = register("rentInstrument");
+    private final StatementStatistics terminateRentalStats = register("terminateRental");
+    private final StatementStatistics rentAnyInstrumentStats = register("rentAnyInstrument");
+    private final StatementStatistics rentInstrumentsStats = register("rentInstruments");
+    private final StatementStatistics terminateRentalsStats = register("terminateRentals");
+    private final StatementStatistics findRentedInstrumentsByStudentStats = register("findRentedInstrumentsByStudent");
+    private final StatementStatistics countActiveRentalsByStudentStats = register("countActiveRentalsByStudent");
+    private final StatementStatistics scanNewlyOverdueRentalsStats = register("scanNewlyOverdueRentals");
+    private final StatementStatistics findOverdueRentalsStats = register("findOverdueRentals");
+    private final StatementStatistics archiveTerminatedRentalsStats = register("archiveTerminatedRentals");
+    private final StatementStatistics findRentalHistoryStats = register("findRentalHistory");
+    private final StatementStatistics readRentalReportStats = register("readRentalReport");
+    private final StatementStatistics recomputeRentalUtilizationStats = register("recomputeRentalUtilization");
 
-    private PreparedStatement findAllInstruments;
-    private PreparedStatement findAllAvailableRentalInstruments;
-    private PreparedStatement findAllInstrumentsByName;
-    private PreparedStatement findAllAvailableRentalInstrumentsByName;
-    private PreparedStatement findSpecificRentalInstrumentById;
-    private PreparedStatement findSpecificRentalInstrumentByIdLockingForUpdate;
-    private PreparedStatement updateRentalInformation;
-    private PreparedStatement terminateRental;
-    private PreparedStatement findRentedInstrumentsByStudent;
-    private PreparedStatement createRentalRow;
+    /**
+     * The connection of a transaction that is kept open between calls, f.e. after
+     * a row has been locked for update. Such a connection stays with the calling
+     * thread until the transaction is committed or rolled back.
+     */
+    private final ThreadLocal<PooledConnection> ongoingTransaction = new ThreadLocal<>();
 
-    private Connection connection;
+    /**
+     * When the calling thread last committed a change, as given by
+     * <code>System.currentTimeMillis()</code>. For a while after a change, the reads
+     * of the same thread are routed to the primary database, so that they see the
+     * change even if the replica has not yet applied it.
+     */
+    private final ThreadLocal<Long> lastWriteMillis = new ThreadLocal<>();
 
     /**
-     * Constructs a new DAO object connected to the Soundgood Music School database
+     * Constructs a new DAO object connected to the Soundgood Music School database.
+     * If the <code>soundgood.replica.url</code> system property is set, read-only
+     * queries that don't lock rows are routed to that database, a read-only replica of
+     * the primary database, while writes, locking reads and the reads that load the
+     * catalog stay on the primary. A thread that has committed a change reads from the
+     * primary for <code>soundgood.replica.readYourWritesMillis</code> (default 1000)
+     * afterwards, set it to 0 to always read from the replica.
      * @throws SoundgoodDBEException
      */
     public SoundgoodDAO() throws SoundgoodDBEException {
         try {
             connectToSoundgoodDB();
+            migrateSchema();
             prepareStatements();
 
-        } catch (ClassNotFoundException | SQLException exception) {
+        } catch (SQLException exception) {
             throw new SoundgoodDBEException("Could not connect to datasource.", exception);
         }
     }
 
     /**
-     * SQL queries for the database connection
-     *
-     * @throws SQLException
+     * SQL queries for the database connection. The statements are prepared on each
+     * pooled connection the first time that connection executes them.
      */
-    private void prepareStatements() throws SQLException {
+    private void prepareStatements() {
 
-        findAllInstruments = connection.prepareStatement(
-                "SELECT * FROM "
-                        + RENTAL_INSTRUMENT_TABLE_NAME
+        findAllInstruments =
+                "SELECT " + RentalInstrumentMapper.COLUMNS
+                        + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
                         + " LEFT JOIN " + INSTRUMENT_TABLE_NAME
                         + " ON " + RENTAL_INSTRUMENT_INSTRUMENT_FK_COL_NAME + " = " + INSTRUMENT_TABLE_NAME + "." + ID_COL_NAME
                         + " WHERE " + TERMINATED_COL_NAME + " IS false "
-                        + " ORDER BY " + NAME_COL_NAME + ", " + RENTAL_ID_COL_NAME + " asc"
-        );
+                        + CATALOG_ORDER_BY;
 
-        findAllInstrumentsByName = connection.prepareStatement(
-                "SELECT * FROM "
-                        + RENTAL_INSTRUMENT_TABLE_NAME
+        findAllInstrumentsByName =
+                "SELECT " + RentalInstrumentMapper.COLUMNS
+                        + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
                         + " LEFT JOIN " + INSTRUMENT_TABLE_NAME
                         + " ON " + RENTAL_INSTRUMENT_INSTRUMENT_FK_COL_NAME + " = " + INSTRUMENT_TABLE_NAME + "." + ID_COL_NAME
                         + " WHERE " + NAME_COL_NAME + " = ?"
                         + " AND " + TERMINATED_COL_NAME + " IS false "
-                        + " ORDER BY " + RENTAL_ID_COL_NAME + " asc"
-        );
+                        + CATALOG_ORDER_BY;
 
-        findAllAvailableRentalInstruments = connection.prepareStatement(
-                "SELECT * FROM "
-                        + RENTAL_INSTRUMENT_TABLE_NAME
+        findAllAvailableRentalInstruments =
+                "SELECT " + RentalInstrumentMapper.COLUMNS
+                        + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
                         + " LEFT JOIN " + INSTRUMENT_TABLE_NAME
                         + " ON " + RENTAL_INSTRUMENT_INSTRUMENT_FK_COL_NAME + " = " + INSTRUMENT_TABLE_NAME + "." + ID_COL_NAME
                         + " WHERE " + IS_AVAILABLE_COL_NAME + " IS true"
                         + " AND " + TERMINATED_COL_NAME + " IS false "
-                        + " ORDER BY " + NAME_COL_NAME + ", " + RENTAL_ID_COL_NAME + " asc"
-        );
+                        + CATALOG_ORDER_BY;
 
-        findAllAvailableRentalInstrumentsByName = connection.prepareStatement(
-                "SELECT *"
+        findAllAvailableRentalInstrumentsByName =
+                "SELECT " + RentalInstrumentMapper.COLUMNS
                         + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
                         + " LEFT JOIN " + INSTRUMENT_TABLE_NAME
                         + " ON " + RENTAL_INSTRUMENT_INSTRUMENT_FK_COL_NAME + " = " + INSTRUMENT_TABLE_NAME + "." + ID_COL_NAME
                         + " WHERE " + NAME_COL_NAME + " = ? "
                         + " AND " + IS_AVAILABLE_COL_NAME + " IS true"
                         + " AND " + TERMINATED_COL_NAME + " IS false "
-                        + " ORDER BY " + RENTAL_ID_COL_NAME + " ASC "
-        );
+                        + CATALOG_ORDER_BY;
 
-        findSpecificRentalInstrumentById = connection.prepareStatement(
-                "SELECT *"
+        findSpecificRentalInstrumentById =
+                "SELECT " + RentalInstrumentMapper.COLUMNS
                         + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
                         + " LEFT JOIN " + INSTRUMENT_TABLE_NAME
                         + " ON " + RENTAL_INSTRUMENT_INSTRUMENT_FK_COL_NAME + " = " + INSTRUMENT_TABLE_NAME + "." + ID_COL_NAME
                         + " WHERE " + RENTAL_ID_COL_NAME + " = ? "
-                        + " AND " + TERMINATED_COL_NAME + " IS false "
-        );
+                        + " AND " + TERMINATED_COL_NAME + " IS false ";
 
-        findSpecificRentalInstrumentByIdLockingForUpdate = connection.prepareStatement(
-                "SELECT *"
+        findSpecificRentalInstrumentByIdLockingForUpdate =
+                "SELECT " + RentalInstrumentMapper.COLUMNS
                         + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
                         + " INNER JOIN " + INSTRUMENT_TABLE_NAME
                         + " ON " + RENTAL_INSTRUMENT_INSTRUMENT_FK_COL_NAME + " = " + INSTRUMENT_TABLE_NAME + "." + ID_COL_NAME
                         + " WHERE " + RENTAL_ID_COL_NAME + " = ? "
                         + " AND " + TERMINATED_COL_NAME + " IS false "
-                        + " FOR UPDATE "
-        );
-
-        updateRentalInformation = connection.prepareStatement(
-                "UPDATE "
-                        + RENTAL_INSTRUMENT_TABLE_NAME
-                        + " SET " + STUDENT_ID_COL_NAME + " = ?"
-                        + ", " + IS_AVAILABLE_COL_NAME + " = 'false' "
-                        + ", " + RETURN_DATE_COL_NAME + "= ? "
-                        + " WHERE " + RENTAL_ID_COL_NAME + " = ? "
+                        + " FOR UPDATE ";
+
+        // Serializes the rentals of each student, see lockStudents(). The locks are taken
+        // in lock key order, so that two transactions renting to several students can't
+        // deadlock, and are held until the transaction ends.
+        lockStudents =
+                "SELECT pg_advisory_xact_lock(" + STUDENT_LOCK_CLASS + ", " + STUDENT_LOCK_COL_NAME + ")"
+                        + " FROM (SELECT DISTINCT hashtext(" + STUDENT_ID_COL_NAME + ") AS " + STUDENT_LOCK_COL_NAME
+                        + " FROM unnest(CAST(? AS varchar[])) AS " + STUDENT_ID_COL_NAME + ") AS students" // 1. student ids
+                        + " ORDER BY " + STUDENT_LOCK_COL_NAME;
+
+        // Checks the instrument and the student's rentals and rents the instrument in one
+        // statement. The update re-checks is_available on the locked row, so of two
+        // concurrent renters only one gets the instrument.
+        rentInstrument =
+                "WITH target AS ("
+                        + " SELECT " + IS_AVAILABLE_COL_NAME
+                        + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " WHERE " + RENTAL_ID_COL_NAME + " = ? "             // 1. rental id
+                        + " AND " + TERMINATED_COL_NAME + " IS false ), "
+                        + "rented AS ("
+                        + " SELECT count(*) AS " + NUMBER_OF_INSTRUMENTS_COL_NAME
+                        + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " WHERE " + STUDENT_ID_COL_NAME + " = ? "           // 2. student id
+                        + " AND " + TERMINATED_COL_NAME + " IS false ), "
+                        + "rental AS ("
+                        + " UPDATE " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " SET " + STUDENT_ID_COL_NAME + " = ?"               // 3. student id
+                        + ", " + IS_AVAILABLE_COL_NAME + " = false "
+                        + ", " + RETURN_DATE_COL_NAME + " = ? "               // 4. return date
+                        + ", " + VERSION_COL_NAME + " = " + VERSION_COL_NAME + " + 1"
+                        + " WHERE " + RENTAL_ID_COL_NAME + " = ? "            // 5. rental id
                         + " AND " + TERMINATED_COL_NAME + " IS false "
-        );
+                        + " AND " + IS_AVAILABLE_COL_NAME + " IS true "
+                        + " AND (SELECT " + NUMBER_OF_INSTRUMENTS_COL_NAME + " FROM rented) < ? " // 6. max rentals
+                        + " RETURNING " + RENTAL_ID_COL_NAME + " ) "
+                        + "SELECT (SELECT count(*) FROM target) AS " + FOUND_COL_NAME
+                        + ", (SELECT " + NUMBER_OF_INSTRUMENTS_COL_NAME + " FROM rented) AS " + NUMBER_OF_INSTRUMENTS_COL_NAME
+                        + ", (SELECT count(*) FROM rental) AS " + UPDATED_COL_NAME;
+
+        for (ClaimPreference preference : ClaimPreference.values()) {
+            rentAnyInstrument.put(preference, rentAnyInstrumentQuery(preference));
+        }
 
-        terminateRental = connection.prepareStatement(
-                "UPDATE "
-                        + RENTAL_INSTRUMENT_TABLE_NAME
-                        + " SET " + RETURN_DATE_COL_NAME + " = ? "
-                        + ", " + TERMINATED_COL_NAME + " = true"
-                        + " WHERE " + RENTAL_ID_COL_NAME + " = ? "
-                        + " AND " + TERMINATED_COL_NAME + " IS false "
-        );
+        // Terminates the rental and inserts a new, available row for the same instrument
+        // in one statement, copying the instrument's details on the server.
+        String endRental = endRental(false);
 
-        createRentalRow = connection.prepareStatement(
-                "INSERT INTO "
-                        + RENTAL_INSTRUMENT_TABLE_NAME
+        String recreateAvailableRow =
+                " INSERT INTO " + RENTAL_INSTRUMENT_TABLE_NAME
                         + "( " + RENTAL_ID_COL_NAME
                         + ", " + BRAND_COL_NAME
                         + ", " + IS_AVAILABLE_COL_NAME
@@ -151,26 +327,408 @@ public class SoundgoodDAO {
                         + ", " + RETURN_DATE_COL_NAME
                         + ", " + MONTHLY_COST_COL_NAME
                         + ", " + TERMINATED_COL_NAME + " )"
-                        + " VALUES "
-                        + "( " + " ? "  // 1. rental ID
-                        + ", ? "        // 2. brand
-                        + ", 'yes '"
-                        + ", ? "        // 3. condition
-                        + ", ? "        // 4. instrument id
-                        + ", NULL "
-                        + ", NULL "
-                        + ", ? "        // 5. monthly cost
-                        + ", 'no' )"
-        );
-
-        findRentedInstrumentsByStudent = connection.prepareStatement(
-                "SELECT *"
+                        + " SELECT " + RENTAL_ID_COL_NAME
+                        + ", " + BRAND_COL_NAME
+                        + ", true"
+                        + ", " + CONDITION_COL_NAME
+                        + ", " + INSTRUMENT_ID_COL_NAME
+                        + ", NULL"
+                        + ", NULL"
+                        + ", " + MONTHLY_COST_COL_NAME
+                        + ", false"
+                        + " FROM ended";
+
+        terminateRental =
+                "WITH target AS ("
+                        + " SELECT " + STUDENT_ID_COL_NAME
+                        + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " WHERE " + RENTAL_ID_COL_NAME + " = ? "            // 1. rental id
+                        + " AND " + TERMINATED_COL_NAME + " IS false ), "
+                        + endRental + ", "                                    // 2. date, 3. rental id
+                        + "recreated AS ("
+                        + recreateAvailableRow
+                        + " RETURNING " + RENTAL_ID_COL_NAME + " ) "
+                        + "SELECT (SELECT count(*) FROM target) AS " + FOUND_COL_NAME
+                        + ", (SELECT count(*) FROM recreated) AS " + UPDATED_COL_NAME;
+
+        // The batched statements only report the number of changed rows, which is why
+        // they can be sent to the database as JDBC batches.
+        rentInstrumentInBatch =
+                "UPDATE " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " SET " + STUDENT_ID_COL_NAME + " = ?"               // 1. student id
+                        + ", " + IS_AVAILABLE_COL_NAME + " = false "
+                        + ", " + RETURN_DATE_COL_NAME + " = ? "               // 2. return date
+                        + ", " + VERSION_COL_NAME + " = " + VERSION_COL_NAME + " + 1"
+                        + " WHERE " + RENTAL_ID_COL_NAME + " = ? "            // 3. rental id
+                        + " AND " + TERMINATED_COL_NAME + " IS false "
+                        + " AND " + IS_AVAILABLE_COL_NAME + " IS true "
+                        + " AND (SELECT count(*) FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " WHERE " + STUDENT_ID_COL_NAME + " = ? "           // 4. student id
+                        + " AND " + TERMINATED_COL_NAME + " IS false) < ? ";  // 5. max rentals
+
+        terminateRentalInBatch =
+                "WITH " + endRental                                           // 1. date, 2. rental id
+                        + recreateAvailableRow;
+
+        // The optimistic statements read a row with its version without locking it, and
+        // change the row only if the version is still the same.
+        readRentState =
+                "SELECT " + IS_AVAILABLE_COL_NAME
+                        + ", " + VERSION_COL_NAME
+                        + ", (SELECT count(*) FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " WHERE " + STUDENT_ID_COL_NAME + " = ? "           // 1. student id
+                        + " AND " + TERMINATED_COL_NAME + " IS false) AS " + NUMBER_OF_INSTRUMENTS_COL_NAME
+                        + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " WHERE " + RENTAL_ID_COL_NAME + " = ? "            // 2. rental id
+                        + " AND " + TERMINATED_COL_NAME + " IS false ";
+
+        rentInstrumentAtVersion =
+                rentInstrumentInBatch                                         // 1. - 5. as in batch
+                        + " AND " + VERSION_COL_NAME + " = ? ";               // 6. version read
+
+        readTerminateState =
+                "SELECT " + STUDENT_ID_COL_NAME
+                        + ", " + VERSION_COL_NAME
+                        + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " WHERE " + RENTAL_ID_COL_NAME + " = ? "            // 1. rental id
+                        + " AND " + TERMINATED_COL_NAME + " IS false ";
+
+        terminateRentalAtVersion =
+                "WITH " + endRental(true)                                     // 1. date, 2. rental id, 3. version
+                        + recreateAvailableRow;
+
+        findRentedInstrumentsByStudent =
+                "SELECT " + RentalInstrumentMapper.COLUMNS
                         + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
                         + " LEFT JOIN " + INSTRUMENT_TABLE_NAME
                         + " ON " + RENTAL_INSTRUMENT_INSTRUMENT_FK_COL_NAME + " = " + INSTRUMENT_TABLE_NAME + "." + ID_COL_NAME
                         + " WHERE " + STUDENT_ID_COL_NAME + " = ?"
+                        + " AND " + TERMINATED_COL_NAME + " IS false ";
+
+        countActiveRentalsByStudent =
+                "SELECT " + STUDENT_ID_COL_NAME + ", count(*) AS " + NUMBER_OF_INSTRUMENTS_COL_NAME
+                        + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " WHERE " + STUDENT_ID_COL_NAME + " IS NOT NULL "
                         + " AND " + TERMINATED_COL_NAME + " IS false "
-        );
+                        + " GROUP BY " + STUDENT_ID_COL_NAME;
+
+        findInstrumentPage = keysetPageQuery(false, false);
+        findInstrumentPageByName = keysetPageQuery(true, false);
+        findAvailableInstrumentPage = keysetPageQuery(false, true);
+        findAvailableInstrumentPageByName = keysetPageQuery(true, true);
+
+        String scannedUntil = "(SELECT " + SCANNED_UNTIL_COL_NAME + " FROM " + OVERDUE_SCAN_TABLE_NAME
+                + " WHERE " + SCANNER_COL_NAME + " = '" + OVERDUE_SCANNER + "')";
+        String activeRentals =
+                "SELECT " + RentalInstrumentMapper.COLUMNS
+                        + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " LEFT JOIN " + INSTRUMENT_TABLE_NAME
+                        + " ON " + RENTAL_INSTRUMENT_INSTRUMENT_FK_COL_NAME + " = " + INSTRUMENT_TABLE_NAME + "." + ID_COL_NAME
+                        + " WHERE " + TERMINATED_COL_NAME + " IS false"
+                        + " AND " + STUDENT_ID_COL_NAME + " IS NOT NULL";
+        String returnDateOrder = " ORDER BY " + RETURN_DATE_COL_NAME + ", " + RENTAL_ID_COL_NAME;
+
+        lockOverdueScanMark =
+                "SELECT " + SCANNED_UNTIL_COL_NAME + " FROM " + OVERDUE_SCAN_TABLE_NAME
+                        + " WHERE " + SCANNER_COL_NAME + " = '" + OVERDUE_SCANNER + "' FOR UPDATE";
+
+        findNewlyOverdueRentals = activeRentals
+                + " AND " + RETURN_DATE_COL_NAME + " > coalesce(" + scannedUntil + ", '-infinity')"
+                + " AND " + RETURN_DATE_COL_NAME + " <= ?"
+                + returnDateOrder;
+
+        advanceOverdueScanMark =
+                "UPDATE " + OVERDUE_SCAN_TABLE_NAME + " SET " + SCANNED_UNTIL_COL_NAME + " = ?"
+                        + " WHERE " + SCANNER_COL_NAME + " = '" + OVERDUE_SCANNER + "'";
+
+        findOverdueRentals = activeRentals
+                + " AND " + RETURN_DATE_COL_NAME + " <= " + scannedUntil
+                + returnDateOrder;
+
+        String archivedColumns = RENTAL_ID_COL_NAME
+                + ", " + BRAND_COL_NAME
+                + ", " + CONDITION_COL_NAME
+                + ", " + INSTRUMENT_ID_COL_NAME
+                + ", " + STUDENT_ID_COL_NAME
+                + ", " + MONTHLY_COST_COL_NAME;
+
+        findOldestTerminatedMonth =
+                "SELECT date_trunc('month', min(" + RETURN_DATE_COL_NAME + ")) AS " + OLDEST_MONTH_COL_NAME
+                        + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " WHERE " + TERMINATED_COL_NAME + " IS true";
+
+        // Terminated rows are never changed again, so they can be moved without locking
+        // them first. Rows without a return date are moved with every batch.
+        archiveTerminatedRentals =
+                "WITH archived AS ("
+                        + " DELETE FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " WHERE ctid = ANY (ARRAY("
+                        + " SELECT ctid FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " WHERE " + TERMINATED_COL_NAME + " IS true"
+                        + " AND (" + RETURN_DATE_COL_NAME + " < ?"            // 1. end of the month
+                        + " OR " + RETURN_DATE_COL_NAME + " IS NULL)"
+                        + " LIMIT ? ))"                                       // 2. batch size
+                        + " RETURNING " + archivedColumns + ", " + RETURN_DATE_COL_NAME + " ) "
+                        + "INSERT INTO " + RENTAL_HISTORY_TABLE_NAME
+                        + " ( " + archivedColumns + ", " + ENDED_AT_COL_NAME + " )"
+                        + " SELECT " + archivedColumns + ", " + RETURN_DATE_COL_NAME
+                        + " FROM archived";
+
+        // The terminated rows that have not been archived yet are read as well, so that
+        // a rental is part of the history as soon as it is terminated.
+        findRentalHistoryByStudent = rentalHistoryQuery(STUDENT_ID_COL_NAME);
+        findRentalHistoryByInstrument = rentalHistoryQuery(RENTAL_ID_COL_NAME);
+
+        // The summaries are changed by the rows of the rented or returned instruments,
+        // grouped by type. The summary rows are locked in type order, so that two bulk
+        // operations changing several types can't deadlock. A type without a summary row,
+        // f.e. one added after the summaries were created, gets a row computed from the
+        // rental instruments of that type, which already includes the change. If another
+        // transaction inserts the row first, the change is added to it instead.
+        String changedActiveRows = " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                + " WHERE " + RENTAL_ID_COL_NAME + " = ANY (?)"
+                + " AND " + TERMINATED_COL_NAME + " IS false";
+        String changedRentals = "(SELECT " + RENTALS_COL_NAME + " FROM changed"
+                + " WHERE changed." + TYPE_COL_NAME + " = excluded." + INSTRUMENT_TYPE_COL_NAME + ")";
+        String changedRevenue = "(SELECT " + REVENUE_COL_NAME + " FROM changed"
+                + " WHERE changed." + TYPE_COL_NAME + " = excluded." + INSTRUMENT_TYPE_COL_NAME + ")";
+
+        updateRentalUtilization =
+                "WITH changed AS ("
+                        + " SELECT " + TYPE_COL_NAME
+                        + ", count(*) AS " + RENTALS_COL_NAME
+                        + ", sum(" + MONTHLY_COST_COL_NAME + ") AS " + REVENUE_COL_NAME
+                        + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " LEFT JOIN " + INSTRUMENT_TABLE_NAME
+                        + " ON " + RENTAL_INSTRUMENT_INSTRUMENT_FK_COL_NAME + " = " + INSTRUMENT_TABLE_NAME + "." + ID_COL_NAME
+                        + " WHERE " + RENTAL_ID_COL_NAME + " = ANY (?)"       // 1. rental ids
+                        + " AND " + TERMINATED_COL_NAME + " IS false"
+                        + " GROUP BY " + TYPE_COL_NAME + " ), "
+                        + "locked AS ("
+                        + " SELECT " + INSTRUMENT_TYPE_COL_NAME
+                        + " FROM " + RENTAL_UTILIZATION_TABLE_NAME
+                        + " WHERE " + INSTRUMENT_TYPE_COL_NAME + " IN (SELECT " + TYPE_COL_NAME + " FROM changed)"
+                        + " ORDER BY " + INSTRUMENT_TYPE_COL_NAME + " FOR UPDATE ), "
+                        + "updated AS ("
+                        + " UPDATE " + RENTAL_UTILIZATION_TABLE_NAME
+                        + " SET " + RENTED_COL_NAME + " = " + RENTED_COL_NAME
+                        + " + ? * changed." + RENTALS_COL_NAME                // 2. 1 for rents, -1 for returns
+                        + ", " + MONTHLY_REVENUE_COL_NAME + " = " + MONTHLY_REVENUE_COL_NAME
+                        + " + ? * changed." + REVENUE_COL_NAME                // 3. as 2.
+                        + " FROM changed"
+                        + " WHERE " + INSTRUMENT_TYPE_COL_NAME + " = changed." + TYPE_COL_NAME
+                        + " AND " + INSTRUMENT_TYPE_COL_NAME + " IN (SELECT " + INSTRUMENT_TYPE_COL_NAME + " FROM locked)"
+                        + " RETURNING " + INSTRUMENT_TYPE_COL_NAME + " ) "
+                        + "INSERT INTO " + RENTAL_UTILIZATION_TABLE_NAME
+                        + " ( " + INSTRUMENT_TYPE_COL_NAME
+                        + ", " + INSTRUMENTS_COL_NAME
+                        + ", " + RENTED_COL_NAME
+                        + ", " + MONTHLY_REVENUE_COL_NAME + " )"
+                        + " SELECT " + TYPE_COL_NAME
+                        + ", count(" + RENTAL_ID_COL_NAME + ")"
+                        + ", count(" + STUDENT_ID_COL_NAME + ")"
+                        + ", coalesce(sum(" + MONTHLY_COST_COL_NAME + ")"
+                        + " FILTER (WHERE " + STUDENT_ID_COL_NAME + " IS NOT NULL), 0)"
+                        + " FROM " + INSTRUMENT_TABLE_NAME
+                        + " LEFT JOIN " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " ON " + RENTAL_INSTRUMENT_INSTRUMENT_FK_COL_NAME + " = " + INSTRUMENT_TABLE_NAME + "." + ID_COL_NAME
+                        + " AND " + TERMINATED_COL_NAME + " IS false"
+                        + " WHERE " + TYPE_COL_NAME + " IN (SELECT " + TYPE_COL_NAME + " FROM changed)"
+                        + " AND " + TYPE_COL_NAME + " NOT IN (SELECT " + INSTRUMENT_TYPE_COL_NAME + " FROM locked)"
+                        + " GROUP BY " + TYPE_COL_NAME
+                        + " ORDER BY " + TYPE_COL_NAME
+                        + " ON CONFLICT ( " + INSTRUMENT_TYPE_COL_NAME + " ) DO UPDATE"
+                        + " SET " + RENTED_COL_NAME + " = " + RENTAL_UTILIZATION_TABLE_NAME + "." + RENTED_COL_NAME
+                        + " + ? * " + changedRentals                          // 4. as 2.
+                        + ", " + MONTHLY_REVENUE_COL_NAME + " = " + RENTAL_UTILIZATION_TABLE_NAME + "." + MONTHLY_REVENUE_COL_NAME
+                        + " + ? * " + changedRevenue;                         // 5. as 2.
+
+        addMonthlyRevenue =
+                "INSERT INTO " + MONTHLY_REVENUE_TABLE_NAME
+                        + " ( " + MONTH_COL_NAME + ", " + RENTALS_COL_NAME + ", " + REVENUE_COL_NAME + " )"
+                        + " SELECT CAST(date_trunc('month', CAST(? AS TIMESTAMP)) AS DATE)"   // 1. rent date
+                        + ", count(*), sum(" + MONTHLY_COST_COL_NAME + ")"
+                        + changedActiveRows                                   // 2. rental ids
+                        + " HAVING count(*) > 0"
+                        + " ON CONFLICT ( " + MONTH_COL_NAME + " ) DO UPDATE"
+                        + " SET " + RENTALS_COL_NAME + " = " + MONTHLY_REVENUE_TABLE_NAME + "." + RENTALS_COL_NAME
+                        + " + excluded." + RENTALS_COL_NAME
+                        + ", " + REVENUE_COL_NAME + " = " + MONTHLY_REVENUE_TABLE_NAME + "." + REVENUE_COL_NAME
+                        + " + excluded." + REVENUE_COL_NAME;
+
+        readRentalUtilization =
+                "SELECT " + INSTRUMENT_TYPE_COL_NAME
+                        + ", " + INSTRUMENTS_COL_NAME
+                        + ", " + RENTED_COL_NAME
+                        + ", " + MONTHLY_REVENUE_COL_NAME
+                        + " FROM " + RENTAL_UTILIZATION_TABLE_NAME
+                        + " ORDER BY " + INSTRUMENT_TYPE_COL_NAME;
+
+        readMonthlyRevenue =
+                "SELECT " + MONTH_COL_NAME
+                        + ", " + RENTALS_COL_NAME
+                        + ", " + REVENUE_COL_NAME
+                        + " FROM " + MONTHLY_REVENUE_TABLE_NAME
+                        + " ORDER BY " + MONTH_COL_NAME + " DESC"
+                        + " LIMIT ?";                                         // 1. number of months
+
+        lockRentalUtilization =
+                "SELECT " + INSTRUMENT_TYPE_COL_NAME
+                        + " FROM " + RENTAL_UTILIZATION_TABLE_NAME
+                        + " ORDER BY " + INSTRUMENT_TYPE_COL_NAME + " FOR UPDATE";
+
+        recomputeRentalUtilization =
+                "INSERT INTO " + RENTAL_UTILIZATION_TABLE_NAME
+                        + " ( " + INSTRUMENT_TYPE_COL_NAME
+                        + ", " + INSTRUMENTS_COL_NAME
+                        + ", " + RENTED_COL_NAME
+                        + ", " + MONTHLY_REVENUE_COL_NAME + " )"
+                        + " SELECT " + TYPE_COL_NAME
+                        + ", count(" + RENTAL_ID_COL_NAME + ")"
+                        + ", count(" + STUDENT_ID_COL_NAME + ")"
+                        + ", coalesce(sum(" + MONTHLY_COST_COL_NAME + ")"
+                        + " FILTER (WHERE " + STUDENT_ID_COL_NAME + " IS NOT NULL), 0)"
+                        + " FROM " + INSTRUMENT_TABLE_NAME
+                        + " LEFT JOIN " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " ON " + RENTAL_INSTRUMENT_INSTRUMENT_FK_COL_NAME + " = " + INSTRUMENT_TABLE_NAME + "." + ID_COL_NAME
+                        + " AND " + TERMINATED_COL_NAME + " IS false"
+                        + " GROUP BY " + TYPE_COL_NAME
+                        + " ON CONFLICT ( " + INSTRUMENT_TYPE_COL_NAME + " ) DO UPDATE"
+                        + " SET " + INSTRUMENTS_COL_NAME + " = excluded." + INSTRUMENTS_COL_NAME
+                        + ", " + RENTED_COL_NAME + " = excluded." + RENTED_COL_NAME
+                        + ", " + MONTHLY_REVENUE_COL_NAME + " = excluded." + MONTHLY_REVENUE_COL_NAME;
+
+        publishRentalChanges =
+                "SELECT pg_notify(?, concat_ws('" + RentalChangeListener.FIELD_SEPARATOR + "', ?::text, "
+                        + RENTAL_ID_COL_NAME + ","
+                        + " CASE WHEN " + IS_AVAILABLE_COL_NAME + " THEN '1' ELSE '0' END,"
+                        + " coalesce(" + STUDENT_ID_COL_NAME + ", ''),"
+                        + " coalesce(" + RETURN_DATE_COL_NAME + "::text, '')))"
+                        + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                        + " WHERE " + RENTAL_ID_COL_NAME + " = ANY (?)"
+                        + " AND " + TERMINATED_COL_NAME + " IS false";
+    }
+
+    /**
+     * Creates a statement renting the first available instrument with a given name, in
+     * the order of the preference. Rows locked by other transactions are skipped, so
+     * concurrent renters get different instruments without waiting for each other.
+     * Parameters: 1. student id, 2. instrument name, 3. max rentals, 4. student id,
+     * 5. return date.
+     */
+    private String rentAnyInstrumentQuery(ClaimPreference preference) {
+        String rentalId = RENTAL_INSTRUMENT_TABLE_NAME + "." + RENTAL_ID_COL_NAME;
+        String order;
+        switch (preference) {
+            case CHEAPEST:
+                order = MONTHLY_COST_COL_NAME + ", length(" + rentalId + "), " + rentalId;
+                break;
+            case BEST_CONDITION:
+                order = "CASE lower(" + CONDITION_COL_NAME + ")"
+                        + " WHEN 'new' THEN 0 WHEN 'excellent' THEN 1 WHEN 'very good' THEN 2"
+                        + " WHEN 'good' THEN 3 WHEN 'fair' THEN 4 WHEN 'poor' THEN 5 ELSE 6 END"
+                        + ", length(" + rentalId + "), " + rentalId;
+                break;
+            default:
+                order = "length(" + rentalId + "), " + rentalId;
+        }
+
+        return "WITH rented AS ("
+                + " SELECT count(*) AS " + NUMBER_OF_INSTRUMENTS_COL_NAME
+                + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                + " WHERE " + STUDENT_ID_COL_NAME + " = ? "
+                + " AND " + TERMINATED_COL_NAME + " IS false ), "
+                + "candidate AS ("
+                + " SELECT " + rentalId
+                + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                + " INNER JOIN " + INSTRUMENT_TABLE_NAME
+                + " ON " + RENTAL_INSTRUMENT_INSTRUMENT_FK_COL_NAME + " = " + INSTRUMENT_TABLE_NAME + "." + ID_COL_NAME
+                + " WHERE " + NAME_COL_NAME + " = ? "
+                + " AND " + IS_AVAILABLE_COL_NAME + " IS true "
+                + " AND " + TERMINATED_COL_NAME + " IS false "
+                + " AND (SELECT " + NUMBER_OF_INSTRUMENTS_COL_NAME + " FROM rented) < ? "
+                + " ORDER BY " + order
+                + " LIMIT 1"
+                + " FOR UPDATE OF " + RENTAL_INSTRUMENT_TABLE_NAME + " SKIP LOCKED ), "
+                + "rental AS ("
+                + " UPDATE " + RENTAL_INSTRUMENT_TABLE_NAME
+                + " SET " + STUDENT_ID_COL_NAME + " = ?"
+                + ", " + IS_AVAILABLE_COL_NAME + " = false "
+                + ", " + RETURN_DATE_COL_NAME + " = ? "
+                + ", " + VERSION_COL_NAME + " = " + VERSION_COL_NAME + " + 1"
+                + " WHERE " + RENTAL_ID_COL_NAME + " = (SELECT " + RENTAL_ID_COL_NAME + " FROM candidate) "
+                + " AND " + TERMINATED_COL_NAME + " IS false "
+                + " RETURNING " + RENTAL_ID_COL_NAME + " ) "
+                + "SELECT (SELECT " + NUMBER_OF_INSTRUMENTS_COL_NAME + " FROM rented) AS " + NUMBER_OF_INSTRUMENTS_COL_NAME
+                + ", (SELECT " + RENTAL_ID_COL_NAME + " FROM rental) AS " + RENTAL_ID_COL_NAME;
+    }
+
+    /**
+     * Creates the common table expression <code>ended</code>, which terminates a rental
+     * and returns the instrument's details. Parameters: the termination date, the rental
+     * id and, if atVersion, the version the row must have.
+     */
+    private String endRental(boolean atVersion) {
+        return "ended AS ("
+                + " UPDATE " + RENTAL_INSTRUMENT_TABLE_NAME
+                + " SET " + RETURN_DATE_COL_NAME + " = ? "
+                + ", " + TERMINATED_COL_NAME + " = true"
+                + ", " + VERSION_COL_NAME + " = " + VERSION_COL_NAME + " + 1"
+                + " WHERE " + RENTAL_ID_COL_NAME + " = ? "
+                + " AND " + TERMINATED_COL_NAME + " IS false "
+                + " AND " + STUDENT_ID_COL_NAME + " IS NOT NULL "
+                + (atVersion ? " AND " + VERSION_COL_NAME + " = ? " : "")
+                + " RETURNING " + RENTAL_ID_COL_NAME
+                + ", " + BRAND_COL_NAME
+                + ", " + CONDITION_COL_NAME
+                + ", " + INSTRUMENT_ID_COL_NAME
+                + ", " + MONTHLY_COST_COL_NAME + " )";
+    }
+
+    /**
+     * Creates a query reading the terminated rentals with a given value of a column,
+     * from both the rental history and <code>rental_instrument</code>, latest first.
+     * Parameters: the value, twice.
+     */
+    private String rentalHistoryQuery(String byColumn) {
+        String projection = " SELECT " + RENTAL_ID_COL_NAME
+                + ", " + NAME_COL_NAME
+                + ", " + BRAND_COL_NAME
+                + ", " + CONDITION_COL_NAME
+                + ", " + MONTHLY_COST_COL_NAME
+                + ", " + STUDENT_ID_COL_NAME;
+        String instrumentJoin = " LEFT JOIN " + INSTRUMENT_TABLE_NAME
+                + " ON " + INSTRUMENT_ID_COL_NAME + " = " + INSTRUMENT_TABLE_NAME + "." + ID_COL_NAME;
+
+        return projection + ", " + ENDED_AT_COL_NAME
+                + " FROM " + RENTAL_HISTORY_TABLE_NAME + instrumentJoin
+                + " WHERE " + byColumn + " = ?"
+                + " UNION ALL"
+                + projection + ", " + RETURN_DATE_COL_NAME + " AS " + ENDED_AT_COL_NAME
+                + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME + instrumentJoin
+                + " WHERE " + byColumn + " = ?"
+                + " AND " + TERMINATED_COL_NAME + " IS true"
+                + " ORDER BY " + ENDED_AT_COL_NAME + " DESC NULLS LAST";
+    }
+
+    /**
+     * Creates a query reading one page of rental instruments after a given
+     * (name, rental id) key, in the same order as the catalog listings.
+     * Parameters: 1. name (only if byName), then the name, the length of the rental
+     * id and the rental id of the key, then the page size.
+     */
+    private String keysetPageQuery(boolean byName, boolean availableOnly) {
+        return "SELECT " + RentalInstrumentMapper.COLUMNS
+                + " FROM " + RENTAL_INSTRUMENT_TABLE_NAME
+                + " LEFT JOIN " + INSTRUMENT_TABLE_NAME
+                + " ON " + RENTAL_INSTRUMENT_INSTRUMENT_FK_COL_NAME + " = " + INSTRUMENT_TABLE_NAME + "." + ID_COL_NAME
+                + " WHERE " + TERMINATED_COL_NAME + " IS false "
+                + (byName ? " AND " + NAME_COL_NAME + " = ?" : "")
+                + (availableOnly ? " AND " + IS_AVAILABLE_COL_NAME + " IS true" : "")
+                + " AND (" + NAME_COL_NAME + ", length(" + RENTAL_ID_COL_NAME + "), " + RENTAL_ID_COL_NAME
+                + ") > (?, ?, ?)"
+                + CATALOG_ORDER_BY
+                + " LIMIT ?";
     }
 
     /**
@@ -182,34 +740,30 @@ public class SoundgoodDAO {
     public List<RentalInstrument> findAllRentalInstruments() throws SoundgoodDBEException {
 
         String failureMessage = "Falied to get all rental instruments";
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
         List<RentalInstrument> instruments = new ArrayList<>();
+        PooledConnection connection = null;
         ResultSet result = null;
 
         try {
-            result = findAllInstruments.executeQuery();
+            connection = borrowConnection();
+            result = connection.prepare(findAllInstruments).executeQuery();
             instruments = new ArrayList<RentalInstrument>();
 
+            RentalInstrumentMapper mapper = new RentalInstrumentMapper(result);
             while (result.next()) {
-
-                instruments.add(new RentalInstrument(
-                        result.getString(RENTAL_ID_COL_NAME),
-                        result.getString(BRAND_COL_NAME),
-                        result.getString(NAME_COL_NAME),
-                        result.getString(TYPE_COL_NAME),
-                        result.getBoolean(IS_AVAILABLE_COL_NAME),
-                        result.getDouble(MONTHLY_COST_COL_NAME),
-                        result.getString(CONDITION_COL_NAME),
-                        result.getInt(INSTRUMENT_ID_COL_NAME),
-                        result.getTimestamp(RETURN_DATE_COL_NAME),
-                        result.getString(STUDENT_ID_COL_NAME))
-                );
+                instruments.add(mapper.map(result));
             }
-            connection.commit();
+            commit(connection);
+            succeeded = true;
 
         } catch (SQLException sqle) {
-            handleException(failureMessage, sqle);
+            handleException(connection, failureMessage, sqle);
         } finally {
             closeResultSet(failureMessage, result);
+            releaseConnection(connection);
+            findAllRentalInstrumentsStats.record(startTime, instruments.size(), succeeded);
         }
 
         return instruments;
@@ -225,35 +779,32 @@ public class SoundgoodDAO {
     public List<RentalInstrument> findAllRentalInstrumentsByName(String instrumentName) throws SoundgoodDBEException {
 
         String failureMessage = "Falied to get all rental instruments by specific name";
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
         List<RentalInstrument> instruments = new ArrayList<>();
+        PooledConnection connection = null;
         ResultSet result = null;
 
         try {
-            findAllInstrumentsByName.setString(1, instrumentName);
-            result = findAllInstrumentsByName.executeQuery();
+            connection = borrowReadConnection();
+            PreparedStatement statement = connection.prepare(findAllInstrumentsByName);
+            statement.setString(1, instrumentName);
+            result = statement.executeQuery();
             instruments = new ArrayList<RentalInstrument>();
 
+            RentalInstrumentMapper mapper = new RentalInstrumentMapper(result);
             while (result.next()) {
-
-                instruments.add(new RentalInstrument(
-                        result.getString(RENTAL_ID_COL_NAME),
-                        result.getString(BRAND_COL_NAME),
-                        result.getString(NAME_COL_NAME),
-                        result.getString(TYPE_COL_NAME),
-                        result.getBoolean(IS_AVAILABLE_COL_NAME),
-                        result.getDouble(MONTHLY_COST_COL_NAME),
-                        result.getString(CONDITION_COL_NAME),
-                        result.getInt(INSTRUMENT_ID_COL_NAME),
-                        result.getTimestamp(RETURN_DATE_COL_NAME),
-                        result.getString(STUDENT_ID_COL_NAME))
-                );
+                instruments.add(mapper.map(result));
             }
-            connection.commit();
+            commit(connection);
+            succeeded = true;
 
         } catch (SQLException sqle) {
-            handleException(failureMessage, sqle);
+            handleException(connection, failureMessage, sqle);
         } finally {
             closeResultSet(failureMessage, result);
+            releaseConnection(connection);
+            findAllRentalInstrumentsByNameStats.record(startTime, instruments.size(), succeeded);
         }
 
         return instruments;
@@ -269,36 +820,32 @@ public class SoundgoodDAO {
     public List<? extends RentalInstrumentDTO> findAllAvailableRentalInstruments() throws SoundgoodDBEException {
 
         String failureMessage = "Falied to get all rental instruments";
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
         List<RentalInstrument> instruments = new ArrayList<>();
+        PooledConnection connection = null;
         ResultSet result = null;
 
         try {
-
-            result = findAllAvailableRentalInstruments.executeQuery();
+            connection = borrowReadConnection();
+            result = connection.prepare(findAllAvailableRentalInstruments).executeQuery();
             instruments = new ArrayList<RentalInstrument>();
 
+            RentalInstrumentMapper mapper = new RentalInstrumentMapper(result);
             while (result.next()) {
-
-                instruments.add(new RentalInstrument(
-                        result.getString(RENTAL_ID_COL_NAME),
-                        result.getString(BRAND_COL_NAME),
-                        result.getString(NAME_COL_NAME),
-                        result.getString(TYPE_COL_NAME),
-                        result.getBoolean(IS_AVAILABLE_COL_NAME),
-                        result.getDouble(MONTHLY_COST_COL_NAME),
-                        result.getString(CONDITION_COL_NAME),
-                        result.getInt(INSTRUMENT_ID_COL_NAME),
-                        result.getTimestamp(RETURN_DATE_COL_NAME),
-                        result.getString(STUDENT_ID_COL_NAME))
-                );
+                instruments.add(mapper.map(result));
             }
 
-            connection.commit();
+            commit(connection);
+
+            succeeded = true;
 
         } catch (SQLException sqle) {
-            handleException(failureMessage, sqle);
+            handleException(connection, failureMessage, sqle);
         } finally {
             closeResultSet(failureMessage, result);
+            releaseConnection(connection);
+            findAllAvailableRentalInstrumentsStats.record(startTime, instruments.size(), succeeded);
         }
 
         return instruments;
@@ -317,38 +864,149 @@ public class SoundgoodDAO {
     public List<? extends RentalInstrumentDTO> findAllAvailableRentalInstrumentsByName(String instrumentName) throws SoundgoodDBEException {
 
         String failureMessage = "Falied to get all rental instruments by specific name";
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        PooledConnection connection = null;
         ResultSet result = null;
         List<RentalInstrument> instruments = new ArrayList<>();
 
         try {
-            findAllAvailableRentalInstrumentsByName.setString(1, instrumentName);
-            result = findAllAvailableRentalInstrumentsByName.executeQuery();
+            connection = borrowReadConnection();
+            PreparedStatement statement = connection.prepare(findAllAvailableRentalInstrumentsByName);
+            statement.setString(1, instrumentName);
+            result = statement.executeQuery();
 
+            RentalInstrumentMapper mapper = new RentalInstrumentMapper(result);
             while (result.next()) {
+                instruments.add(mapper.map(result));
+            }
+            commit(connection);
+            succeeded = true;
 
-                instruments.add(new RentalInstrument(
-                        result.getString(RENTAL_ID_COL_NAME),
-                        result.getString(BRAND_COL_NAME),
-                        result.getString(NAME_COL_NAME),
-                        result.getString(TYPE_COL_NAME),
-                        result.getBoolean(IS_AVAILABLE_COL_NAME),
-                        result.getDouble(MONTHLY_COST_COL_NAME),
-                        result.getString(CONDITION_COL_NAME),
-                        result.getInt(INSTRUMENT_ID_COL_NAME),
-                        result.getTimestamp(RETURN_DATE_COL_NAME),
-                        result.getString(STUDENT_ID_COL_NAME))
-                );
+        } catch (SQLException sqle) {
+            handleException(connection, failureMessage, sqle);
+        } finally {
+            closeResultSet(failureMessage, result);
+            releaseConnection(connection);
+            findAllAvailableRentalInstrumentsByNameStats.record(startTime, instruments.size(), succeeded);
+        }
+
+        return instruments;
+
+    }
+
+    /**
+     * Finds one page of rental instruments, using the name and rental id of the last
+     * instrument on the previous page as key. The instruments are ordered by name and
+     * rental id, and the page is read without reading any of the preceding rows.
+     *
+     * @param instrumentName The name of the instruments to list, or <code>null</code> for all names
+     * @param availableOnly  If true, only available instruments are listed
+     * @param afterName      Name of the last instrument on the previous page, or <code>null</code>
+     *                       for the first page
+     * @param afterId        Rental id of the last instrument on the previous page, or <code>null</code>
+     *                       for the first page
+     * @param pageSize       The maximum number of instruments to read
+     * @return The instruments on the page, at most pageSize of them
+     * @throws SoundgoodDBEException If unable to read from the database
+     */
+    public List<RentalInstrument> findRentalInstrumentPage(String instrumentName, boolean availableOnly,
+                                                           String afterName, String afterId, int pageSize)
+            throws SoundgoodDBEException {
+
+        String failureMessage = "Failed to get a page of rental instruments";
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        List<RentalInstrument> instruments = new ArrayList<>();
+        PooledConnection connection = null;
+        ResultSet result = null;
+        boolean byName = instrumentName != null;
+
+        try {
+            connection = borrowReadConnection();
+            PreparedStatement statement = connection.prepare(byName
+                    ? (availableOnly ? findAvailableInstrumentPageByName : findInstrumentPageByName)
+                    : (availableOnly ? findAvailableInstrumentPage : findInstrumentPage));
+
+            int parameter = 1;
+            if (byName) statement.setString(parameter++, instrumentName);
+            statement.setString(parameter++, afterName == null ? "" : afterName);
+            statement.setInt(parameter++, afterId == null ? 0 : afterId.codePointCount(0, afterId.length()));
+            statement.setString(parameter++, afterId == null ? "" : afterId);
+            statement.setInt(parameter, pageSize);
+            result = statement.executeQuery();
+
+            RentalInstrumentMapper mapper = new RentalInstrumentMapper(result);
+            while (result.next()) {
+                instruments.add(mapper.map(result));
             }
-            connection.commit();
+            commit(connection);
+            succeeded = true;
 
         } catch (SQLException sqle) {
-            handleException(failureMessage, sqle);
+            handleException(connection, failureMessage, sqle);
         } finally {
             closeResultSet(failureMessage, result);
+            releaseConnection(connection);
+            findRentalInstrumentPageStats.record(startTime, instruments.size(), succeeded);
         }
 
         return instruments;
+    }
+
+    /**
+     * Reads rental instruments through a server-side cursor and hands them to the
+     * consumer one at a time, in catalog order. At most fetchSize rows are held in
+     * memory at once, regardless of how many instruments there are.
+     *
+     * @param instrumentName The name of the instruments to read, or <code>null</code> for all names
+     * @param availableOnly  If true, only available instruments are read
+     * @param fetchSize      The number of rows fetched from the database in each round trip
+     * @param consumer       Receives each instrument
+     * @throws SoundgoodDBEException If unable to read from the database
+     */
+    public void streamRentalInstruments(String instrumentName, boolean availableOnly, int fetchSize,
+                                        Consumer<? super RentalInstrumentDTO> consumer)
+            throws SoundgoodDBEException {
+
+        String failureMessage = "Failed to stream rental instruments";
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        long rowCount = 0;
+        PooledConnection connection = null;
+        PreparedStatement statement = null;
+        ResultSet result = null;
+        boolean byName = instrumentName != null;
 
+        try {
+            connection = borrowReadConnection();
+            statement = connection.prepare(byName
+                    ? (availableOnly ? findAllAvailableRentalInstrumentsByName : findAllInstrumentsByName)
+                    : (availableOnly ? findAllAvailableRentalInstruments : findAllInstruments));
+
+            if (byName) statement.setString(1, instrumentName);
+            statement.setFetchSize(fetchSize);
+            result = statement.executeQuery();
+
+            RentalInstrumentMapper mapper = new RentalInstrumentMapper(result);
+            while (result.next()) {
+                consumer.accept(mapper.map(result));
+                rowCount++;
+            }
+            commit(connection);
+            succeeded = true;
+
+        } catch (SQLException sqle) {
+            handleException(connection, failureMessage, sqle);
+        } catch (RuntimeException consumerFailure) {
+            rollbackQuietly(connection);
+            throw consumerFailure;
+        } finally {
+            closeResultSet(failureMessage, result);
+            resetFetchSize(statement);
+            releaseConnection(connection);
+            streamRentalInstrumentsStats.record(startTime, rowCount, succeeded);
+        }
     }
 
     /**
@@ -358,16 +1016,35 @@ public class SoundgoodDAO {
      * @param lockExclusive If true, it will not be possible to perform UPDATE
      *                      or DELETE statements on the selected row in the
      *                      current transaction. Also, the database operation will not
-     *                      be committed when this method returns. If false, no
-     *                      exclusive locks will be created, and the transaction will
-     *                      be committed when this method returns.
+     *                      be committed when this method returns, and the calling thread
+     *                      keeps its connection until the transaction is committed or
+     *                      rolled back. If false, no exclusive locks will be created, and
+     *                      the transaction will be committed when this method returns,
+     *                      and the instrument may be read from the replica.
      * @return Rental Instrument DTO based on its specific rental instrument ID
      * @throws SoundgoodDBEException
      */
     public RentalInstrumentDTO findSpecificRentalInstrumentById(String rentalInstrumentId, boolean lockExclusive)
             throws SoundgoodDBEException {
+        return findSpecificRentalInstrumentById(rentalInstrumentId, lockExclusive, false);
+    }
 
-        PreparedStatement statementToExecute;
+    /**
+     * Finds a specific instrument by it's rental instrument ID, in the same way as
+     * {@link #findSpecificRentalInstrumentById(String, boolean)}.
+     *
+     * @param rentalInstrumentId The rental instrument ID to search for
+     * @param lockExclusive If true, the row is locked as described above.
+     * @param fromPrimary If true, the instrument is always read from the primary database,
+     *                    f.e. to see a change that was just made by another thread.
+     * @return Rental Instrument DTO based on its specific rental instrument ID
+     * @throws SoundgoodDBEException
+     */
+    public RentalInstrumentDTO findSpecificRentalInstrumentById(String rentalInstrumentId, boolean lockExclusive,
+                                                                boolean fromPrimary)
+            throws SoundgoodDBEException {
+
+        String statementToExecute;
 
         if (lockExclusive) {
             statementToExecute = findSpecificRentalInstrumentByIdLockingForUpdate;
@@ -376,98 +1053,249 @@ public class SoundgoodDAO {
         }
 
         String failureMessage = "Could not search for specified rental instrument, with id " + rentalInstrumentId;
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        PooledConnection connection = null;
         ResultSet result = null;
+        RentalInstrument instrument = null;
 
         try {
-            statementToExecute.setString(1, rentalInstrumentId);
-            // System.out.println(statementToExecute);
-            result = statementToExecute.executeQuery();
+            connection = lockExclusive || fromPrimary ? borrowConnection() : borrowReadConnection();
+            PreparedStatement statement = connection.prepare(statementToExecute);
+            statement.setString(1, rentalInstrumentId);
+            result = statement.executeQuery();
 
             if (result.next()) {
-                return new RentalInstrument(
-                        result.getString(RENTAL_ID_COL_NAME),
-                        result.getString(BRAND_COL_NAME),
-                        result.getString(NAME_COL_NAME),
-                        result.getString(TYPE_COL_NAME),
-                        result.getBoolean(IS_AVAILABLE_COL_NAME),
-                        result.getDouble(MONTHLY_COST_COL_NAME),
-                        result.getString(CONDITION_COL_NAME),
-                        result.getInt(INSTRUMENT_ID_COL_NAME),
-                        result.getTimestamp(RETURN_DATE_COL_NAME),
-                        result.getString(STUDENT_ID_COL_NAME)
-                );
-
+                instrument = new RentalInstrumentMapper(result).map(result);
             }
 
-            if (!lockExclusive) {
-                connection.commit();
+            if (lockExclusive) {
+                keepTransactionOpen(connection);
+            } else {
+                commit(connection);
             }
+            succeeded = true;
 
         } catch (SQLException sqle) {
-            handleException(failureMessage, sqle);
+            handleException(connection, failureMessage, sqle);
         } finally {
             closeResultSet(failureMessage, result);
+            releaseConnection(connection);
+            findSpecificRentalInstrumentByIdStats.record(startTime, instrument == null ? 0 : 1, succeeded);
         }
 
-        return null;
+        return instrument;
 
     }
 
     /**
-     * Updates rental information in the database upon the renting of an instrument
+     * Rents an instrument to a student, if the instrument is available and the student
+     * rents fewer than the maximum number of instruments. In {@link WriteMode#LOCKING}
+     * mode, the checks and the update are made by one statement in one round trip. In
+     * {@link WriteMode#OPTIMISTIC} mode, the row is read without locks and updated only
+     * if its version is unchanged, retrying on conflict. The transaction is committed.
+     *
+     * In both modes, the student's rentals are counted while holding a lock on the
+     * student, see {@link #lockStudents}, so the limit also holds when the same
+     * student rents several instruments at the same time, from any client.
      *
-     * @param rentalInstrumentId The id for the rental instrument to update
+     * @param rentalInstrumentId The id for the rental instrument to rent
      * @param studentId The student who rents the instrument
+     * @param maxRentalsPerStudent The maximum number of instruments a student may rent
+     * @return Whether the instrument was rented, or why not
      * @throws SoundgoodDBEException If unable to connect to database
      */
-    public void updateRentalInformation(String rentalInstrumentId, String studentId) throws SoundgoodDBEException {
-
-        String failureMessage = "Could not update information on instrument with id " + rentalInstrumentId;
+    public RentalOutcome rentInstrument(String rentalInstrumentId, String studentId, int maxRentalsPerStudent)
+            throws SoundgoodDBEException {
 
-        int updatedRows = 0;
+        String failureMessage = "Could not rent instrument with id " + rentalInstrumentId;
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        PooledConnection connection = null;
+        RentalOutcome outcome = null;
 
         try {
+            connection = borrowConnection();
+            if (writeMode == WriteMode.OPTIMISTIC) {
+                PooledConnection transaction = connection;
+                outcome = retryOnConflict(transaction, () ->
+                        attemptRentAtVersion(transaction, rentalInstrumentId, studentId, maxRentalsPerStudent));
+            } else {
+                lockStudents(connection, List.of(studentId));
+                outcome = executeRent(connection, rentalInstrumentId, studentId, maxRentalsPerStudent);
+            }
+            if (outcome.isSuccessful()) {
+                publishChanges(connection, List.of(rentalInstrumentId));
+                updateRentalSummaries(connection, List.of(rentalInstrumentId), outcome);
+            }
+            commitChange(connection);
+            succeeded = true;
+        }
+        catch (SQLException sqle) {
+            handleException(connection, failureMessage, sqle);
+        } finally {
+            releaseConnection(connection);
+            rentInstrumentStats.record(startTime, outcome != null && outcome.isSuccessful() ? 1 : 0, succeeded);
+        }
 
-            updateRentalInformation.setString(1, studentId);
-            updateRentalInformation.setTimestamp(2, getReturnDate());
-            updateRentalInformation.setString(3, rentalInstrumentId);
+        return outcome;
+    }
 
-            // System.out.println(updateRentalInformation);
+    /**
+     * Rents any available instrument with the specified name to a student, if the
+     * student rents fewer than the maximum number of instruments. Instruments that are
+     * being rented by other transactions at the same time are skipped instead of waited
+     * for, so concurrent renters of the same kind of instrument each get a different
+     * one. The student's rentals are counted while holding a lock on the student, as
+     * for {@link #rentInstrument}. The transaction is committed.
+     *
+     * @param instrumentName The name of the instrument, f.e. guitar
+     * @param studentId The student who rents the instrument
+     * @param maxRentalsPerStudent The maximum number of instruments a student may rent
+     * @param preference Which of the available instruments to rent
+     * @return The rented instrument, or why none was rented
+     * @throws SoundgoodDBEException If unable to connect to database
+     */
+    public InstrumentClaim rentAnyInstrument(String instrumentName, String studentId, int maxRentalsPerStudent,
+                                             ClaimPreference preference) throws SoundgoodDBEException {
 
-            updatedRows = updateRentalInformation.executeUpdate();
+        String failureMessage = "Could not rent any " + instrumentName;
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        PooledConnection connection = null;
+        InstrumentClaim claim = null;
 
-            connection.commit();
+        try {
+            connection = borrowConnection();
+            lockStudents(connection, List.of(studentId));
+            PreparedStatement statement = connection.prepare(rentAnyInstrument.get(preference));
+
+            statement.setString(1, studentId);
+            statement.setString(2, instrumentName);
+            statement.setInt(3, maxRentalsPerStudent);
+            statement.setString(4, studentId);
+            statement.setTimestamp(5, getReturnDate());
+
+            try (ResultSet result = statement.executeQuery()) {
+                result.next();
+                String rentalInstrumentId = result.getString(RENTAL_ID_COL_NAME);
+
+                if (rentalInstrumentId != null) {
+                    claim = new InstrumentClaim(RentalOutcome.RENTED, rentalInstrumentId);
+                } else if (result.getInt(NUMBER_OF_INSTRUMENTS_COL_NAME) >= maxRentalsPerStudent) {
+                    claim = new InstrumentClaim(RentalOutcome.RENTAL_LIMIT_REACHED, null);
+                } else {
+                    claim = new InstrumentClaim(RentalOutcome.INSTRUMENT_UNAVAILABLE, null);
+                }
+            }
+            if (claim.isSuccessful()) {
+                publishChanges(connection, List.of(claim.getRentalInstrumentId()));
+                updateRentalSummaries(connection, List.of(claim.getRentalInstrumentId()), claim.getOutcome());
+            }
+            commitChange(connection);
+            succeeded = true;
         }
         catch (SQLException sqle) {
-            handleException(failureMessage, sqle);
+            handleException(connection, failureMessage, sqle);
+        } finally {
+            releaseConnection(connection);
+            rentAnyInstrumentStats.record(startTime, claim != null && claim.isSuccessful() ? 1 : 0, succeeded);
         }
 
+        return claim;
     }
 
     /**
-     * Terminates a rental of a specific ID
+     * Terminates the rental of a specific ID. The terminated row is kept as history,
+     * until it is archived, and a new available row is created for the instrument. Both changes are made by
+     * one statement, in the same way as {@link #rentInstrument} depending on the write
+     * mode, and the transaction is committed.
+     *
      * @param rentalInstrumentId The id of the rental instrument to terminate rental
+     * @return Whether the rental was terminated, or why not
      * @throws SoundgoodDBEException If unable to connect to database
      */
-    public void terminateRental(String rentalInstrumentId, boolean shouldCommit) throws SoundgoodDBEException {
+    public RentalOutcome terminateRental(String rentalInstrumentId) throws SoundgoodDBEException {
 
         String failureMessage = "Could not terminate rental for instrument with id " + rentalInstrumentId;
-
-        int updatedRows = 0;
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        PooledConnection connection = null;
+        RentalOutcome outcome = null;
 
         try {
-
-            terminateRental.setTimestamp(1, getCurrentDate());
-            terminateRental.setString(2, rentalInstrumentId);
-
-            updatedRows = terminateRental.executeUpdate();
-
-            if (shouldCommit) connection.commit();
+            connection = borrowConnection();
+            if (writeMode == WriteMode.OPTIMISTIC) {
+                PooledConnection transaction = connection;
+                outcome = retryOnConflict(transaction, () -> attemptTerminateAtVersion(transaction, rentalInstrumentId));
+            } else {
+                outcome = executeTerminate(connection, rentalInstrumentId);
+            }
+            if (outcome.isSuccessful()) {
+                publishChanges(connection, List.of(rentalInstrumentId));
+                updateRentalSummaries(connection, List.of(rentalInstrumentId), outcome);
+            }
+            commitChange(connection);
+            succeeded = true;
         }
         catch (SQLException sqle) {
-            handleException(failureMessage, sqle);
+            handleException(connection, failureMessage, sqle);
+        } finally {
+            releaseConnection(connection);
+            terminateRentalStats.record(startTime, outcome != null && outcome.isSuccessful() ? 1 : 0, succeeded);
         }
 
+        return outcome;
+    }
+
+    /**
+     * Rents many instruments, sending the updates to the database as JDBC batches. The
+     * requests are split in chunks, and each chunk is one transaction. If a chunk fails,
+     * it is rolled back and all of its requests are reported as failed, while the other
+     * chunks are still performed. The students of a chunk are locked before their
+     * rentals are counted, as for {@link #rentInstrument}.
+     *
+     * @param requests The instruments to rent, and the students renting them
+     * @param maxRentalsPerStudent The maximum number of instruments a student may rent
+     * @param chunkSize The number of requests in each transaction, at least 1
+     * @return The result of each request, in the same order as the requests
+     * @throws SoundgoodDBEException If unable to connect to database
+     * @throws IllegalArgumentException If the chunk size is less than 1
+     */
+    public List<RentalRequestResult> rentInstruments(List<RentalRequest> requests, int maxRentalsPerStudent,
+                                                     int chunkSize) throws SoundgoodDBEException {
+        return executeInChunks(rentInstrumentsStats, requests, chunkSize, rentInstrumentInBatch, RentalOutcome.RENTED,
+                true,
+                (statement, request) -> {
+                    statement.setString(1, request.getStudentId());
+                    statement.setTimestamp(2, getReturnDate());
+                    statement.setString(3, request.getRentalInstrumentId());
+                    statement.setString(4, request.getStudentId());
+                    statement.setInt(5, maxRentalsPerStudent);
+                },
+                (connection, request) -> executeRent(connection,
+                        request.getRentalInstrumentId(), request.getStudentId(), maxRentalsPerStudent));
+    }
+
+    /**
+     * Terminates many rentals, sending the changes to the database as JDBC batches. The
+     * requests are split in chunks in the same way as for {@link #rentInstruments}.
+     *
+     * @param requests The rentals to terminate. The student of each request is not used.
+     * @param chunkSize The number of requests in each transaction, at least 1
+     * @return The result of each request, in the same order as the requests
+     * @throws SoundgoodDBEException If unable to connect to database
+     * @throws IllegalArgumentException If the chunk size is less than 1
+     */
+    public List<RentalRequestResult> terminateRentals(List<RentalRequest> requests, int chunkSize)
+            throws SoundgoodDBEException {
+        return executeInChunks(terminateRentalsStats, requests, chunkSize, terminateRentalInBatch,
+                RentalOutcome.TERMINATED, false,
+                (statement, request) -> {
+                    statement.setTimestamp(1, getCurrentDate());
+                    statement.setString(2, request.getRentalInstrumentId());
+                },
+                (connection, request) -> executeTerminate(connection, request.getRentalInstrumentId()));
     }
 
     /**
@@ -484,104 +1312,958 @@ public class SoundgoodDAO {
 
         String failureMessage = "Could not search for specified rental instruments by student with id "
                 + studentId;
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        PooledConnection connection = null;
+        ResultSet result = null;
+
+        try {
+            connection = borrowReadConnection();
+            PreparedStatement statement = connection.prepare(findRentedInstrumentsByStudent);
+            statement.setString(1, studentId);
+
+            result = statement.executeQuery();
 
+            RentalInstrumentMapper mapper = new RentalInstrumentMapper(result);
+            while (result.next()) {
+                instruments.add(mapper.map(result));
+            }
+            commit(connection);
+            succeeded = true;
+
+        } catch (SQLException sqle) {
+            handleException(connection, failureMessage, sqle);
+        } finally {
+            closeResultSet(failureMessage, result);
+            releaseConnection(connection);
+            findRentedInstrumentsByStudentStats.record(startTime, instruments.size(), succeeded);
+        }
+
+        return instruments;
+    }
+
+    /**
+     * Counts the non-terminated rentals of every student that rents at least one
+     * instrument, with one aggregate query.
+     *
+     * @return The number of rented instruments of each student, by student id.
+     * @throws SoundgoodDBEException If unable to connect to database
+     */
+    public Map<String, Integer> countActiveRentalsByStudent() throws SoundgoodDBEException {
+
+        Map<String, Integer> rentalsByStudent = new HashMap<>();
+
+        String failureMessage = "Could not count the rentals of each student";
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        PooledConnection connection = null;
+        ResultSet result = null;
+
+        try {
+            connection = borrowConnection();
+            result = connection.prepare(countActiveRentalsByStudent).executeQuery();
+
+            while (result.next()) {
+                rentalsByStudent.put(result.getString(1), result.getInt(2));
+            }
+            commit(connection);
+            succeeded = true;
+
+        } catch (SQLException sqle) {
+            handleException(connection, failureMessage, sqle);
+        } finally {
+            closeResultSet(failureMessage, result);
+            releaseConnection(connection);
+            countActiveRentalsByStudentStats.record(startTime, rentalsByStudent.size(), succeeded);
+        }
+
+        return rentalsByStudent;
+    }
+
+    /**
+     * Finds the rentals whose return date has passed since the previous scan, and
+     * appends them to the report. The end of the previous scan is stored in the
+     * database and is advanced to now, in the same transaction, so each scan only
+     * reads the rentals that have become overdue since the previous one, by one range
+     * of an index on the return date. The report is written before the transaction is
+     * committed, and if that fails the scan is rolled back and its rentals are found,
+     * and written to the report, again by the next scan. Scans made by several clients
+     * at the same time wait for each other, so every overdue rental is found by exactly
+     * one committed scan, and is reported at least once, see {@link OverdueReport}.
+     *
+     * @param report The report the newly overdue rentals are appended to.
+     * @param fetchSize The number of rentals fetched in each round trip to the database
+     * @return The time range that was scanned and the number of rentals found.
+     * @throws SoundgoodDBEException If unable to scan or to write the report.
+     */
+    public OverdueScan scanNewlyOverdueRentals(OverdueReport report, int fetchSize) throws SoundgoodDBEException {
+
+        String failureMessage = "Could not scan for overdue rentals";
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        int rowCount = 0;
+        PooledConnection connection = null;
+        PreparedStatement statement = null;
         ResultSet result = null;
+        OverdueScan scan = null;
 
         try {
-            findRentedInstrumentsByStudent.setString(1, studentId);
+            connection = borrowConnection();
+            Timestamp scannedFrom;
+            Timestamp scannedUntil = getCurrentDate();
+
+            try (ResultSet mark = connection.prepare(lockOverdueScanMark).executeQuery()) {
+                if (!mark.next()) {
+                    throw new SQLException("The overdue scan mark is missing, the schema is not migrated");
+                }
+                scannedFrom = mark.getTimestamp(SCANNED_UNTIL_COL_NAME);
+            }
 
-            result = findRentedInstrumentsByStudent.executeQuery();
+            statement = connection.prepare(findNewlyOverdueRentals);
+            statement.setTimestamp(1, scannedUntil);
+            statement.setFetchSize(fetchSize);
+            result = statement.executeQuery();
 
+            RentalInstrumentMapper mapper = new RentalInstrumentMapper(result);
             while (result.next()) {
-                instruments.add( new RentalInstrument(
-                        result.getString(RENTAL_ID_COL_NAME),
-                        result.getString(BRAND_COL_NAME),
-                        result.getString(NAME_COL_NAME),
-                        result.getString(TYPE_COL_NAME),
-                        result.getBoolean(IS_AVAILABLE_COL_NAME),
-                        result.getDouble(MONTHLY_COST_COL_NAME),
-                        result.getString(CONDITION_COL_NAME),
-                        result.getInt(INSTRUMENT_ID_COL_NAME),
-                        result.getTimestamp(RETURN_DATE_COL_NAME),
-                        result.getString(STUDENT_ID_COL_NAME)
-                ));
+                report.append(mapper.map(result));
+                rowCount++;
+            }
+            report.flush();
+
+            PreparedStatement advance = connection.prepare(advanceOverdueScanMark);
+            advance.setTimestamp(1, scannedUntil);
+            advance.executeUpdate();
+            commit(connection);
+            scan = new OverdueScan(scannedFrom, scannedUntil, rowCount);
+            succeeded = true;
 
+        } catch (SQLException sqle) {
+            handleException(connection, failureMessage, sqle);
+        } catch (IOException | UncheckedIOException reportFailure) {
+            handleException(connection, failureMessage + ", the report could not be written", reportFailure);
+        } finally {
+            closeResultSet(failureMessage, result);
+            resetFetchSize(statement);
+            releaseConnection(connection);
+            scanNewlyOverdueRentalsStats.record(startTime, rowCount, succeeded);
+        }
+
+        return scan;
+    }
+
+    /**
+     * Finds all rentals that were overdue at the end of the latest scan and have not
+     * been terminated since, ordered by return date.
+     *
+     * @return The overdue rentals, empty if no scan has been made.
+     * @throws SoundgoodDBEException If unable to connect to database
+     */
+    public List<? extends RentalInstrumentDTO> findOverdueRentals() throws SoundgoodDBEException {
+
+        List<RentalInstrument> instruments = new ArrayList<>();
+        String failureMessage = "Could not search for overdue rentals";
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        PooledConnection connection = null;
+        ResultSet result = null;
+
+        try {
+            connection = borrowReadConnection();
+            result = connection.prepare(findOverdueRentals).executeQuery();
+
+            RentalInstrumentMapper mapper = new RentalInstrumentMapper(result);
+            while (result.next()) {
+                instruments.add(mapper.map(result));
             }
-            connection.commit();
+            commit(connection);
+            succeeded = true;
 
         } catch (SQLException sqle) {
-            handleException(failureMessage, sqle);
+            handleException(connection, failureMessage, sqle);
         } finally {
             closeResultSet(failureMessage, result);
+            releaseConnection(connection);
+            findOverdueRentalsStats.record(startTime, instruments.size(), succeeded);
         }
 
         return instruments;
     }
 
     /**
-     * Creates a new row in the database with a rental instrument
+     * Moves one batch of terminated rentals from <code>rental_instrument</code> to the
+     * rental history, in one transaction. The rentals that ended in the oldest month
+     * are moved first, and the partition of that month is created if it does not
+     * exist. Archivers of several clients wait for each other.
+     *
+     * @param batchSize The maximum number of rentals to move.
+     * @return The number of rentals that were moved. Less than the batch size if there
+     * are no more rentals that ended in the oldest month.
+     * @throws SoundgoodDBEException If unable to archive the rentals.
+     */
+    public int archiveTerminatedRentals(int batchSize) throws SoundgoodDBEException {
+
+        String failureMessage = "Could not archive terminated rentals";
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        int rowCount = 0;
+        PooledConnection connection = null;
+
+        try {
+            connection = borrowConnection();
+            Timestamp monthEnd = null;
+
+            try (Statement statement = connection.getConnection().createStatement()) {
+                statement.execute("LOCK TABLE " + RENTAL_HISTORY_TABLE_NAME + " IN SHARE UPDATE EXCLUSIVE MODE");
+            }
+
+            try (ResultSet oldest = connection.prepare(findOldestTerminatedMonth).executeQuery()) {
+                Timestamp monthStart = oldest.next() ? oldest.getTimestamp(OLDEST_MONTH_COL_NAME) : null;
+                if (monthStart != null) {
+                    monthEnd = createHistoryPartition(connection, monthStart.toLocalDateTime().toLocalDate());
+                }
+            }
+
+            PreparedStatement archive = connection.prepare(archiveTerminatedRentals);
+            archive.setTimestamp(1, monthEnd);
+            archive.setInt(2, batchSize);
+            rowCount = archive.executeUpdate();
+            commit(connection);
+            succeeded = true;
+
+        } catch (SQLException sqle) {
+            handleException(connection, failureMessage, sqle);
+        } finally {
+            releaseConnection(connection);
+            archiveTerminatedRentalsStats.record(startTime, rowCount, succeeded);
+        }
+
+        return rowCount;
+    }
+
+    /**
+     * Finds the terminated rentals of a student, latest first.
      *
-     * @param rentalInformation The DTO with the information about
-     *                          the current rental instrument
-     * @return The number of updated rows (should be 1 if successful)
-     * @throws SoundgoodDBEException If unable to create the row in the database
+     * @param studentId The id of the student.
+     * @return The terminated rentals, both archived and not yet archived.
+     * @throws SoundgoodDBEException If unable to connect to database
      */
-    public int createRentalInstrumentRow(RentalInstrumentDTO rentalInformation) throws SoundgoodDBEException {
+    public List<RentalHistoryEntry> findRentalHistoryByStudent(String studentId) throws SoundgoodDBEException {
+        return findRentalHistory(findRentalHistoryByStudent, studentId,
+                "Could not search for the rental history of student " + studentId);
+    }
+
+    /**
+     * Finds the terminated rentals of a rental instrument, latest first.
+     *
+     * @param rentalInstrumentId The rental id of the instrument.
+     * @return The terminated rentals, both archived and not yet archived.
+     * @throws SoundgoodDBEException If unable to connect to database
+     */
+    public List<RentalHistoryEntry> findRentalHistoryByInstrument(String rentalInstrumentId)
+            throws SoundgoodDBEException {
+        return findRentalHistory(findRentalHistoryByInstrument, rentalInstrumentId,
+                "Could not search for the rental history of instrument " + rentalInstrumentId);
+    }
 
-        String failureMessage = "Could not return rental instrument with ID " + rentalInformation.getInstrument_id();
+    private List<RentalHistoryEntry> findRentalHistory(String sql, String value, String failureMessage)
+            throws SoundgoodDBEException {
 
-        int updatedRows = 0;
+        List<RentalHistoryEntry> history = new ArrayList<>();
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        PooledConnection connection = null;
+        ResultSet result = null;
 
         try {
+            connection = borrowReadConnection();
+            PreparedStatement statement = connection.prepare(sql);
+            statement.setString(1, value);
+            statement.setString(2, value);
+            result = statement.executeQuery();
 
-            createRentalRow.setString(1, rentalInformation.getId());
-            createRentalRow.setString(2, rentalInformation.getBrand());
-            createRentalRow.setString(3, rentalInformation.getCondition());
-            createRentalRow.setInt(4, rentalInformation.getInstrument_id());
-            createRentalRow.setDouble(5, rentalInformation.getMonthlyCost());
+            while (result.next()) {
+                history.add(new RentalHistoryEntry(
+                        result.getString(RENTAL_ID_COL_NAME),
+                        ValueDictionary.INSTRUMENT_NAMES.canonical(result.getString(NAME_COL_NAME)),
+                        ValueDictionary.BRANDS.canonical(result.getString(BRAND_COL_NAME)),
+                        ValueDictionary.CONDITIONS.canonical(result.getString(CONDITION_COL_NAME)),
+                        result.getDouble(MONTHLY_COST_COL_NAME),
+                        result.getString(STUDENT_ID_COL_NAME),
+                        result.getTimestamp(ENDED_AT_COL_NAME)));
+            }
+            commit(connection);
+            succeeded = true;
 
-            updatedRows = createRentalRow.executeUpdate();
+        } catch (SQLException sqle) {
+            handleException(connection, failureMessage, sqle);
+        } finally {
+            closeResultSet(failureMessage, result);
+            releaseConnection(connection);
+            findRentalHistoryStats.record(startTime, history.size(), succeeded);
+        }
 
-            connection.commit();
+        return history;
+    }
+
+    /**
+     * Creates the partition of the rental history holding the rentals that ended in
+     * the month starting at the specified date, unless it exists.
+     *
+     * @return The end of the month, exclusive.
+     */
+    private Timestamp createHistoryPartition(PooledConnection connection, LocalDate monthStart) throws SQLException {
+        LocalDate monthEnd = monthStart.plusMonths(1);
+        String partition = String.format("%s_y%04dm%02d",
+                RENTAL_HISTORY_TABLE_NAME, monthStart.getYear(), monthStart.getMonthValue());
+
+        try (Statement statement = connection.getConnection().createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS " + partition
+                    + " PARTITION OF " + RENTAL_HISTORY_TABLE_NAME
+                    + " FOR VALUES FROM ('" + monthStart + "') TO ('" + monthEnd + "')");
         }
-        catch (SQLException sqle) {
-            handleException(failureMessage, sqle);
+
+        return Timestamp.valueOf(monthEnd.atStartOfDay());
+    }
+
+    /**
+     * Reads the rental summaries. They are small tables, with one row per instrument
+     * type and month, so reading them takes the same time whatever the size of the
+     * catalog.
+     *
+     * @param months The number of months to read the revenue of, latest first.
+     * @return The utilization of each instrument type and the revenue of the latest months.
+     * @throws SoundgoodDBEException If unable to connect to database
+     */
+    public RentalReport readRentalReport(int months) throws SoundgoodDBEException {
+
+        List<TypeUtilization> utilization = new ArrayList<>();
+        List<MonthlyRevenue> revenue = new ArrayList<>();
+        String failureMessage = "Could not read the rental summaries";
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        PooledConnection connection = null;
+
+        try {
+            connection = borrowReadConnection();
+
+            try (ResultSet result = connection.prepare(readRentalUtilization).executeQuery()) {
+                while (result.next()) {
+                    utilization.add(new TypeUtilization(
+                            result.getString(INSTRUMENT_TYPE_COL_NAME),
+                            result.getInt(INSTRUMENTS_COL_NAME),
+                            result.getInt(RENTED_COL_NAME),
+                            result.getDouble(MONTHLY_REVENUE_COL_NAME)));
+                }
+            }
+
+            PreparedStatement statement = connection.prepare(readMonthlyRevenue);
+            statement.setInt(1, months);
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    revenue.add(new MonthlyRevenue(
+                            result.getDate(MONTH_COL_NAME).toLocalDate(),
+                            result.getInt(RENTALS_COL_NAME),
+                            result.getDouble(REVENUE_COL_NAME)));
+                }
+            }
+            commit(connection);
+            succeeded = true;
+
+        } catch (SQLException sqle) {
+            handleException(connection, failureMessage, sqle);
+        } finally {
+            releaseConnection(connection);
+            readRentalReportStats.record(startTime, utilization.size() + revenue.size(), succeeded);
         }
 
-        return updatedRows;
+        return new RentalReport(utilization, revenue);
+    }
 
+    /**
+     * Computes the utilization of each instrument type from the rentals, and replaces
+     * the summary with it. This is only needed if rentals were changed by someone else
+     * than a DAO, since every rent and return made by a DAO changes the summary. The
+     * summary rows are locked before the rentals are counted, so rents and returns made
+     * meanwhile wait, and are then added to the recomputed summary. The monthly revenue
+     * can't be recomputed, since the start of a terminated rental is not stored.
+     *
+     * @throws SoundgoodDBEException If unable to connect to database
+     */
+    public void recomputeRentalUtilization() throws SoundgoodDBEException {
+
+        String failureMessage = "Could not recompute the rental utilization";
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        int rowCount = 0;
+        PooledConnection connection = null;
+
+        try {
+            connection = borrowConnection();
+            connection.prepare(lockRentalUtilization).executeQuery().close();
+            rowCount = connection.prepare(recomputeRentalUtilization).executeUpdate();
+            commit(connection);
+            succeeded = true;
+
+        } catch (SQLException sqle) {
+            handleException(connection, failureMessage, sqle);
+        } finally {
+            releaseConnection(connection);
+            recomputeRentalUtilizationStats.record(startTime, rowCount, succeeded);
+        }
     }
 
     /**
-     * Commits the current database action.
+     * Commits the database action that the calling thread has left open, if any.
      *
      * @throws SoundgoodDBEException If unable to commit the current transaction.
      */
     public void commit() throws SoundgoodDBEException {
+        PooledConnection connection = ongoingTransaction.get();
+        if (connection == null) {
+            return;
+        }
         try {
-            connection.commit();
+            commit(connection);
         } catch (SQLException e) {
-            handleException("Failed to commit", e);
+            handleException(connection, "Failed to commit", e);
+        } finally {
+            releaseConnection(connection);
         }
     }
 
-    private void handleException(String failureMsg, Exception cause) throws SoundgoodDBEException {
-        String completeFailureMsg = failureMsg;
+    /**
+     * Returns the SQL of every statement the DAO executes, f.e. to check their query
+     * plans.
+     *
+     * @return The SQL of each statement, by name.
+     */
+    Map<String, String> getStatementSql() {
+        Map<String, String> sql = new LinkedHashMap<>();
+        sql.put("findAllInstruments", findAllInstruments);
+        sql.put("findAllInstrumentsByName", findAllInstrumentsByName);
+        sql.put("findAllAvailableRentalInstruments", findAllAvailableRentalInstruments);
+        sql.put("findAllAvailableRentalInstrumentsByName", findAllAvailableRentalInstrumentsByName);
+        sql.put("findSpecificRentalInstrumentById", findSpecificRentalInstrumentById);
+        sql.put("findSpecificRentalInstrumentByIdLockingForUpdate", findSpecificRentalInstrumentByIdLockingForUpdate);
+        sql.put("findInstrumentPage", findInstrumentPage);
+        sql.put("findInstrumentPageByName", findInstrumentPageByName);
+        sql.put("findAvailableInstrumentPage", findAvailableInstrumentPage);
+        sql.put("findAvailableInstrumentPageByName", findAvailableInstrumentPageByName);
+        sql.put("lockStudents", lockStudents);
+        sql.put("rentInstrument", rentInstrument);
+        rentAnyInstrument.forEach((preference, query) -> sql.put("rentAnyInstrument " + preference, query));
+        sql.put("terminateRental", terminateRental);
+        sql.put("rentInstrumentInBatch", rentInstrumentInBatch);
+        sql.put("terminateRentalInBatch", terminateRentalInBatch);
+        sql.put("readRentState", readRentState);
+        sql.put("rentInstrumentAtVersion", rentInstrumentAtVersion);
+        sql.put("readTerminateState", readTerminateState);
+        sql.put("terminateRentalAtVersion", terminateRentalAtVersion);
+        sql.put("findRentedInstrumentsByStudent", findRentedInstrumentsByStudent);
+        sql.put("countActiveRentalsByStudent", countActiveRentalsByStudent);
+        sql.put("publishRentalChanges", publishRentalChanges);
+        sql.put("findNewlyOverdueRentals", findNewlyOverdueRentals);
+        sql.put("findOverdueRentals", findOverdueRentals);
+        sql.put("findOldestTerminatedMonth", findOldestTerminatedMonth);
+        sql.put("archiveTerminatedRentals", archiveTerminatedRentals);
+        sql.put("findRentalHistoryByStudent", findRentalHistoryByStudent);
+        sql.put("findRentalHistoryByInstrument", findRentalHistoryByInstrument);
+        sql.put("updateRentalUtilization", updateRentalUtilization);
+        sql.put("addMonthlyRevenue", addMonthlyRevenue);
+        sql.put("recomputeRentalUtilization", recomputeRentalUtilization);
+        return sql;
+    }
+
+    /**
+     * @return How rents and terminations are protected against concurrent changes.
+     */
+    public WriteMode getWriteMode() {
+        return writeMode;
+    }
+
+    /**
+     * @return The attempts, conflicts and retries of optimistic rents and terminations.
+     */
+    public ContentionStatistics getContentionStatistics() {
+        return contention;
+    }
+
+    /**
+     * Returns the call counts, error counts, row counts and latency percentiles of
+     * each DAO operation, since the DAO was created or the statistics were last reset.
+     *
+     * @return The statistics of all operations, in the order they are declared.
+     */
+    public List<StatementStatistics> getStatementStatistics() {
+        return new ArrayList<>(statistics.values());
+    }
+
+    /**
+     * Clears the statistics of all DAO operations.
+     */
+    public void resetStatementStatistics() {
+        for (StatementStatistics operationStatistics : statistics.values()) {
+            operationStatistics.reset();
+        }
+        contention.reset();
+    }
+
+    /**
+     * @return The number of active, idle and waiting connections in the connection pool.
+     */
+    public PoolUsage getPoolUsage() {
+        return pool.getUsage();
+    }
+
+    /**
+     * @return The usage of the connection pool of the replica, or <code>null</code> if
+     * there is no replica.
+     */
+    public PoolUsage getReplicaPoolUsage() {
+        return replicaPool == null ? null : replicaPool.getUsage();
+    }
+
+    /**
+     * Starts delivering the rental changes committed by other clients to the specified
+     * subscriber, from a background thread. Every rent and termination made through a
+     * DAO is published, in the same transaction, with a PostgreSQL notification. Only
+     * one subscriber can be registered.
+     *
+     * @param subscriber Receives the changes made by other clients.
+     * @return <code>false</code> if changes are not published, because the
+     * <code>soundgood.changeEvents</code> system property is false.
+     * @throws SoundgoodDBEException If unable to start listening for changes.
+     */
+    public synchronized boolean subscribeToRentalChanges(RentalChangeSubscriber subscriber)
+            throws SoundgoodDBEException {
+        if (!publishChanges) {
+            return false;
+        }
+        if (changeListener != null) {
+            throw new IllegalStateException("Already subscribed to rental changes");
+        }
         try {
+            changeListener = new RentalChangeListener(dbUrl, dbUser, dbPassword, origin, subscriber);
+            return true;
+        } catch (SQLException sqle) {
+            throw new SoundgoodDBEException("Could not listen for rental changes.", sqle);
+        }
+    }
+
+    /**
+     * Closes all connections to the database.
+     */
+    public void close() {
+        synchronized (this) {
+            if (changeListener != null) {
+                changeListener.stop();
+            }
+        }
+        pool.close();
+        if (replicaPool != null) {
+            replicaPool.close();
+        }
+    }
+
+    /**
+     * Binds the parameters of one request to a batched statement.
+     */
+    private interface BatchBinder {
+        void bind(PreparedStatement statement, RentalRequest request) throws SQLException;
+    }
+
+    /**
+     * Performs one request with the single-item statement, which also tells why
+     * the request was rejected.
+     */
+    private interface SingleItemExecutor {
+        RentalOutcome execute(PooledConnection connection, RentalRequest request) throws SQLException;
+    }
+
+    private List<RentalRequestResult> executeInChunks(StatementStatistics operationStatistics, List<RentalRequest> requests,
+                                                      int chunkSize, String batchSql,
+                                                      RentalOutcome successOutcome, boolean lockingStudents,
+                                                      BatchBinder binder,
+                                                      SingleItemExecutor singleItemExecutor)
+            throws SoundgoodDBEException {
+
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        String failureMessage = "Could not perform bulk operation";
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        long rowCount = 0;
+        List<RentalRequestResult> results = new ArrayList<>(requests.size());
+        PooledConnection connection = null;
+
+        try {
+            connection = borrowConnection();
+
+            for (int chunkStart = 0; chunkStart < requests.size(); chunkStart += chunkSize) {
+                List<RentalRequest> chunk =
+                        requests.subList(chunkStart, Math.min(chunkStart + chunkSize, requests.size()));
+                PreparedStatement statement = connection.prepare(batchSql);
+
+                try {
+                    if (lockingStudents) {
+                        List<String> studentIds = new ArrayList<>(chunk.size());
+                        for (RentalRequest request : chunk) studentIds.add(request.getStudentId());
+                        lockStudents(connection, studentIds);
+                    }
+                    for (RentalRequest request : chunk) {
+                        binder.bind(statement, request);
+                        statement.addBatch();
+                    }
+                    int[] updatedRows = statement.executeBatch();
+
+                    // Rejected requests are run again one by one with the single-item
+                    // statement, in the same transaction, to find out why.
+                    List<RentalRequestResult> chunkResults = new ArrayList<>(chunk.size());
+                    List<String> changedIds = new ArrayList<>(chunk.size());
+                    for (int i = 0; i < chunk.size(); i++) {
+                        RentalOutcome outcome = updatedRows[i] == 1
+                                ? successOutcome
+                                : singleItemExecutor.execute(connection, chunk.get(i));
+                        chunkResults.add(RentalRequestResult.handled(chunk.get(i), outcome));
+                        if (outcome.isSuccessful()) changedIds.add(chunk.get(i).getRentalInstrumentId());
+                    }
+
+                    publishChanges(connection, changedIds);
+                    updateRentalSummaries(connection, changedIds, successOutcome);
+                    commitChange(connection);
+                    results.addAll(chunkResults);
+                    for (RentalRequestResult result : chunkResults) {
+                        if (result.isSuccessful()) rowCount++;
+                    }
+
+                } catch (SQLException chunkFailure) {
+                    statement.clearBatch();
+                    rollbackQuietly(connection);
+                    for (RentalRequest request : chunk) {
+                        results.add(RentalRequestResult.failed(request, chunkFailure.getMessage()));
+                    }
+                }
+            }
+            succeeded = true;
+
+        } catch (SQLException sqle) {
+            handleException(connection, failureMessage, sqle);
+        } finally {
+            releaseConnection(connection);
+            operationStatistics.record(startTime, rowCount, succeeded);
+        }
+
+        return results;
+    }
+
+    private RentalOutcome executeRent(PooledConnection connection, String rentalInstrumentId, String studentId,
+                                      int maxRentalsPerStudent) throws SQLException {
+        PreparedStatement statement = connection.prepare(rentInstrument);
+
+        statement.setString(1, rentalInstrumentId);
+        statement.setString(2, studentId);
+        statement.setString(3, studentId);
+        statement.setTimestamp(4, getReturnDate());
+        statement.setString(5, rentalInstrumentId);
+        statement.setInt(6, maxRentalsPerStudent);
+
+        try (ResultSet result = statement.executeQuery()) {
+            result.next();
+
+            if (result.getInt(UPDATED_COL_NAME) == 1) {
+                return RentalOutcome.RENTED;
+            } else if (result.getInt(FOUND_COL_NAME) == 0) {
+                return RentalOutcome.INSTRUMENT_NOT_FOUND;
+            } else if (result.getInt(NUMBER_OF_INSTRUMENTS_COL_NAME) >= maxRentalsPerStudent) {
+                return RentalOutcome.RENTAL_LIMIT_REACHED;
+            } else {
+                return RentalOutcome.INSTRUMENT_UNAVAILABLE;
+            }
+        }
+    }
+
+    private RentalOutcome executeTerminate(PooledConnection connection, String rentalInstrumentId)
+            throws SQLException {
+        PreparedStatement statement = connection.prepare(terminateRental);
+
+        statement.setString(1, rentalInstrumentId);
+        statement.setTimestamp(2, getCurrentDate());
+        statement.setString(3, rentalInstrumentId);
+
+        try (ResultSet result = statement.executeQuery()) {
+            result.next();
+
+            if (result.getInt(UPDATED_COL_NAME) == 1) {
+                return RentalOutcome.TERMINATED;
+            } else if (result.getInt(FOUND_COL_NAME) == 0) {
+                return RentalOutcome.INSTRUMENT_NOT_FOUND;
+            } else {
+                return RentalOutcome.NOT_RENTED;
+            }
+        }
+    }
+
+    /**
+     * One optimistic attempt of a change, returning <code>null</code> if the row was
+     * changed by someone else after it was read.
+     */
+    private interface OptimisticAttempt {
+        RentalOutcome attempt() throws SQLException;
+    }
+
+    /**
+     * Repeats an optimistic attempt until it does not conflict, rolling back and waiting
+     * a random time, bounded by an exponentially growing limit, between attempts.
+     * Serialization failures and deadlocks are retried in the same way.
+     */
+    private RentalOutcome retryOnConflict(PooledConnection connection, OptimisticAttempt attempt)
+            throws SQLException {
+        for (int attemptNumber = 1; ; attemptNumber++) {
+            contention.recordAttempt();
+            try {
+                RentalOutcome outcome = attempt.attempt();
+                if (outcome != null) {
+                    return outcome;
+                }
+                contention.recordConflict();
+            } catch (SQLException sqle) {
+                if (!isSerializationFailure(sqle)) {
+                    throw sqle;
+                }
+                contention.recordSerializationFailure();
+            }
+
             connection.rollback();
-        } catch (SQLException rollbackExc) {
-            completeFailureMsg = completeFailureMsg +
-                    ". Also failed to rollback query because of: " + rollbackExc.getMessage();
+            if (attemptNumber >= maxAttempts) {
+                contention.recordExhausted();
+                throw new SQLException("Gave up after " + attemptNumber + " conflicting attempts",
+                        SERIALIZATION_FAILURE_SQL_STATE);
+            }
+            contention.recordRetry();
+            backOff(attemptNumber);
+        }
+    }
+
+    private RentalOutcome attemptRentAtVersion(PooledConnection connection, String rentalInstrumentId,
+                                               String studentId, int maxRentalsPerStudent) throws SQLException {
+        lockStudents(connection, List.of(studentId));
+        PreparedStatement read = connection.prepare(readRentState);
+        read.setString(1, studentId);
+        read.setString(2, rentalInstrumentId);
+        int version;
+
+        try (ResultSet result = read.executeQuery()) {
+            if (!result.next()) {
+                return RentalOutcome.INSTRUMENT_NOT_FOUND;
+            } else if (result.getInt(NUMBER_OF_INSTRUMENTS_COL_NAME) >= maxRentalsPerStudent) {
+                return RentalOutcome.RENTAL_LIMIT_REACHED;
+            } else if (!result.getBoolean(IS_AVAILABLE_COL_NAME)) {
+                return RentalOutcome.INSTRUMENT_UNAVAILABLE;
+            }
+            version = result.getInt(VERSION_COL_NAME);
+        }
+
+        PreparedStatement update = connection.prepare(rentInstrumentAtVersion);
+        update.setString(1, studentId);
+        update.setTimestamp(2, getReturnDate());
+        update.setString(3, rentalInstrumentId);
+        update.setString(4, studentId);
+        update.setInt(5, maxRentalsPerStudent);
+        update.setInt(6, version);
+
+        return update.executeUpdate() == 1 ? RentalOutcome.RENTED : null;
+    }
+
+    private RentalOutcome attemptTerminateAtVersion(PooledConnection connection, String rentalInstrumentId)
+            throws SQLException {
+        PreparedStatement read = connection.prepare(readTerminateState);
+        read.setString(1, rentalInstrumentId);
+        int version;
+
+        try (ResultSet result = read.executeQuery()) {
+            if (!result.next()) {
+                return RentalOutcome.INSTRUMENT_NOT_FOUND;
+            } else if (result.getString(STUDENT_ID_COL_NAME) == null) {
+                return RentalOutcome.NOT_RENTED;
+            }
+            version = result.getInt(VERSION_COL_NAME);
+        }
+
+        PreparedStatement update = connection.prepare(terminateRentalAtVersion);
+        update.setTimestamp(1, getCurrentDate());
+        update.setString(2, rentalInstrumentId);
+        update.setInt(3, version);
+
+        return update.executeUpdate() == 1 ? RentalOutcome.TERMINATED : null;
+    }
+
+    private boolean isSerializationFailure(SQLException sqle) {
+        return SERIALIZATION_FAILURE_SQL_STATE.equals(sqle.getSQLState())
+                || DEADLOCK_DETECTED_SQL_STATE.equals(sqle.getSQLState());
+    }
+
+    private void backOff(int attemptNumber) throws SQLException {
+        long limit = Math.min(MAX_BACKOFF_MILLIS, baseBackoffMillis << Math.min(attemptNumber - 1, 16));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(limit + 1));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting to retry", ie);
+        }
+    }
+
+    private StatementStatistics register(String operation) {
+        StatementStatistics operationStatistics = new StatementStatistics(operation);
+        statistics.put(operation, operationStatistics);
+        return operationStatistics;
+    }
+
+    private PooledConnection borrowConnection() throws SQLException {
+        PooledConnection connection = ongoingTransaction.get();
+        if (connection != null) {
+            return connection;
+        }
+        return pool.borrow();
+    }
+
+    /**
+     * Borrows a connection for a read that neither locks rows nor has to see changes
+     * made by other threads. Such reads use the replica, unless this thread is in a
+     * transaction, has just made a change, or no replica connection can be borrowed.
+     */
+    private PooledConnection borrowReadConnection() throws SQLException {
+        if (replicaPool == null || ongoingTransaction.get() != null || hasRecentChange()) {
+            return borrowConnection();
+        }
+        try {
+            return replicaPool.borrow();
+        } catch (SQLException replicaUnavailable) {
+            return borrowConnection();
+        }
+    }
+
+    private boolean hasRecentChange() {
+        Long changed = lastWriteMillis.get();
+        return changed != null && System.currentTimeMillis() - changed < readYourWritesMillis;
+    }
+
+    private void commitChange(PooledConnection connection) throws SQLException {
+        commit(connection);
+        lastWriteMillis.set(System.currentTimeMillis());
+    }
+
+    /**
+     * Locks the specified students until the transaction ends, waiting for other
+     * transactions holding the lock of any of them. The two-rentals limit is checked by
+     * counting the student's active rentals, and under READ COMMITTED two transactions
+     * renting to the same student could both count before either has committed, so
+     * both would rent. A rental is therefore only counted and made while holding the
+     * student's lock. The lock must be taken by a statement of its own, since a
+     * statement reads the rows committed when it started. The locks are PostgreSQL
+     * advisory locks, keyed by a hash of the student id, so students with the same
+     * hash share a lock.
+     */
+    private void lockStudents(PooledConnection connection, List<String> studentIds) throws SQLException {
+        PreparedStatement statement = connection.prepare(lockStudents);
+        statement.setArray(1, connection.getConnection().createArrayOf("varchar", studentIds.toArray()));
+        statement.executeQuery().close();
+    }
+
+    /**
+     * Publishes the current state of the specified instruments to the other clients.
+     * The notifications are sent when the transaction commits, and not at all if it is
+     * rolled back.
+     */
+    private void publishChanges(PooledConnection connection, List<String> rentalInstrumentIds)
+            throws SQLException {
+        if (!publishChanges || rentalInstrumentIds.isEmpty()) {
+            return;
+        }
+        PreparedStatement statement = connection.prepare(publishRentalChanges);
+        statement.setString(1, RentalChangeListener.CHANNEL);
+        statement.setString(2, origin);
+        statement.setArray(3, connection.getConnection().createArrayOf("varchar", rentalInstrumentIds.toArray()));
+        statement.executeQuery().close();
+    }
+
+    /**
+     * Adds rents to, or removes returns from, the rental summaries, in the transaction
+     * that made them. A type without a utilization row gets one, computed from its
+     * rental instruments. A rent is also added to the revenue of the current month.
+     *
+     * @param change {@link RentalOutcome#RENTED} or {@link RentalOutcome#TERMINATED}.
+     */
+    private void updateRentalSummaries(PooledConnection connection, List<String> rentalInstrumentIds,
+                                       RentalOutcome change) throws SQLException {
+        if (!updateRentalSummaries || rentalInstrumentIds.isEmpty()) {
+            return;
+        }
+        Array ids = connection.getConnection().createArrayOf("varchar", rentalInstrumentIds.toArray());
+        int sign = change == RentalOutcome.RENTED ? 1 : -1;
+
+        PreparedStatement utilization = connection.prepare(updateRentalUtilization);
+        utilization.setArray(1, ids);
+        utilization.setInt(2, sign);
+        utilization.setInt(3, sign);
+        utilization.setInt(4, sign);
+        utilization.setInt(5, sign);
+        utilization.executeUpdate();
+
+        if (change == RentalOutcome.RENTED) {
+            PreparedStatement revenue = connection.prepare(addMonthlyRevenue);
+            revenue.setTimestamp(1, getCurrentDate());
+            revenue.setArray(2, ids);
+            revenue.executeUpdate();
+        }
+    }
+
+    private void keepTransactionOpen(PooledConnection connection) {
+        ongoingTransaction.set(connection);
+    }
+
+    private void commit(PooledConnection connection) throws SQLException {
+        connection.commit();
+        endTransaction(connection);
+    }
+
+    private void endTransaction(PooledConnection connection) {
+        if (ongoingTransaction.get() == connection) {
+            ongoingTransaction.remove();
+        }
+    }
+
+    private void releaseConnection(PooledConnection connection) {
+        if (connection != null && ongoingTransaction.get() != connection) {
+            connection.getPool().release(connection);
+        }
+    }
+
+    private void handleException(PooledConnection connection, String failureMsg, Exception cause)
+            throws SoundgoodDBEException {
+        String completeFailureMsg = failureMsg;
+        if (connection != null) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackExc) {
+                completeFailureMsg = completeFailureMsg +
+                        ". Also failed to rollback query because of: " + rollbackExc.getMessage();
+            }
+            endTransaction(connection);
         }
 
         if (cause != null) {
-            throw new SoundgoodDBEException(failureMsg, cause);
+            throw new SoundgoodDBEException(completeFailureMsg, cause);
         } else {
-            throw new SoundgoodDBEException(failureMsg);
+            throw new SoundgoodDBEException(completeFailureMsg);
         }
     }
 
     private void closeResultSet(String failureMsg, ResultSet result) throws SoundgoodDBEException {
+        if (result == null) {
+            return;
+        }
         try {
             result.close();
         } catch (Exception e) {
@@ -589,10 +2271,69 @@ public class SoundgoodDAO {
         }
     }
 
-    private void connectToSoundgoodDB() throws ClassNotFoundException, SQLException {
-        connection = DriverManager.getConnection("jdbc:postgresql://localhost:5432/soundgood",
-                "postgres", "VgS4HN");
-        connection.setAutoCommit(false);
+    private void rollbackQuietly(PooledConnection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.rollback();
+        } catch (SQLException ignored) {
+        }
+        endTransaction(connection);
+    }
+
+    private void resetFetchSize(PreparedStatement statement) {
+        if (statement == null) {
+            return;
+        }
+        try {
+            statement.setFetchSize(0);
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private void connectToSoundgoodDB() throws SQLException {
+        dbUrl = System.getProperty(DB_URL_PROPERTY, "jdbc:postgresql://localhost:5432/soundgood");
+        dbUser = System.getProperty(DB_USER_PROPERTY, "postgres");
+        dbPassword = System.getProperty(DB_PASSWORD_PROPERTY, "VgS4HN");
+        pool = new ConnectionPool(
+                dbUrl,
+                dbUser,
+                dbPassword,
+                Integer.getInteger(POOL_MIN_SIZE_PROPERTY, 1),
+                Integer.getInteger(POOL_MAX_SIZE_PROPERTY, 10),
+                Long.getLong(POOL_MAX_IDLE_MILLIS_PROPERTY, 60000L),
+                Long.getLong(POOL_BORROW_TIMEOUT_MILLIS_PROPERTY, 30000L),
+                false);
+
+        String replicaUrl = System.getProperty(REPLICA_URL_PROPERTY);
+        if (replicaUrl != null) {
+            replicaPool = new ConnectionPool(
+                    replicaUrl,
+                    System.getProperty(REPLICA_USER_PROPERTY, dbUser),
+                    System.getProperty(REPLICA_PASSWORD_PROPERTY, dbPassword),
+                    Integer.getInteger(POOL_MIN_SIZE_PROPERTY, 1),
+                    Integer.getInteger(POOL_MAX_SIZE_PROPERTY, 10),
+                    Long.getLong(POOL_MAX_IDLE_MILLIS_PROPERTY, 60000L),
+                    Long.getLong(POOL_BORROW_TIMEOUT_MILLIS_PROPERTY, 30000L),
+                    true);
+        }
+    }
+
+    /**
+     * Applies the schema migrations that have not been applied, unless the
+     * <code>soundgood.db.migrate</code> system property is false.
+     */
+    private void migrateSchema() throws SQLException {
+        if (!Boolean.parseBoolean(System.getProperty(MIGRATE_PROPERTY, "true"))) {
+            return;
+        }
+        PooledConnection connection = pool.borrow();
+        try {
+            SchemaMigrator.migrate(connection.getConnection());
+        } finally {
+            pool.release(connection);
+        }
     }
 
     private Timestamp getCurrentDate() {
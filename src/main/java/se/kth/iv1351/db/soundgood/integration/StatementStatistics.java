@@ -0,0 +1,100 @@
+package se.kth.iv1351.db.soundgood.integration;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and a latency histogram for one DAO operation, or for any other operation
+ * whose calls are timed. Recording is lock-free, so the statistics can be kept for
+ * every call without slowing down the caller.
+ */
+public class StatementStatistics {
+
+    private final String operation;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * Creates statistics without any recorded calls.
+     *
+     * @param operation The name of the operation.
+     */
+    public StatementStatistics(String operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * Records one call of the operation.
+     *
+     * @param startNanos The value of <code>System.nanoTime()</code> when the call started.
+     * @param rowCount   The number of rows returned or changed by the call.
+     * @param succeeded  <code>false</code> if the call failed with an error.
+     */
+    public void record(long startNanos, long rowCount, boolean succeeded) {
+        recordElapsed(System.nanoTime() - startNanos, rowCount, succeeded);
+    }
+
+    /**
+     * Records one call of the operation that has already been timed.
+     *
+     * @param elapsedNanos The time the call took, in nanoseconds.
+     * @param rowCount     The number of rows returned or changed by the call.
+     * @param succeeded    <code>false</code> if the call failed with an error.
+     */
+    public void recordElapsed(long elapsedNanos, long rowCount, boolean succeeded) {
+        latencies.record(elapsedNanos);
+        count.increment();
+        rows.add(rowCount);
+        if (!succeeded) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Clears all counters and the histogram.
+     */
+    void reset() {
+        count.reset();
+        errors.reset();
+        rows.reset();
+        latencies.reset();
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getRows() {
+        return rows.sum();
+    }
+
+    /**
+     * @return The median latency in microseconds.
+     */
+    public double getP50Micros() {
+        return latencies.percentile(0.50) / 1000.0;
+    }
+
+    /**
+     * @return The 99th percentile latency in microseconds.
+     */
+    public double getP99Micros() {
+        return latencies.percentile(0.99) / 1000.0;
+    }
+
+    /**
+     * @return The highest latency in microseconds.
+     */
+    public double getMaxMicros() {
+        return latencies.getMax() / 1000.0;
+    }
+}
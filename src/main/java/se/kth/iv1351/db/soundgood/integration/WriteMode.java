@@ -0,0 +1,21 @@
+package se.kth.iv1351.db.soundgood.integration;
+
+/**
+ * How {@link SoundgoodDAO} renders rents and terminations safe against concurrent
+ * changes of the same rental instrument.
+ */
+public enum WriteMode {
+
+    /**
+     * Each change is one statement that checks and updates the row, and the database
+     * serializes concurrent changes of the same row with row locks.
+     */
+    LOCKING,
+
+    /**
+     * The row and its version are read without locks, and the row is then updated
+     * only if the version is unchanged. A conflicting change makes the update miss,
+     * and the operation is retried after a short, random delay.
+     */
+    OPTIMISTIC
+}
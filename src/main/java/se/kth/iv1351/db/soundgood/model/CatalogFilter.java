@@ -0,0 +1,67 @@
+package se.kth.iv1351.db.soundgood.model;
+
+/**
+ * A filter on the catalog, f.e. available pianos costing at most 300 kr per month.
+ * A criterion that is <code>null</code> does not restrict the result.
+ */
+public class CatalogFilter {
+
+    private final String instrumentName;
+    private final boolean availableOnly;
+    private final Double minMonthlyCost;
+    private final Double maxMonthlyCost;
+    private final String condition;
+
+    /**
+     * Creates a new filter.
+     *
+     * @param instrumentName The name of the instruments, f.e. piano.
+     * @param availableOnly  If true, only available instruments match.
+     * @param minMonthlyCost The lowest monthly cost that matches.
+     * @param maxMonthlyCost The highest monthly cost that matches.
+     * @param condition      The condition of the instruments, f.e. good.
+     */
+    public CatalogFilter(String instrumentName, boolean availableOnly, Double minMonthlyCost,
+                         Double maxMonthlyCost, String condition) {
+        this.instrumentName = instrumentName;
+        this.availableOnly = availableOnly;
+        this.minMonthlyCost = minMonthlyCost;
+        this.maxMonthlyCost = maxMonthlyCost;
+        this.condition = condition;
+    }
+
+    public String getInstrumentName() {
+        return instrumentName;
+    }
+
+    public boolean isAvailableOnly() {
+        return availableOnly;
+    }
+
+    public Double getMinMonthlyCost() {
+        return minMonthlyCost;
+    }
+
+    public Double getMaxMonthlyCost() {
+        return maxMonthlyCost;
+    }
+
+    public String getCondition() {
+        return condition;
+    }
+
+    /**
+     * Checks one instrument against the filter, one field at a time. This is how a
+     * list of instrument objects is filtered.
+     *
+     * @param instrument The instrument to check.
+     * @return <code>true</code> if the instrument matches all criteria.
+     */
+    public boolean matches(RentalInstrumentDTO instrument) {
+        return (instrumentName == null || instrumentName.equals(instrument.getName()))
+                && (!availableOnly || instrument.isAvailable())
+                && (minMonthlyCost == null || instrument.getMonthlyCost() >= minMonthlyCost)
+                && (maxMonthlyCost == null || instrument.getMonthlyCost() <= maxMonthlyCost)
+                && (condition == null || condition.equalsIgnoreCase(instrument.getCondition()));
+    }
+}
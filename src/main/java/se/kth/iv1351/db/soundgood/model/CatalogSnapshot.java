@@ -0,0 +1,352 @@
+package se.kth.iv1351.db.soundgood.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * An immutable, versioned copy of all non-terminated rental instruments, with
+ * indexes on instrument name and availability. A snapshot is never changed after
+ * it has been created, a change to the catalog instead creates a new snapshot with
+ * a higher version.
+ *
+ * The instruments are kept in one bucket per instrument name, and the rental id
+ * index is split in shards. A new snapshot shares everything but the changed
+ * bucket and id shard with the previous one, so a change copies the instruments
+ * with the changed name, one shard of about the square root of the catalog size,
+ * and one reference per instrument name and shard. The columnar copy used by
+ * {@link #filter(CatalogFilter)} is not shared, it is created again for each
+ * snapshot that is filtered.
+ */
+public class CatalogSnapshot {
+
+    /**
+     * Orders instruments the same way as the catalog queries, by name and then by
+     * rental instrument id, with null names last. Ids are ordered by length first, so
+     * numeric ids are in numeric order, and then as text. Text is compared by
+     * character code, as in the C collation of the database columns.
+     */
+    public static final Comparator<RentalInstrumentDTO> CATALOG_ORDER =
+            Comparator.comparing(RentalInstrumentDTO::getName, Comparator.nullsLast(CatalogSnapshot::compareText))
+                    .thenComparing(RentalInstrumentDTO::getId, Comparator.nullsLast(CatalogSnapshot::compareIds));
+    private static final Comparator<String> NAME_ORDER = Comparator.nullsLast(CatalogSnapshot::compareText);
+
+    private final long version;
+    private final List<Bucket> buckets;
+    private final Map<String, Bucket> byName;
+    private final List<Map<String, RentalInstrumentDTO>> idShards;
+    private final List<RentalInstrumentDTO> all;
+    private final List<RentalInstrumentDTO> available;
+    private volatile ColumnarCatalog columns;
+
+    private CatalogSnapshot(long version, List<Bucket> bucketsInNameOrder,
+                            List<Map<String, RentalInstrumentDTO>> idShards) {
+        this.version = version;
+        this.buckets = bucketsInNameOrder;
+        this.byName = new HashMap<>();
+        for (Bucket bucket : bucketsInNameOrder) {
+            byName.put(bucket.name, bucket);
+        }
+        this.idShards = idShards;
+        this.all = new ConcatenatedList(bucketsInNameOrder, false);
+        this.available = new ConcatenatedList(bucketsInNameOrder, true);
+    }
+
+    /**
+     * Creates the first snapshot of a catalog.
+     *
+     * @param version     The version of the new snapshot.
+     * @param instruments All non-terminated rental instruments.
+     * @return A snapshot containing the specified instruments.
+     */
+    public static CatalogSnapshot of(long version, Collection<? extends RentalInstrumentDTO> instruments) {
+        List<RentalInstrumentDTO> sorted = new ArrayList<>(instruments);
+        sorted.sort(CATALOG_ORDER);
+
+        List<Bucket> buckets = new ArrayList<>();
+        int first = 0;
+        for (int i = 1; i <= sorted.size(); i++) {
+            if (i == sorted.size() || !Objects.equals(sorted.get(i).getName(), sorted.get(first).getName())) {
+                buckets.add(new Bucket(sorted.get(first).getName(), new ArrayList<>(sorted.subList(first, i))));
+                first = i;
+            }
+        }
+
+        List<Map<String, RentalInstrumentDTO>> idShards = newShards(sorted.size());
+        for (RentalInstrumentDTO instrument : sorted) {
+            idShards.get(shardOf(instrument.getId(), idShards.size())).put(instrument.getId(), instrument);
+        }
+        return new CatalogSnapshot(version, buckets, idShards);
+    }
+
+    /**
+     * Creates a new snapshot where the instrument with the specified rental id has
+     * been replaced. This snapshot is not changed. Only the buckets of the old and the
+     * new name of the instrument, and the id shard of the instrument, are copied.
+     *
+     * @param rentalInstrumentId The rental id of the changed instrument.
+     * @param instrument         The current state of the instrument, or <code>null</code>
+     *                           if it is no longer part of the catalog.
+     * @return A snapshot with the next version, containing the change.
+     */
+    public CatalogSnapshot withInstrument(String rentalInstrumentId, RentalInstrumentDTO instrument) {
+        List<Bucket> changedBuckets = new ArrayList<>(buckets);
+
+        RentalInstrumentDTO previous = getById(rentalInstrumentId);
+        if (previous != null) {
+            int position = bucketPosition(changedBuckets, previous.getName());
+            Bucket bucket = changedBuckets.get(position).without(rentalInstrumentId);
+            if (bucket.all.isEmpty()) {
+                changedBuckets.remove(position);
+            } else {
+                changedBuckets.set(position, bucket);
+            }
+        }
+
+        if (instrument != null) {
+            int position = bucketPosition(changedBuckets, instrument.getName());
+            if (position >= 0) {
+                changedBuckets.set(position, changedBuckets.get(position).with(instrument));
+            } else {
+                List<RentalInstrumentDTO> instruments = new ArrayList<>(1);
+                instruments.add(instrument);
+                changedBuckets.add(-position - 1, new Bucket(instrument.getName(), instruments));
+            }
+        }
+
+        List<Map<String, RentalInstrumentDTO>> changedShards = new ArrayList<>(idShards);
+        int shard = shardOf(rentalInstrumentId, changedShards.size());
+        Map<String, RentalInstrumentDTO> changedShard = new HashMap<>(changedShards.get(shard));
+        if (instrument != null) {
+            changedShard.put(rentalInstrumentId, instrument);
+        } else {
+            changedShard.remove(rentalInstrumentId);
+        }
+        changedShards.set(shard, changedShard);
+
+        return new CatalogSnapshot(version + 1, changedBuckets, changedShards);
+    }
+
+    /**
+     * @return The version of this snapshot. A higher version is a later snapshot.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return All instruments, ordered by name and rental id.
+     */
+    public List<RentalInstrumentDTO> getAll() {
+        return all;
+    }
+
+    /**
+     * @return All available instruments, ordered by name and rental id.
+     */
+    public List<RentalInstrumentDTO> getAvailable() {
+        return available;
+    }
+
+    /**
+     * @param instrumentName The name of the instruments, f.e. guitar.
+     * @return All instruments with the specified name, ordered by rental id.
+     */
+    public List<RentalInstrumentDTO> getByName(String instrumentName) {
+        Bucket bucket = byName.get(instrumentName);
+        return bucket == null ? Collections.emptyList() : bucket.all;
+    }
+
+    /**
+     * @param instrumentName The name of the instruments, f.e. guitar.
+     * @return All available instruments with the specified name, ordered by rental id.
+     */
+    public List<RentalInstrumentDTO> getAvailableByName(String instrumentName) {
+        Bucket bucket = byName.get(instrumentName);
+        return bucket == null ? Collections.emptyList() : bucket.available;
+    }
+
+    /**
+     * @param rentalInstrumentId The rental id to search for.
+     * @return The instrument with the specified rental id, or <code>null</code> if there is none.
+     */
+    public RentalInstrumentDTO getById(String rentalInstrumentId) {
+        return idShards.get(shardOf(rentalInstrumentId, idShards.size())).get(rentalInstrumentId);
+    }
+
+    /**
+     * Finds the instruments matching a filter, using a columnar copy of this snapshot.
+     * The copy is created the first time a snapshot is filtered.
+     *
+     * @param filter The criteria of the instruments to find.
+     * @return The matching instruments, ordered by name and rental id.
+     */
+    public List<RentalInstrumentDTO> filter(CatalogFilter filter) {
+        return getColumns().filter(filter);
+    }
+
+    /**
+     * @return This snapshot stored column by column.
+     */
+    public ColumnarCatalog getColumns() {
+        ColumnarCatalog current = columns;
+        if (current == null) {
+            current = new ColumnarCatalog(all);
+            columns = current;
+        }
+        return current;
+    }
+
+    private static int bucketPosition(List<Bucket> bucketsInNameOrder, String name) {
+        int low = 0;
+        int high = bucketsInNameOrder.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int order = NAME_ORDER.compare(bucketsInNameOrder.get(middle).name, name);
+            if (order < 0) {
+                low = middle + 1;
+            } else if (order > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -low - 1;
+    }
+
+    /**
+     * The number of id shards is chosen when the first snapshot is created, as the
+     * smallest power of two at least the square root of the catalog size. Later
+     * snapshots keep it, a full reload chooses it again.
+     */
+    private static List<Map<String, RentalInstrumentDTO>> newShards(int catalogSize) {
+        int count = Integer.highestOneBit(Math.max(1, (int) Math.ceil(Math.sqrt(catalogSize))) * 2 - 1);
+        List<Map<String, RentalInstrumentDTO>> shards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            shards.add(new HashMap<>());
+        }
+        return shards;
+    }
+
+    private static int shardOf(String rentalInstrumentId, int shardCount) {
+        int hash = Objects.hashCode(rentalInstrumentId);
+        return (hash ^ (hash >>> 16)) & (shardCount - 1);
+    }
+
+    private static int compareIds(String first, String second) {
+        int byLength = Integer.compare(first.codePointCount(0, first.length()),
+                second.codePointCount(0, second.length()));
+        return byLength != 0 ? byLength : compareText(first, second);
+    }
+
+    /**
+     * Compares by code point, which is the byte order of UTF-8 and thus the C
+     * collation. <code>String.compareTo</code> differs for characters outside the
+     * Basic Multilingual Plane.
+     */
+    private static int compareText(String first, String second) {
+        int i = 0;
+        int j = 0;
+        while (i < first.length() && j < second.length()) {
+            int firstCodePoint = first.codePointAt(i);
+            int secondCodePoint = second.codePointAt(j);
+            if (firstCodePoint != secondCodePoint) {
+                return Integer.compare(firstCodePoint, secondCodePoint);
+            }
+            i += Character.charCount(firstCodePoint);
+            j += Character.charCount(secondCodePoint);
+        }
+        return Integer.compare(first.length() - i, second.length() - j);
+    }
+
+    /**
+     * The instruments with one name, in catalog order. A bucket is never changed, a
+     * change creates a new bucket.
+     */
+    private static final class Bucket {
+        private final String name;
+        private final List<RentalInstrumentDTO> all;
+        private final List<RentalInstrumentDTO> available;
+
+        private Bucket(String name, List<RentalInstrumentDTO> instrumentsInCatalogOrder) {
+            this.name = name;
+            this.all = Collections.unmodifiableList(instrumentsInCatalogOrder);
+            List<RentalInstrumentDTO> availableInstruments = new ArrayList<>();
+            for (RentalInstrumentDTO instrument : instrumentsInCatalogOrder) {
+                if (instrument.isAvailable()) {
+                    availableInstruments.add(instrument);
+                }
+            }
+            this.available = Collections.unmodifiableList(availableInstruments);
+        }
+
+        private Bucket without(String rentalInstrumentId) {
+            List<RentalInstrumentDTO> changed = new ArrayList<>(all.size());
+            for (RentalInstrumentDTO current : all) {
+                if (!current.getId().equals(rentalInstrumentId)) {
+                    changed.add(current);
+                }
+            }
+            return new Bucket(name, changed);
+        }
+
+        private Bucket with(RentalInstrumentDTO instrument) {
+            List<RentalInstrumentDTO> changed = new ArrayList<>(all.size() + 1);
+            changed.addAll(all);
+            int position = Collections.binarySearch(changed, instrument, CATALOG_ORDER);
+            changed.add(position < 0 ? -position - 1 : position, instrument);
+            return new Bucket(name, changed);
+        }
+    }
+
+    /**
+     * A read-only view of the instruments, or the available instruments, of all
+     * buckets one after the other.
+     */
+    private static final class ConcatenatedList extends AbstractList<RentalInstrumentDTO> implements RandomAccess {
+        private final List<List<RentalInstrumentDTO>> parts;
+        private final int[] ends;
+
+        private ConcatenatedList(List<Bucket> buckets, boolean availableOnly) {
+            this.parts = new ArrayList<>(buckets.size());
+            this.ends = new int[buckets.size()];
+            int size = 0;
+            for (Bucket bucket : buckets) {
+                List<RentalInstrumentDTO> part = availableOnly ? bucket.available : bucket.all;
+                size += part.size();
+                ends[parts.size()] = size;
+                parts.add(part);
+            }
+        }
+
+        @Override
+        public RentalInstrumentDTO get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+            }
+            int low = 0;
+            int high = ends.length - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (ends[middle] <= index) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return parts.get(low).get(index - (low == 0 ? 0 : ends[low - 1]));
+        }
+
+        @Override
+        public int size() {
+            return ends.length == 0 ? 0 : ends[ends.length - 1];
+        }
+    }
+}
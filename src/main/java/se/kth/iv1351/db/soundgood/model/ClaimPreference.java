@@ -0,0 +1,24 @@
+package se.kth.iv1351.db.soundgood.model;
+
+/**
+ * Which of the available instruments with a given name is rented when a student asks
+ * for any instrument of that kind. Instruments that are equally preferred are taken
+ * in catalog order.
+ */
+public enum ClaimPreference {
+
+    /**
+     * The first available instrument in catalog order, the one with the lowest rental id.
+     */
+    FIRST,
+
+    /**
+     * The available instrument with the lowest monthly cost.
+     */
+    CHEAPEST,
+
+    /**
+     * The available instrument in the best condition.
+     */
+    BEST_CONDITION
+}
@@ -0,0 +1,254 @@
+package se.kth.iv1351.db.soundgood.model;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The catalog stored column by column in primitive arrays, for filtering without
+ * touching one object per instrument. Instrument names, types, brands and conditions
+ * are stored as the int codes of the shared {@link ValueDictionary dictionaries},
+ * rental ids as ints, the monthly costs are a <code>double[]</code>, and availability
+ * is a bit set. Every instrument name and condition also has a bit set of the rows
+ * with that value.
+ *
+ * A filter is answered by intersecting bit sets and then scanning the cost column of
+ * the remaining rows. Instrument objects are only created for the rows in the result.
+ * Rows are stored in the order of the instruments the catalog was created from.
+ */
+public class ColumnarCatalog {
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final int UNCODED = -1;
+    private static final int UNCODED_ID = Integer.MIN_VALUE;
+
+    private final int size;
+    private final int[] rentalIds;
+    private final Map<Integer, String> uncodedRentalIds = new HashMap<>();
+    private final int[] instrumentIds;
+    private final CodedColumn names;
+    private final CodedColumn types;
+    private final CodedColumn brands;
+    private final CodedColumn conditions;
+    private final double[] monthlyCosts;
+    private final long[] returnDates;
+    private final String[] studentIds;
+    private final BitSet available;
+
+    /**
+     * Creates a columnar copy of the specified instruments.
+     *
+     * @param instruments The instruments, in the order they shall be returned.
+     */
+    public ColumnarCatalog(List<? extends RentalInstrumentDTO> instruments) {
+        size = instruments.size();
+        rentalIds = new int[size];
+        instrumentIds = new int[size];
+        names = new CodedColumn(ValueDictionary.INSTRUMENT_NAMES, size, true);
+        types = new CodedColumn(ValueDictionary.INSTRUMENT_TYPES, size, false);
+        brands = new CodedColumn(ValueDictionary.BRANDS, size, false);
+        conditions = new CodedColumn(ValueDictionary.CONDITIONS, size, true);
+        monthlyCosts = new double[size];
+        returnDates = new long[size];
+        studentIds = new String[size];
+        available = new BitSet(size);
+
+        for (int row = 0; row < size; row++) {
+            RentalInstrumentDTO instrument = instruments.get(row);
+
+            rentalIds[row] = idCodeOf(instrument.getId());
+            if (rentalIds[row] == UNCODED_ID) {
+                uncodedRentalIds.put(row, instrument.getId());
+            }
+            instrumentIds[row] = instrument.getInstrument_id();
+            names.set(row, instrument.getName());
+            types.set(row, instrument.getType());
+            brands.set(row, instrument.getBrand());
+            conditions.set(row, instrument.getCondition());
+            monthlyCosts[row] = instrument.getMonthlyCost();
+            studentIds[row] = instrument.getStudent_id();
+            Timestamp returnDate = instrument.getReturnDate();
+            returnDates[row] = returnDate == null ? NO_DATE : returnDate.getTime();
+            available.set(row, instrument.isAvailable());
+        }
+    }
+
+    /**
+     * @return The number of instruments.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds all instruments matching the filter.
+     *
+     * @param filter The criteria of the instruments to find.
+     * @return The matching instruments, in catalog order.
+     */
+    public List<RentalInstrumentDTO> filter(CatalogFilter filter) {
+        List<RentalInstrumentDTO> matches = new ArrayList<>();
+        BitSet rows = candidates(filter);
+        double minCost = minCostOf(filter);
+        double maxCost = maxCostOf(filter);
+
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            if (monthlyCosts[row] >= minCost && monthlyCosts[row] <= maxCost) {
+                matches.add(instrumentAt(row));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Counts the instruments matching the filter without creating any instrument objects.
+     *
+     * @param filter The criteria of the instruments to count.
+     * @return The number of matching instruments.
+     */
+    public int count(CatalogFilter filter) {
+        BitSet rows = candidates(filter);
+        if (filter.getMinMonthlyCost() == null && filter.getMaxMonthlyCost() == null) {
+            return rows.cardinality();
+        }
+
+        double minCost = minCostOf(filter);
+        double maxCost = maxCostOf(filter);
+        int count = 0;
+        for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+            if (monthlyCosts[row] >= minCost && monthlyCosts[row] <= maxCost) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the rows matching all criteria except the cost range, by intersecting
+     * the bit sets of the criteria.
+     */
+    private BitSet candidates(CatalogFilter filter) {
+        BitSet rows = new BitSet(size);
+        rows.set(0, size);
+
+        if (filter.getInstrumentName() != null) {
+            rows.and(names.rowsWith(filter.getInstrumentName(), false));
+        }
+        if (filter.getCondition() != null) {
+            rows.and(conditions.rowsWith(filter.getCondition(), true));
+        }
+        if (filter.isAvailableOnly()) {
+            rows.and(available);
+        }
+        return rows;
+    }
+
+    private static double minCostOf(CatalogFilter filter) {
+        return filter.getMinMonthlyCost() == null ? Double.NEGATIVE_INFINITY : filter.getMinMonthlyCost();
+    }
+
+    private static double maxCostOf(CatalogFilter filter) {
+        return filter.getMaxMonthlyCost() == null ? Double.POSITIVE_INFINITY : filter.getMaxMonthlyCost();
+    }
+
+    private RentalInstrument instrumentAt(int row) {
+        return new RentalInstrument(
+                rentalIds[row] == UNCODED_ID ? uncodedRentalIds.get(row) : Integer.toString(rentalIds[row]),
+                brands.valueAt(row),
+                names.valueAt(row),
+                types.valueAt(row),
+                available.get(row),
+                monthlyCosts[row],
+                conditions.valueAt(row),
+                instrumentIds[row],
+                returnDates[row] == NO_DATE ? null : new Timestamp(returnDates[row]),
+                studentIds[row]);
+    }
+
+    /**
+     * Rental ids are stored as ints if they are written as ints, which all ids
+     * generated by the database are.
+     */
+    private static int idCodeOf(String id) {
+        if (id == null || id.isEmpty() || id.length() > 10) {
+            return UNCODED_ID;
+        }
+        try {
+            int code = Integer.parseInt(id);
+            return code != UNCODED_ID && Integer.toString(code).equals(id) ? code : UNCODED_ID;
+        } catch (NumberFormatException notAnInt) {
+            return UNCODED_ID;
+        }
+    }
+
+    /**
+     * One column of values stored as the codes of a shared dictionary. The values the
+     * dictionary has no code for, <code>null</code> and values that arrived after the
+     * dictionary was full, are kept by row instead.
+     */
+    private static final class CodedColumn {
+
+        private final ValueDictionary dictionary;
+        private final int[] codes;
+        private final Map<Integer, String> uncodedValues = new HashMap<>();
+        private final List<BitSet> rowsByCode;
+
+        /**
+         * @param indexed If true, the rows of each value are kept as a bit set.
+         */
+        private CodedColumn(ValueDictionary dictionary, int size, boolean indexed) {
+            this.dictionary = dictionary;
+            this.codes = new int[size];
+            this.rowsByCode = indexed ? new ArrayList<>() : null;
+        }
+
+        private void set(int row, String value) {
+            int code = dictionary.codeOf(dictionary.canonical(value));
+            codes[row] = code;
+            if (code == UNCODED) {
+                uncodedValues.put(row, value);
+            } else if (rowsByCode != null) {
+                while (rowsByCode.size() <= code) {
+                    rowsByCode.add(null);
+                }
+                if (rowsByCode.get(code) == null) {
+                    rowsByCode.set(code, new BitSet());
+                }
+                rowsByCode.get(code).set(row);
+            }
+        }
+
+        private String valueAt(int row) {
+            int code = codes[row];
+            return code == UNCODED ? uncodedValues.get(row) : dictionary.valueOf(code);
+        }
+
+        /**
+         * Returns the rows with the specified value. Only the values present in this
+         * column are compared when case is ignored.
+         */
+        private BitSet rowsWith(String value, boolean ignoreCase) {
+            BitSet rows = new BitSet(codes.length);
+            if (ignoreCase) {
+                for (int code = 0; code < rowsByCode.size(); code++) {
+                    if (rowsByCode.get(code) != null && value.equalsIgnoreCase(dictionary.valueOf(code))) {
+                        rows.or(rowsByCode.get(code));
+                    }
+                }
+            } else {
+                int code = dictionary.codeOf(value);
+                if (code != UNCODED && code < rowsByCode.size() && rowsByCode.get(code) != null) {
+                    rows.or(rowsByCode.get(code));
+                }
+            }
+            for (Map.Entry<Integer, String> uncoded : uncodedValues.entrySet()) {
+                String rowValue = uncoded.getValue();
+                if (rowValue != null && (ignoreCase ? value.equalsIgnoreCase(rowValue) : value.equals(rowValue))) {
+                    rows.set(uncoded.getKey());
+                }
+            }
+            return rows;
+        }
+    }
+}
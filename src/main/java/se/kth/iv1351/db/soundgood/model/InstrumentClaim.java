@@ -0,0 +1,38 @@
+package se.kth.iv1351.db.soundgood.model;
+
+/**
+ * The result of renting any available instrument with a given name, telling which
+ * instrument was rented, or why none was.
+ */
+public class InstrumentClaim {
+
+    private final RentalOutcome outcome;
+    private final String rentalInstrumentId;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param outcome            Whether an instrument was rented, or why not.
+     * @param rentalInstrumentId The rental id of the rented instrument, or <code>null</code>
+     *                           if none was rented.
+     */
+    public InstrumentClaim(RentalOutcome outcome, String rentalInstrumentId) {
+        this.outcome = outcome;
+        this.rentalInstrumentId = rentalInstrumentId;
+    }
+
+    public RentalOutcome getOutcome() {
+        return outcome;
+    }
+
+    public String getRentalInstrumentId() {
+        return rentalInstrumentId;
+    }
+
+    /**
+     * @return <code>true</code> if an instrument was rented.
+     */
+    public boolean isSuccessful() {
+        return outcome.isSuccessful();
+    }
+}
@@ -0,0 +1,399 @@
+package se.kth.iv1351.db.soundgood.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * An in-memory index for searching the catalog by instrument name, brand and
+ * condition. Each word of a search matches a value if it is the value, or one of
+ * its words, if it is the start of one, or if the two are similar enough to be a
+ * misspelling of each other. Similarity is the Dice coefficient of the sets of
+ * character bigrams of the two words.
+ *
+ * The instruments are grouped by their combination of name, brand and condition,
+ * and each group, and its available instruments, are kept in catalog order. The
+ * distinct values are indexed by their words and by the bigrams of their words. A
+ * search only scores the values having a word that starts with a searched word, or
+ * sharing a bigram with it, and the combinations containing those values. It then
+ * reads the groups with the highest scores until it has enough instruments. The
+ * time of a search thus grows with the number of such candidate values and
+ * combinations, not with the number of instruments, but a short or common word
+ * can make most values candidates. The index is changed one instrument at a time
+ * as the catalog changes. All methods may be called by several threads at the
+ * same time.
+ */
+public class InstrumentSearchIndex {
+
+    /**
+     * The lowest similarity at which a word is taken as a misspelling of another.
+     */
+    public static final double MIN_SIMILARITY =
+            Double.parseDouble(System.getProperty("soundgood.search.minSimilarity", "0.5"));
+
+    private static final double EXACT_SCORE = 1.0;
+    private static final double MIN_PREFIX_SCORE = 0.5;
+    private static final double PREFIX_LENGTH_WEIGHT = 0.4;
+    private static final double SIMILARITY_WEIGHT = 0.5;
+    private static final int MIN_FUZZY_WORD_LENGTH = 3;
+    private static final char WORD_BOUNDARY = ' ';
+
+    private final Map<Combination, Group> groups = new HashMap<>();
+    private final Map<String, RentalInstrumentDTO> instrumentsById = new HashMap<>();
+    private final Map<String, Term> terms = new HashMap<>();
+    private final NavigableMap<String, Set<Term>> termsByWord = new TreeMap<>();
+    private final Map<String, Set<Term>> termsByBigram = new HashMap<>();
+
+    /**
+     * Creates an index of the specified instruments.
+     *
+     * @param instruments The instruments of the catalog.
+     */
+    public InstrumentSearchIndex(Collection<? extends RentalInstrumentDTO> instruments) {
+        rebuild(instruments);
+    }
+
+    /**
+     * Replaces all instruments of the index.
+     *
+     * @param instruments The instruments of the catalog.
+     */
+    public synchronized void rebuild(Collection<? extends RentalInstrumentDTO> instruments) {
+        groups.clear();
+        instrumentsById.clear();
+        terms.clear();
+        termsByWord.clear();
+        termsByBigram.clear();
+        for (RentalInstrumentDTO instrument : instruments) {
+            add(instrument);
+        }
+    }
+
+    /**
+     * Replaces one instrument of the index.
+     *
+     * @param rentalInstrumentId The rental id of the changed instrument.
+     * @param instrument         The current state of the instrument, or <code>null</code>
+     *                           if it is no longer part of the catalog.
+     */
+    public synchronized void update(String rentalInstrumentId, RentalInstrumentDTO instrument) {
+        RentalInstrumentDTO previous = instrumentsById.remove(rentalInstrumentId);
+        if (previous != null) {
+            Combination combination = combinationOf(previous);
+            Group group = groups.get(combination);
+            group.all.remove(previous);
+            group.available.remove(previous);
+            if (group.all.isEmpty()) {
+                groups.remove(combination);
+                for (Term term : combination.terms) {
+                    term.combinations.remove(combination);
+                    if (term.combinations.isEmpty()) {
+                        removeTerm(term);
+                    }
+                }
+            }
+        }
+        if (instrument != null) {
+            add(instrument);
+        }
+    }
+
+    /**
+     * Finds the instruments best matching a search. Instruments matching more of the
+     * words, or matching them more closely, come first. Instruments that match equally
+     * well are in catalog order.
+     *
+     * @param query         The words to search for, f.e. "yamaha guit".
+     * @param availableOnly If true, only available instruments are returned.
+     * @param limit         The maximum number of instruments to return.
+     * @return The matching instruments, best match first.
+     */
+    public synchronized List<RentalInstrumentDTO> search(String query, boolean availableOnly, int limit) {
+        List<String> words = wordsOf(query);
+        if (words.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        List<Map<Term, Double>> scoresByWord = new ArrayList<>(words.size());
+        for (int i = 0; i < words.size(); i++) {
+            scoresByWord.add(new HashMap<>());
+        }
+
+        Set<Combination> candidates = new HashSet<>();
+        for (String word : words) {
+            for (Term term : candidateTerms(word)) {
+                candidates.addAll(term.combinations);
+            }
+        }
+
+        List<ScoredCombination> matches = new ArrayList<>();
+        for (Combination combination : candidates) {
+            double score = 0;
+            for (int i = 0; i < words.size(); i++) {
+                String word = words.get(i);
+                Map<Term, Double> scores = scoresByWord.get(i);
+                double best = 0;
+                for (Term term : combination.terms) {
+                    best = Math.max(best, scores.computeIfAbsent(term, t -> t.score(word)));
+                }
+                score += best;
+            }
+            if (score > 0) {
+                matches.add(new ScoredCombination(combination, score));
+            }
+        }
+        matches.sort((first, second) -> Double.compare(second.score, first.score));
+
+        List<RentalInstrumentDTO> result = new ArrayList<>(Math.min(limit, 64));
+        int next = 0;
+        while (next < matches.size() && result.size() < limit) {
+            double score = matches.get(next).score;
+            List<RentalInstrumentDTO> equallyGood = new ArrayList<>();
+            for (; next < matches.size() && matches.get(next).score == score; next++) {
+                Group group = groups.get(matches.get(next).combination);
+                takeFirst(availableOnly ? group.available : group.all, limit - result.size(), equallyGood);
+            }
+            equallyGood.sort(CatalogSnapshot.CATALOG_ORDER);
+            result.addAll(equallyGood.subList(0, Math.min(equallyGood.size(), limit - result.size())));
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of instruments in the index.
+     */
+    public synchronized int size() {
+        return instrumentsById.size();
+    }
+
+    private void add(RentalInstrumentDTO instrument) {
+        instrumentsById.put(instrument.getId(), instrument);
+        Combination combination = combinationOf(instrument);
+        Group group = groups.get(combination);
+        if (group == null) {
+            group = new Group();
+            groups.put(combination, group);
+            for (Term term : combination.terms) {
+                term.combinations.add(combination);
+            }
+        }
+        group.all.add(instrument);
+        if (instrument.isAvailable()) {
+            group.available.add(instrument);
+        }
+    }
+
+    private Combination combinationOf(RentalInstrumentDTO instrument) {
+        return new Combination(termOf(instrument.getName()), termOf(instrument.getBrand()),
+                termOf(instrument.getCondition()));
+    }
+
+    private Term termOf(String value) {
+        String normalized = value == null ? "" : value.toLowerCase(Locale.ROOT);
+        Term term = terms.get(normalized);
+        if (term == null) {
+            term = new Term(normalized);
+            terms.put(normalized, term);
+            for (int i = 0; i < term.words.size(); i++) {
+                termsByWord.computeIfAbsent(term.words.get(i), word -> new HashSet<>()).add(term);
+                for (String bigram : term.bigrams.get(i)) {
+                    termsByBigram.computeIfAbsent(bigram, key -> new HashSet<>()).add(term);
+                }
+            }
+        }
+        return term;
+    }
+
+    /**
+     * Removes a value that is no longer part of any combination.
+     */
+    private void removeTerm(Term term) {
+        terms.remove(term.value);
+        for (int i = 0; i < term.words.size(); i++) {
+            removePosting(termsByWord, term.words.get(i), term);
+            for (String bigram : term.bigrams.get(i)) {
+                removePosting(termsByBigram, bigram, term);
+            }
+        }
+    }
+
+    /**
+     * Finds the values that may match a word of a search: those with a word starting
+     * with it, and, if it is long enough to be taken as a misspelling, those sharing a
+     * bigram with it. A value sharing no bigram is less similar than any
+     * {@link #MIN_SIMILARITY} above zero.
+     */
+    private Set<Term> candidateTerms(String searched) {
+        Set<Term> candidates = new HashSet<>();
+        Map<String, Set<Term>> withPrefix = termsByWord.subMap(searched, true, searched + Character.MAX_VALUE, true);
+        for (Set<Term> posted : withPrefix.values()) {
+            candidates.addAll(posted);
+        }
+        if (searched.length() >= MIN_FUZZY_WORD_LENGTH) {
+            for (String bigram : bigramsOf(searched)) {
+                candidates.addAll(termsByBigram.getOrDefault(bigram, Collections.emptySet()));
+            }
+        }
+        return candidates;
+    }
+
+    private static void removePosting(Map<String, Set<Term>> postings, String key, Term term) {
+        Set<Term> posted = postings.get(key);
+        if (posted != null && posted.remove(term) && posted.isEmpty()) {
+            postings.remove(key);
+        }
+    }
+
+    private static void takeFirst(Collection<RentalInstrumentDTO> instruments, int count,
+                                  List<RentalInstrumentDTO> taken) {
+        int remaining = count;
+        for (RentalInstrumentDTO instrument : instruments) {
+            if (remaining-- == 0) {
+                return;
+            }
+            taken.add(instrument);
+        }
+    }
+
+    private static List<String> wordsOf(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private static Set<String> bigramsOf(String word) {
+        String bounded = WORD_BOUNDARY + word + WORD_BOUNDARY;
+        Set<String> bigrams = new HashSet<>();
+        for (int i = 0; i + 2 <= bounded.length(); i++) {
+            bigrams.add(bounded.substring(i, i + 2));
+        }
+        return bigrams;
+    }
+
+    /**
+     * One distinct value of a name, brand or condition, with its words and their
+     * bigrams, and the combinations it is part of.
+     */
+    private static final class Term {
+
+        private final String value;
+        private final List<String> words;
+        private final List<Set<String>> bigrams = new ArrayList<>();
+        private final Set<Combination> combinations = new HashSet<>();
+
+        private Term(String value) {
+            this.value = value;
+            this.words = wordsOf(value);
+            for (String word : words) {
+                bigrams.add(bigramsOf(word));
+            }
+        }
+
+        /**
+         * Scores how well a word of a search matches this value, zero if it does not.
+         */
+        private double score(String searched) {
+            if (value.equals(searched)) {
+                return EXACT_SCORE;
+            }
+            double best = 0;
+            Set<String> searchedBigrams = null;
+
+            for (int i = 0; i < words.size(); i++) {
+                String word = words.get(i);
+                if (word.equals(searched)) {
+                    return EXACT_SCORE;
+                }
+                if (word.startsWith(searched)) {
+                    double lengthRatio = (double) searched.length() / word.length();
+                    best = Math.max(best, MIN_PREFIX_SCORE + PREFIX_LENGTH_WEIGHT * lengthRatio);
+                } else if (searched.length() >= MIN_FUZZY_WORD_LENGTH) {
+                    if (searchedBigrams == null) {
+                        searchedBigrams = bigramsOf(searched);
+                    }
+                    double similarity = similarity(searchedBigrams, bigrams.get(i));
+                    if (similarity >= MIN_SIMILARITY) {
+                        best = Math.max(best, SIMILARITY_WEIGHT * similarity);
+                    }
+                }
+            }
+            return best;
+        }
+
+        private static double similarity(Set<String> first, Set<String> second) {
+            int common = 0;
+            for (String bigram : first) {
+                if (second.contains(bigram)) common++;
+            }
+            return 2.0 * common / (first.size() + second.size());
+        }
+    }
+
+    /**
+     * The name, brand and condition shared by a group of instruments.
+     */
+    private static final class Combination {
+
+        private final Term[] terms;
+
+        private Combination(Term name, Term brand, Term condition) {
+            this.terms = new Term[] {name, brand, condition};
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Combination)) {
+                return false;
+            }
+            Combination combination = (Combination) other;
+            for (int i = 0; i < terms.length; i++) {
+                if (terms[i] != combination.terms[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(terms[0].value, terms[1].value, terms[2].value);
+        }
+    }
+
+    /**
+     * The instruments with one combination of name, brand and condition.
+     */
+    private static final class Group {
+
+        private final TreeSet<RentalInstrumentDTO> all = new TreeSet<>(CatalogSnapshot.CATALOG_ORDER);
+        private final TreeSet<RentalInstrumentDTO> available = new TreeSet<>(CatalogSnapshot.CATALOG_ORDER);
+    }
+
+    private static final class ScoredCombination {
+
+        private final Combination combination;
+        private final double score;
+
+        private ScoredCombination(Combination combination, double score) {
+            this.combination = combination;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package se.kth.iv1351.db.soundgood.model;
+
+import java.time.LocalDate;
+
+/**
+ * The rentals started in one month, and the revenue of them.
+ */
+public class MonthlyRevenue {
+
+    private final LocalDate month;
+    private final int rentals;
+    private final double revenue;
+
+    /**
+     * Creates a new monthly revenue.
+     *
+     * @param month   The first day of the month.
+     * @param rentals The number of rentals started in the month.
+     * @param revenue The sum of the monthly cost of those rentals.
+     */
+    public MonthlyRevenue(LocalDate month, int rentals, double revenue) {
+        this.month = month;
+        this.rentals = rentals;
+        this.revenue = revenue;
+    }
+
+    public LocalDate getMonth() {
+        return month;
+    }
+
+    public int getRentals() {
+        return rentals;
+    }
+
+    public double getRevenue() {
+        return revenue;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%tY-%<tm: %d rentals, %.2fkr", month, rentals, revenue);
+    }
+}
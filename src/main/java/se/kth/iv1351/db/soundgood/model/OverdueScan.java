@@ -0,0 +1,47 @@
+package se.kth.iv1351.db.soundgood.model;
+
+import java.sql.Timestamp;
+
+/**
+ * The result of one scan for rentals that have become overdue. A scan finds the
+ * rentals whose return date is after the end of the previous scan and not after
+ * the end of this one.
+ */
+public class OverdueScan {
+
+    private final Timestamp scannedFrom;
+    private final Timestamp scannedUntil;
+    private final int newlyOverdue;
+
+    /**
+     * Creates a new scan result.
+     *
+     * @param scannedFrom  The end of the previous scan, or <code>null</code> if this
+     *                     was the first scan.
+     * @param scannedUntil The end of this scan, the time it was made.
+     * @param newlyOverdue The number of rentals that became overdue between the two.
+     */
+    public OverdueScan(Timestamp scannedFrom, Timestamp scannedUntil, int newlyOverdue) {
+        this.scannedFrom = scannedFrom;
+        this.scannedUntil = scannedUntil;
+        this.newlyOverdue = newlyOverdue;
+    }
+
+    public Timestamp getScannedFrom() {
+        return scannedFrom;
+    }
+
+    public Timestamp getScannedUntil() {
+        return scannedUntil;
+    }
+
+    public int getNewlyOverdue() {
+        return newlyOverdue;
+    }
+
+    @Override
+    public String toString() {
+        return "scanned " + (scannedFrom == null ? "everything" : "from " + scannedFrom)
+                + " until " + scannedUntil + ": " + newlyOverdue + " newly overdue";
+    }
+}
@@ -0,0 +1,64 @@
+package se.kth.iv1351.db.soundgood.model;
+
+import java.sql.Timestamp;
+
+/**
+ * The new rental state of one rental instrument, after it has been rented or its
+ * rental has been terminated, possibly by another client of the same database.
+ */
+public class RentalChange {
+
+    private final String rentalInstrumentId;
+    private final boolean available;
+    private final String studentId;
+    private final Timestamp returnDate;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param rentalInstrumentId The rental id of the changed instrument.
+     * @param available          <code>true</code> if the instrument can now be rented.
+     * @param studentId          The student renting the instrument, or <code>null</code>.
+     * @param returnDate         The date the rental ends, or <code>null</code>.
+     */
+    public RentalChange(String rentalInstrumentId, boolean available, String studentId, Timestamp returnDate) {
+        this.rentalInstrumentId = rentalInstrumentId;
+        this.available = available;
+        this.studentId = studentId;
+        this.returnDate = returnDate;
+    }
+
+    public String getRentalInstrumentId() {
+        return rentalInstrumentId;
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public String getStudentId() {
+        return studentId;
+    }
+
+    public Timestamp getReturnDate() {
+        return returnDate;
+    }
+
+    /**
+     * Creates a copy of an instrument with the rental state of this change. The
+     * specified instrument is not changed.
+     *
+     * @param instrument The instrument before the change.
+     * @return The instrument after the change.
+     */
+    public RentalInstrument applyTo(RentalInstrumentDTO instrument) {
+        return new RentalInstrument(instrument.getId(), instrument.getBrand(), instrument.getName(),
+                instrument.getType(), available, instrument.getMonthlyCost(), instrument.getCondition(),
+                instrument.getInstrument_id(), returnDate, studentId);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + rentalInstrumentId + "] " + (available ? "available" : "rented by " + studentId);
+    }
+}
@@ -0,0 +1,75 @@
+package se.kth.iv1351.db.soundgood.model;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The result of one reconciliation of the per-student rental counters against the
+ * database.
+ */
+public class RentalCountDrift {
+
+    private final Date time = new Date();
+    private final int studentsChecked;
+    private final int studentsSkipped;
+    private final int studentsDrifted;
+    private final int totalDrift;
+    private final List<String> examples;
+
+    /**
+     * Creates a new report.
+     *
+     * @param studentsChecked The number of students whose counters were compared.
+     * @param studentsSkipped The number of students that were not compared, since their
+     *                        rentals were changed during the reconciliation.
+     * @param studentsDrifted The number of students whose counter was wrong.
+     * @param totalDrift      The sum of the differences of all wrong counters.
+     * @param examples        Some of the wrong counters, as "student: cached -> actual".
+     */
+    RentalCountDrift(int studentsChecked, int studentsSkipped, int studentsDrifted, int totalDrift,
+                     List<String> examples) {
+        this.studentsChecked = studentsChecked;
+        this.studentsSkipped = studentsSkipped;
+        this.studentsDrifted = studentsDrifted;
+        this.totalDrift = totalDrift;
+        this.examples = List.copyOf(examples);
+    }
+
+    public Date getTime() {
+        return time;
+    }
+
+    public int getStudentsChecked() {
+        return studentsChecked;
+    }
+
+    public int getStudentsSkipped() {
+        return studentsSkipped;
+    }
+
+    public int getStudentsDrifted() {
+        return studentsDrifted;
+    }
+
+    public int getTotalDrift() {
+        return totalDrift;
+    }
+
+    public List<String> getExamples() {
+        return examples;
+    }
+
+    /**
+     * @return <code>true</code> if any counter was wrong.
+     */
+    public boolean hasDrift() {
+        return studentsDrifted > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "reconciled " + time + ": " + studentsChecked + " students checked, "
+                + studentsSkipped + " skipped, " + studentsDrifted + " drifted by " + totalDrift
+                + (examples.isEmpty() ? "" : " " + examples);
+    }
+}
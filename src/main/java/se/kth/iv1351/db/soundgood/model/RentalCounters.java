@@ -0,0 +1,139 @@
+package se.kth.iv1351.db.soundgood.model;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the instruments each student currently rents, so that the rental limit can
+ * be checked without asking the database. The counters are changed atomically per
+ * student, and may be used by several threads at the same time.
+ *
+ * A change is bracketed by {@link #beginChange} before the database is changed and
+ * {@link #endChange} after. A reconciliation against counts read from the database
+ * does not touch a student with a change in progress, or changed after the counts
+ * were read, since the read counts may then be older than the counter.
+ */
+public class RentalCounters {
+
+    private static final int MAX_REPORTED_STUDENTS = 10;
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Creates counters with the specified initial values.
+     *
+     * @param rentalsByStudent The number of rented instruments of each student.
+     */
+    public RentalCounters(Map<String, Integer> rentalsByStudent) {
+        rentalsByStudent.forEach((studentId, rentals) -> counters.put(studentId, new Counter(rentals, 0)));
+    }
+
+    /**
+     * @param studentId The student id.
+     * @return The number of instruments the student rents.
+     */
+    public int get(String studentId) {
+        Counter counter = studentId == null ? null : counters.get(studentId);
+        return counter == null ? 0 : counter.rentals;
+    }
+
+    /**
+     * Tells that the rentals of the student are about to be changed in the database.
+     * Must always be followed by {@link #endChange}.
+     *
+     * @param studentId The student id, or <code>null</code> if not known.
+     */
+    public void beginChange(String studentId) {
+        if (studentId == null) return;
+        counters.compute(studentId, (id, counter) -> {
+            Counter changed = counter == null ? new Counter(0, 0) : counter;
+            changed.pendingChanges++;
+            return changed;
+        });
+    }
+
+    /**
+     * Tells that a change started with {@link #beginChange} is finished.
+     *
+     * @param studentId The student id, or <code>null</code> if not known.
+     * @param delta     The change of the student's number of rented instruments,
+     *                  zero if the change was not performed.
+     */
+    public void endChange(String studentId, int delta) {
+        if (studentId == null) return;
+        counters.computeIfPresent(studentId, (id, counter) -> {
+            counter.rentals = Math.max(0, counter.rentals + delta);
+            counter.pendingChanges--;
+            counter.lastChanged = sequence.incrementAndGet();
+            return counter.rentals == 0 && counter.pendingChanges == 0 ? null : counter;
+        });
+    }
+
+    /**
+     * Returns the sequence number of the latest change. It shall be read before the
+     * counts that are passed to {@link #reconcile} are read from the database.
+     *
+     * @return The sequence number of the latest change.
+     */
+    public long getSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Compares the counters with counts read from the database, and corrects each
+     * counter that differs.
+     *
+     * @param rentalsByStudent The number of rented instruments of each student, as read
+     *                         from the database.
+     * @param readAfter        The sequence number returned by {@link #getSequence} before
+     *                         the counts were read.
+     * @return The differences that were found and corrected.
+     */
+    public RentalCountDrift reconcile(Map<String, Integer> rentalsByStudent, long readAfter) {
+        Set<String> students = new HashSet<>(counters.keySet());
+        students.addAll(rentalsByStudent.keySet());
+
+        List<String> examples = new ArrayList<>();
+        int[] skipped = {0};
+        int[] drifted = {0};
+        int[] totalDrift = {0};
+
+        for (String studentId : students) {
+            int actual = rentalsByStudent.getOrDefault(studentId, 0);
+            counters.compute(studentId, (id, counter) -> {
+                int cached = counter == null ? 0 : counter.rentals;
+                if (counter != null && (counter.pendingChanges > 0 || counter.lastChanged > readAfter)) {
+                    skipped[0]++;
+                    return counter;
+                }
+                if (cached != actual) {
+                    drifted[0]++;
+                    totalDrift[0] += Math.abs(cached - actual);
+                    if (examples.size() < MAX_REPORTED_STUDENTS) {
+                        examples.add(id + ": " + cached + " -> " + actual);
+                    }
+                }
+                return actual == 0 ? null : new Counter(actual, counter == null ? 0 : counter.lastChanged);
+            });
+        }
+
+        return new RentalCountDrift(students.size(), skipped[0], drifted[0], totalDrift[0], examples);
+    }
+
+    private static class Counter {
+        private int rentals;
+        private int pendingChanges;
+        private long lastChanged;
+
+        private Counter(int rentals, long lastChanged) {
+            this.rentals = rentals;
+            this.lastChanged = lastChanged;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package se.kth.iv1351.db.soundgood.model;
+
+import java.sql.Timestamp;
+
+/**
+ * One terminated rental of an instrument, as kept in the rental history.
+ */
+public class RentalHistoryEntry {
+
+    private final String rentalInstrumentId;
+    private final String name;
+    private final String brand;
+    private final String condition;
+    private final double monthlyCost;
+    private final String studentId;
+    private final Timestamp endedAt;
+
+    /**
+     * Creates a new history entry.
+     *
+     * @param rentalInstrumentId The rental id of the instrument.
+     * @param name               The name of the instrument, f.e. guitar.
+     * @param brand              The brand of the instrument.
+     * @param condition          The condition of the instrument when it was rented.
+     * @param monthlyCost        The monthly cost of the rental.
+     * @param studentId          The student who rented the instrument.
+     * @param endedAt            When the rental was terminated, or <code>null</code> if unknown.
+     */
+    public RentalHistoryEntry(String rentalInstrumentId, String name, String brand, String condition,
+                              double monthlyCost, String studentId, Timestamp endedAt) {
+        this.rentalInstrumentId = rentalInstrumentId;
+        this.name = name;
+        this.brand = brand;
+        this.condition = condition;
+        this.monthlyCost = monthlyCost;
+        this.studentId = studentId;
+        this.endedAt = endedAt;
+    }
+
+    public String getRentalInstrumentId() {
+        return rentalInstrumentId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getBrand() {
+        return brand;
+    }
+
+    public String getCondition() {
+        return condition;
+    }
+
+    public double getMonthlyCost() {
+        return monthlyCost;
+    }
+
+    public String getStudentId() {
+        return studentId;
+    }
+
+    public Timestamp getEndedAt() {
+        return endedAt;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder()
+                .append("[").append(rentalInstrumentId).append("] ")
+                .append(name).append(", ")
+                .append(monthlyCost).append("kr per month, brand: ").append(brand)
+                .append(", condition: ").append(condition)
+                .append(" [STUDENT: ").append(studentId)
+                .append("] [ENDED: ").append(endedAt == null ? "unknown" : endedAt).append("]")
+                .toString();
+    }
+}
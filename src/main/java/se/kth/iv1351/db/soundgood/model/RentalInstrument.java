@@ -58,25 +58,43 @@ public class RentalInstrument implements RentalInstrumentDTO {
         return name;
     }
 
+    public String getType() {
+        return type;
+    }
+
     public int getInstrument_id() {return instrument_id;}
 
     public String getBrand() { return brand; }
 
     public String toString() {
 
-        StringBuilder sb = new StringBuilder("");
-
-        if (!isAvailable()) sb.append("[NOT AVAILABLE] ");
+        StringBuilder sb = new StringBuilder();
 
-        sb.append("[" + getId() + "] "
-                + getName() + ", "
-                + getMonthlyCost() + "kr per month, "
-                + "brand: " + getBrand() + ", "
-                + "condition: " + getCondition());
-
-        if (getReturnDate() != null) sb.append(" [RETURN DATE: " + getReturnDate() + "]");
+        appendDescription(this, sb);
 
         return sb.toString();
     }
 
+    /**
+     * Appends the description of an instrument, the same as {@link #toString} of a
+     * <code>RentalInstrument</code>, to a buffer. Listings use this to describe many
+     * instruments without creating a string for each of them.
+     *
+     * @param instrument The instrument to describe.
+     * @param sb         The buffer the description is appended to.
+     */
+    public static void appendDescription(RentalInstrumentDTO instrument, StringBuilder sb) {
+
+        if (!instrument.isAvailable()) sb.append("[NOT AVAILABLE] ");
+
+        sb.append('[').append(instrument.getId()).append("] ")
+                .append(instrument.getName()).append(", ")
+                .append(instrument.getMonthlyCost()).append("kr per month, ")
+                .append("brand: ").append(instrument.getBrand()).append(", ")
+                .append("condition: ").append(instrument.getCondition());
+
+        if (instrument.getReturnDate() != null)
+            sb.append(" [RETURN DATE: ").append(instrument.getReturnDate()).append(']');
+    }
+
 }
@@ -1,5 +1,7 @@
 package se.kth.iv1351.db.soundgood.model;
 
+import java.sql.Timestamp;
+
 public interface RentalInstrumentDTO {
 
     /**
@@ -29,5 +31,15 @@ public interface RentalInstrumentDTO {
 
     String getBrand();
 
+    /**
+     * @return The type of the instrument, f.e. string instrument.
+     */
+    String getType();
+
+    /**
+     * @return The date the rental ends, or <code>null</code> if the instrument is not rented.
+     */
+    Timestamp getReturnDate();
+
 
 }
@@ -0,0 +1,47 @@
+package se.kth.iv1351.db.soundgood.model;
+
+import java.util.List;
+
+/**
+ * One page of rental instruments, ordered by name and rental id. The name and
+ * rental id of the last instrument on the page is the key from which the next
+ * page is read.
+ */
+public class RentalInstrumentPage {
+
+    private final List<? extends RentalInstrumentDTO> instruments;
+    private final boolean hasNextPage;
+
+    /**
+     * Creates a new page.
+     *
+     * @param instruments The instruments on this page.
+     * @param hasNextPage <code>true</code> if there are more instruments after this page.
+     */
+    public RentalInstrumentPage(List<? extends RentalInstrumentDTO> instruments, boolean hasNextPage) {
+        this.instruments = instruments;
+        this.hasNextPage = hasNextPage;
+    }
+
+    public List<? extends RentalInstrumentDTO> getInstruments() {
+        return instruments;
+    }
+
+    public boolean hasNextPage() {
+        return hasNextPage;
+    }
+
+    /**
+     * @return The name of the last instrument on this page, or <code>null</code> if the page is empty.
+     */
+    public String getLastName() {
+        return instruments.isEmpty() ? null : instruments.get(instruments.size() - 1).getName();
+    }
+
+    /**
+     * @return The rental id of the last instrument on this page, or <code>null</code> if the page is empty.
+     */
+    public String getLastId() {
+        return instruments.isEmpty() ? null : instruments.get(instruments.size() - 1).getId();
+    }
+}
@@ -0,0 +1,58 @@
+package se.kth.iv1351.db.soundgood.model;
+
+/**
+ * The result of an attempt to rent an instrument or to terminate a rental,
+ * telling whether the operation was performed or why it was rejected.
+ */
+public enum RentalOutcome {
+
+    /**
+     * The instrument was rented to the student.
+     */
+    RENTED("Instrument rented"),
+
+    /**
+     * The rental was terminated, and the instrument is available again.
+     */
+    TERMINATED("Rental terminated"),
+
+    /**
+     * There is no non-terminated rental instrument with the specified id.
+     */
+    INSTRUMENT_NOT_FOUND("No such rental instrument"),
+
+    /**
+     * The instrument is already rented or otherwise unavailable.
+     */
+    INSTRUMENT_UNAVAILABLE("Instrument is unavailable"),
+
+    /**
+     * The student already rents the maximum number of instruments.
+     */
+    RENTAL_LIMIT_REACHED("Student has rented max capacity"),
+
+    /**
+     * The instrument is not rented, so there is no rental to terminate.
+     */
+    NOT_RENTED("Can't end rental of chosen instrument");
+
+    private final String description;
+
+    RentalOutcome(String description) {
+        this.description = description;
+    }
+
+    /**
+     * @return <code>true</code> if the operation was performed.
+     */
+    public boolean isSuccessful() {
+        return this == RENTED || this == TERMINATED;
+    }
+
+    /**
+     * @return A description of the outcome that can be shown to the user.
+     */
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,40 @@
+package se.kth.iv1351.db.soundgood.model;
+
+import java.util.List;
+
+/**
+ * Everything needed to decide on one rental: the available instruments, the
+ * instruments the student already rents and the instrument the student asks for.
+ */
+public class RentalOverview {
+
+    private final List<? extends RentalInstrumentDTO> availableInstruments;
+    private final List<? extends RentalInstrumentDTO> rentedByStudent;
+    private final RentalInstrumentDTO instrument;
+
+    /**
+     * Creates a new overview.
+     *
+     * @param availableInstruments All available instruments.
+     * @param rentedByStudent      The instruments the student rents.
+     * @param instrument           The requested instrument, or <code>null</code> if there is none.
+     */
+    public RentalOverview(List<? extends RentalInstrumentDTO> availableInstruments,
+                          List<? extends RentalInstrumentDTO> rentedByStudent, RentalInstrumentDTO instrument) {
+        this.availableInstruments = availableInstruments;
+        this.rentedByStudent = rentedByStudent;
+        this.instrument = instrument;
+    }
+
+    public List<? extends RentalInstrumentDTO> getAvailableInstruments() {
+        return availableInstruments;
+    }
+
+    public List<? extends RentalInstrumentDTO> getRentedByStudent() {
+        return rentedByStudent;
+    }
+
+    public RentalInstrumentDTO getInstrument() {
+        return instrument;
+    }
+}
@@ -0,0 +1,32 @@
+package se.kth.iv1351.db.soundgood.model;
+
+import java.util.List;
+
+/**
+ * The rental analytics: the utilization of each instrument type and the revenue of
+ * the latest months.
+ */
+public class RentalReport {
+
+    private final List<TypeUtilization> utilization;
+    private final List<MonthlyRevenue> revenue;
+
+    /**
+     * Creates a new report.
+     *
+     * @param utilization The utilization of each instrument type, ordered by type.
+     * @param revenue     The revenue of the latest months, latest first.
+     */
+    public RentalReport(List<TypeUtilization> utilization, List<MonthlyRevenue> revenue) {
+        this.utilization = utilization;
+        this.revenue = revenue;
+    }
+
+    public List<TypeUtilization> getUtilization() {
+        return utilization;
+    }
+
+    public List<MonthlyRevenue> getRevenue() {
+        return revenue;
+    }
+}
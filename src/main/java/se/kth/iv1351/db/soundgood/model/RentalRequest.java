@@ -0,0 +1,34 @@
+package se.kth.iv1351.db.soundgood.model;
+
+/**
+ * One item of a bulk rent or return, the rental instrument and the student
+ * renting it. The student is <code>null</code> when the item is a return.
+ */
+public class RentalRequest {
+
+    private final String rentalInstrumentId;
+    private final String studentId;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param rentalInstrumentId The rental instrument to rent or return.
+     * @param studentId          The student renting the instrument, or <code>null</code> for a return.
+     */
+    public RentalRequest(String rentalInstrumentId, String studentId) {
+        this.rentalInstrumentId = rentalInstrumentId;
+        this.studentId = studentId;
+    }
+
+    public String getRentalInstrumentId() {
+        return rentalInstrumentId;
+    }
+
+    public String getStudentId() {
+        return studentId;
+    }
+
+    public String toString() {
+        return studentId == null ? "[" + rentalInstrumentId + "]" : "[" + rentalInstrumentId + "] " + studentId;
+    }
+}
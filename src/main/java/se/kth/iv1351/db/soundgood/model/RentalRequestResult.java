@@ -0,0 +1,60 @@
+package se.kth.iv1351.db.soundgood.model;
+
+/**
+ * The result of one item of a bulk rent or return. Either the item was handled,
+ * and the outcome tells whether it was performed, or it failed because of an
+ * error, in which case the outcome is <code>null</code>.
+ */
+public class RentalRequestResult {
+
+    private final RentalRequest request;
+    private final RentalOutcome outcome;
+    private final String error;
+
+    private RentalRequestResult(RentalRequest request, RentalOutcome outcome, String error) {
+        this.request = request;
+        this.outcome = outcome;
+        this.error = error;
+    }
+
+    /**
+     * @param request The handled item.
+     * @param outcome Whether the item was performed, or why not.
+     * @return The result of an item that was handled.
+     */
+    public static RentalRequestResult handled(RentalRequest request, RentalOutcome outcome) {
+        return new RentalRequestResult(request, outcome, null);
+    }
+
+    /**
+     * @param request The failed item.
+     * @param error   Why the item could not be handled.
+     * @return The result of an item that failed because of an error.
+     */
+    public static RentalRequestResult failed(RentalRequest request, String error) {
+        return new RentalRequestResult(request, null, error);
+    }
+
+    public RentalRequest getRequest() {
+        return request;
+    }
+
+    public RentalOutcome getOutcome() {
+        return outcome;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return <code>true</code> if the item was rented or returned.
+     */
+    public boolean isSuccessful() {
+        return outcome != null && outcome.isSuccessful();
+    }
+
+    public String toString() {
+        return request + ": " + (outcome != null ? outcome.getDescription() : "failed, " + error);
+    }
+}
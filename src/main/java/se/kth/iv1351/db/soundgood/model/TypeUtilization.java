@@ -0,0 +1,56 @@
+package se.kth.iv1351.db.soundgood.model;
+
+/**
+ * How many of the instruments of one type are rented, and what they are rented for.
+ */
+public class TypeUtilization {
+
+    private final String instrumentType;
+    private final int instruments;
+    private final int rented;
+    private final double monthlyRevenue;
+
+    /**
+     * Creates a new utilization.
+     *
+     * @param instrumentType The instrument type, f.e. string.
+     * @param instruments    The number of non-terminated rental instruments of the type.
+     * @param rented         The number of those that are rented.
+     * @param monthlyRevenue The sum of the monthly cost of the rented instruments.
+     */
+    public TypeUtilization(String instrumentType, int instruments, int rented, double monthlyRevenue) {
+        this.instrumentType = instrumentType;
+        this.instruments = instruments;
+        this.rented = rented;
+        this.monthlyRevenue = monthlyRevenue;
+    }
+
+    public String getInstrumentType() {
+        return instrumentType;
+    }
+
+    public int getInstruments() {
+        return instruments;
+    }
+
+    public int getRented() {
+        return rented;
+    }
+
+    public double getMonthlyRevenue() {
+        return monthlyRevenue;
+    }
+
+    /**
+     * @return The share of the instruments that are rented, from 0 to 1.
+     */
+    public double getUtilization() {
+        return instruments == 0 ? 0 : (double) rented / instruments;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d of %d rented (%.1f%%), %.2fkr per month",
+                instrumentType, rented, instruments, getUtilization() * 100, monthlyRevenue);
+    }
+}
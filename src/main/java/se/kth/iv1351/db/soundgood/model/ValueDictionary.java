@@ -0,0 +1,97 @@
+package se.kth.iv1351.db.soundgood.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A shared dictionary of the values of one column with a small vocabulary, f.e.
+ * instrument names or conditions. Each distinct value is stored once, and every
+ * instrument refers to that one instance, so that many instruments take no more
+ * memory for the value than one, and equal values are the same object. Each value
+ * also gets a small int code.
+ *
+ * The dictionaries may be used by several threads at the same time. A dictionary
+ * stops adding values when it is full, later values are then used as they are.
+ */
+public class ValueDictionary {
+
+    /**
+     * The largest number of values in one dictionary, set with the system property
+     * <code>soundgood.dictionary.maxSize</code>.
+     */
+    public static final int MAX_SIZE = Integer.getInteger("soundgood.dictionary.maxSize", 4096);
+
+    public static final ValueDictionary INSTRUMENT_NAMES = new ValueDictionary();
+    public static final ValueDictionary INSTRUMENT_TYPES = new ValueDictionary();
+    public static final ValueDictionary BRANDS = new ValueDictionary();
+    public static final ValueDictionary CONDITIONS = new ValueDictionary();
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final List<String> valuesByCode = new ArrayList<>();
+
+    private ValueDictionary() {
+    }
+
+    /**
+     * Returns the shared instance equal to the specified value, adding the value to
+     * the dictionary if it is new and the dictionary is not full.
+     *
+     * @param value The value to look up, may be <code>null</code>.
+     * @return The shared instance, or the value itself if the dictionary is full.
+     */
+    public String canonical(String value) {
+        if (value == null) {
+            return null;
+        }
+        Entry entry = entries.get(value);
+        if (entry == null) {
+            entry = add(value);
+        }
+        return entry == null ? value : entry.value;
+    }
+
+    /**
+     * @param value The value to look up.
+     * @return The code of the value, or -1 if the value is not in the dictionary.
+     */
+    public int codeOf(String value) {
+        Entry entry = value == null ? null : entries.get(value);
+        return entry == null ? -1 : entry.code;
+    }
+
+    /**
+     * @param code A code returned by {@link #codeOf}.
+     * @return The value with the specified code.
+     */
+    public synchronized String valueOf(int code) {
+        return valuesByCode.get(code);
+    }
+
+    /**
+     * @return The number of values in the dictionary.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private synchronized Entry add(String value) {
+        Entry entry = entries.get(value);
+        if (entry == null && valuesByCode.size() < MAX_SIZE) {
+            entry = new Entry(value, valuesByCode.size());
+            valuesByCode.add(value);
+            entries.put(value, entry);
+        }
+        return entry;
+    }
+
+    private static class Entry {
+        private final String value;
+        private final int code;
+
+        private Entry(String value, int code) {
+            this.value = value;
+            this.code = code;
+        }
+    }
+}
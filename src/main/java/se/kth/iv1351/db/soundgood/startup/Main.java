@@ -1,22 +1,75 @@
 package se.kth.iv1351.db.soundgood.startup;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 import se.kth.iv1351.db.soundgood.controller.Controller;
 import se.kth.iv1351.db.soundgood.integration.SoundgoodDBEException;
 import se.kth.iv1351.db.soundgood.view.BlockingInterpreter;
+import se.kth.iv1351.db.soundgood.view.LineProtocolServer;
+import se.kth.iv1351.db.soundgood.view.ScriptRunner;
 
 /**
  * Starts the Soundgood Music School rental client.
  */
 public class Main {
+    private static final String SERVER_FLAG = "--server";
+    private static final int DEFAULT_SERVER_PORT = 7351;
+    private static final String SCRIPT_FLAG = "--script";
+    private static final String STDIN_SCRIPT = "-";
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
     /**
-     * @param args There are no command line arguments.
+     * @param args Without arguments, the client reads commands from the console.
+     *             <code>--server [port]</code> instead starts a server that accepts
+     *             the same commands from clients connecting to the specified
+     *             localhost port. <code>--script file|- [parallelism]</code> performs
+     *             the commands of a file, or of standard input, without prompts and
+     *             exits with status 1 if any command failed.
      */
     public static void main(String[] args) {
+        boolean failed = false;
         try {
-            new BlockingInterpreter(new Controller()).handleCmds();
+            Controller controller = new Controller();
+            try {
+                if (args.length > 0 && SERVER_FLAG.equals(args[0])) {
+                    int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SERVER_PORT;
+                    new LineProtocolServer(controller, port).serve();
+                } else if (args.length > 1 && SCRIPT_FLAG.equals(args[0])) {
+                    int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+                    failed = runScript(controller, args[1], parallelism) > 0;
+                } else {
+                    new BlockingInterpreter(controller).handleCmds();
+                }
+            } finally {
+                controller.close();
+            }
         } catch (SoundgoodDBEException bdbe) {
             System.out.println("Could not connect to Soundgood database.");
             bdbe.printStackTrace();
+        } catch (IOException ioe) {
+            System.out.println("Could not start the server or read the script.");
+            ioe.printStackTrace();
+        }
+        if (failed) System.exit(1);
+    }
+
+    private static long runScript(Controller controller, String scriptName, int parallelism) throws IOException {
+        PrintStream out = new PrintStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), OUTPUT_BUFFER_SIZE), false);
+        try (BufferedReader script = STDIN_SCRIPT.equals(scriptName)
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : Files.newBufferedReader(Path.of(scriptName))) {
+            return new ScriptRunner(controller, out, parallelism).run(script);
+        } finally {
+            out.flush();
         }
     }
 }
@@ -1,11 +1,35 @@
 package se.kth.iv1351.db.soundgood.view;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Scanner;
 
 import se.kth.iv1351.db.soundgood.controller.Controller;
+import se.kth.iv1351.db.soundgood.integration.PoolUsage;
+import se.kth.iv1351.db.soundgood.integration.StatementStatistics;
+import se.kth.iv1351.db.soundgood.integration.WriteMode;
+import se.kth.iv1351.db.soundgood.model.CatalogFilter;
+import se.kth.iv1351.db.soundgood.model.ClaimPreference;
+import se.kth.iv1351.db.soundgood.model.InstrumentClaim;
+import se.kth.iv1351.db.soundgood.model.MonthlyRevenue;
+import se.kth.iv1351.db.soundgood.model.OverdueScan;
+import se.kth.iv1351.db.soundgood.model.RentalCountDrift;
+import se.kth.iv1351.db.soundgood.model.RentalHistoryEntry;
 import se.kth.iv1351.db.soundgood.model.RentalInstrumentDTO;
+import se.kth.iv1351.db.soundgood.model.RentalInstrumentException;
+import se.kth.iv1351.db.soundgood.model.RentalInstrumentPage;
+import se.kth.iv1351.db.soundgood.model.RentalOutcome;
+import se.kth.iv1351.db.soundgood.model.RentalReport;
+import se.kth.iv1351.db.soundgood.model.RentalRequest;
+import se.kth.iv1351.db.soundgood.model.RentalRequestResult;
+import se.kth.iv1351.db.soundgood.model.TypeUtilization;
 
 /**
  * Reads and interprets user commands. This command interpreter is blocking, the user
@@ -13,17 +37,98 @@ import se.kth.iv1351.db.soundgood.model.RentalInstrumentDTO;
  */
 public class BlockingInterpreter {
     private static final String PROMPT = "> ";
-    private final Scanner console = new Scanner(System.in);
+    private static final String PAGE_OPTION = "page";
+    private static final String NEXT_OPTION = "next";
+    private static final String STREAM_OPTION = "stream";
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final String BATCH_RENT = "rent";
+    private static final String BATCH_END = "end";
+    private static final String SINGLE_OPTION = "single";
+    private static final String RESET_OPTION = "reset";
+    private static final String CHEAPEST_OPTION = "cheapest";
+    private static final String AVAILABLE_OPTION = "available";
+    private static final String MIN_OPTION = "min";
+    private static final String MAX_OPTION = "max";
+    private static final String CONDITION_OPTION = "condition";
+    private static final String FORMAT_OPTION = "format";
+    private static final String SCAN_OPTION = "scan";
+    private static final String INSTRUMENT_OPTION = "instrument";
+    private static final String ARCHIVE_OPTION = "archive";
+    private static final String LIMIT_OPTION = "limit";
+    private static final int DEFAULT_SEARCH_LIMIT = 20;
+    private static final String MONTHS_OPTION = "months";
+    private static final String RECOMPUTE_OPTION = "recompute";
+    private static final int DEFAULT_REPORT_MONTHS = 12;
+    private final Scanner console;
+    private final PrintStream out;
+    private final boolean interactive;
+    private final boolean readsFiles;
+    private final InstrumentRenderer renderer;
     private Controller controller;
     private boolean keepReceivingCmds = false;
 
+    private RentalInstrumentPage currentPage;
+    private String pagedInstrumentName;
+    private boolean pagedAvailableOnly;
+    private int pagedPageSize;
+    private InstrumentRenderer.Format pagedFormat;
+
     /**
      * Creates a new instance that will use the specified controller for all operations.
      *
      * @param ctrl The controller used by this instance.
      */
     public BlockingInterpreter(Controller ctrl) {
+        this(ctrl, System.in, System.out);
+    }
+
+    /**
+     * Creates a new instance that reads commands typed by a user from the specified
+     * input, and prints all output to the specified stream.
+     *
+     * @param ctrl The controller used by this instance.
+     * @param in   The stream commands are read from.
+     * @param out  The stream all output is printed to.
+     */
+    public BlockingInterpreter(Controller ctrl, InputStream in, PrintStream out) {
+        this(ctrl, in, out, true);
+    }
+
+    /**
+     * Creates a new instance that prints all output to the specified stream, in the
+     * default charset, and that may read the item files of the BATCH command.
+     *
+     * @param ctrl        The controller used by this instance.
+     * @param in          The stream commands are read from by {@link #handleCmds}.
+     * @param out         The stream all output is printed to.
+     * @param interactive <code>false</code> if the commands are not typed by a user, a
+     *                    failed command then prints its error message but no stack trace.
+     */
+    BlockingInterpreter(Controller ctrl, InputStream in, PrintStream out, boolean interactive) {
+        this(ctrl, in, out, Charset.defaultCharset(), interactive, true);
+    }
+
+    /**
+     * Creates a new instance that prints all output to the specified stream.
+     *
+     * @param ctrl        The controller used by this instance.
+     * @param in          The stream commands are read from by {@link #handleCmds}.
+     * @param out         The stream all output is printed to.
+     * @param charset     The charset of the output stream.
+     * @param interactive <code>false</code> if the commands are not typed by a user, a
+     *                    failed command then prints its error message but no stack trace.
+     * @param readsFiles  <code>false</code> if the commands come from someone who may
+     *                    not read the files of this process, f.e. a network client.
+     *                    The BATCH command is then refused.
+     */
+    BlockingInterpreter(Controller ctrl, InputStream in, PrintStream out, Charset charset,
+                        boolean interactive, boolean readsFiles) {
         this.controller = ctrl;
+        this.console = new Scanner(in);
+        this.out = out;
+        this.renderer = new InstrumentRenderer(out, charset);
+        this.interactive = interactive;
+        this.readsFiles = readsFiles;
     }
 
     /**
@@ -36,131 +141,583 @@ public class BlockingInterpreter {
     /**
      * Interprets and performs user commands. This method will not return until the
      * UI has been stopped. The UI is stopped when the user gives the
-     * "quit" command.
+     * "quit" command, or when the input stream ends.
      */
     public void handleCmds() {
 
         keepReceivingCmds = true;
 
+        while (keepReceivingCmds) {
+            execute(new CmdLine(readNextLine()));
+        }
+    }
+
+    /**
+     * Performs one command.
+     *
+     * @param cmdLine The command to perform.
+     * @return <code>false</code> if the command is illegal or failed.
+     */
+    boolean execute(CmdLine cmdLine) {
 
-        List<? extends RentalInstrumentDTO> instrumentsToPrint;
         RentalInstrumentDTO instrumentToFind = null;
-        String instrumentName = "";
         String instrumentId = "";
         String studentId = "";
 
-        while (keepReceivingCmds) {
-            try {
-                CmdLine cmdLine = new CmdLine(readNextLine());
-                switch (cmdLine.getCmd()) {
-
-                    case HELP:
-                        for (Command command : Command.values()) {
-                            if (command == Command.ILLEGAL_COMMAND) {
-                                continue;
-                            }
-                            System.out.println(command.toString().toLowerCase());
+        try {
+            switch (cmdLine.getCmd()) {
+
+                case HELP:
+                    for (Command command : Command.values()) {
+                        if (command == Command.ILLEGAL_COMMAND) {
+                            continue;
                         }
-                        break;
+                        out.println(command.toString().toLowerCase());
+                    }
+                    break;
+
+                case LIST:
 
-                    case LIST:
+                    listInstruments(cmdLine, false);
 
-                        instrumentName = cmdLine.getParameter(0);
+                    break;
 
-                        if (!Objects.equals(instrumentName, ""))
-                            instrumentsToPrint = controller.getAllRentalInstrumentsByName(instrumentName);
-                        else instrumentsToPrint = controller.getAllRentalInstruments();
+                case AVAILABLE:
 
-                        checkForNoResult(instrumentsToPrint, instrumentName);
+                    listInstruments(cmdLine, true);
 
-                        // Print the result
-                        for (RentalInstrumentDTO instrument : instrumentsToPrint)
-                            System.out.println(instrument);
+                    break;
 
-                        resetObject(instrumentsToPrint);
-                        resetString(instrumentName);
+                case RENT:
 
-                        break;
+                    instrumentId = cmdLine.getParameter(0);
+                    studentId = cmdLine.getParameter(1);
 
+                    out.println("Trying to rent: ");
+                    printInstrument(controller.getRentalInstrument(instrumentId));
 
+                    RentalOutcome outcome = controller.rentInstrumentToStudent(instrumentId, studentId);
 
-                    case AVAILABLE:
+                    out.println(outcome.getDescription());
+                    if (outcome.isSuccessful()) {
+                        out.println("New status: ");
+                        printInstrument(controller.getRentalInstrument(instrumentId));
+                    }
 
-                        instrumentName = cmdLine.getParameter(0);
+                    resetStrings(instrumentId, studentId);
 
-                        if (!Objects.equals(instrumentName, ""))
-                            instrumentsToPrint = controller.getAllAvailableRentalInstrumentsByName(instrumentName);
-                        else instrumentsToPrint = controller.getAllAvailableRentalInstruments();
+                    break;
 
-                        checkForNoResult(instrumentsToPrint, instrumentName);
+                case FILTER:
 
-                        // Print the result
-                        for (RentalInstrumentDTO instrument : instrumentsToPrint)
-                            System.out.println(instrument);
+                    filterInstruments(cmdLine);
 
-                        resetObject(instrumentsToPrint);
-                        resetString(instrumentName);
+                    break;
 
-                        break;
+                case SEARCH:
 
-                    case RENT:
+                    searchInstruments(cmdLine);
 
-                        instrumentId = cmdLine.getParameter(0);
-                        studentId = cmdLine.getParameter(1);
+                    break;
 
-                        System.out.println("Trying to rent: ");
-                        printInstrument(controller.getRentalInstrument(instrumentId));
+                case RENTANY:
 
-                        controller.rentInstrumentToStudent(instrumentId, studentId);
+                    rentAnyInstrument(cmdLine);
 
-                        System.out.println("New status: ");
-                        printInstrument(controller.getRentalInstrument(instrumentId));
+                    break;
 
-                        resetStrings(instrumentId, studentId);
+                case FIND:
 
-                        break;
+                    instrumentId = cmdLine.getParameter(0);
+                    instrumentToFind = controller.getRentalInstrument(instrumentId);
 
-                    case FIND:
+                    printInstrument(instrumentToFind);
 
-                        instrumentId = cmdLine.getParameter(0);
-                        instrumentToFind = controller.getRentalInstrument(instrumentId);
+                    resetObject(instrumentToFind);
+                    resetString(instrumentId);
 
-                        printInstrument(instrumentToFind);
+                    break;
 
-                        resetObject(instrumentToFind);
-                        resetString(instrumentId);
+                case END:
 
-                        break;
+                    instrumentId = cmdLine.getParameter(0);
 
-                    case END:
+                    out.println("Trying to terminate rental: ");
+                    printInstrument(controller.getRentalInstrument(instrumentId));
 
-                        instrumentId = cmdLine.getParameter(0);
+                    RentalOutcome terminationOutcome = controller.terminateRental(instrumentId);
 
-                        System.out.println("Trying to terminate rental: ");
+                    out.println(terminationOutcome.getDescription());
+                    if (terminationOutcome.isSuccessful()) {
+                        out.println("New status: ");
                         printInstrument(controller.getRentalInstrument(instrumentId));
+                    }
 
-                        controller.terminateRental(instrumentId);
+                    break;
 
-                        System.out.println("New status: ");
-                        printInstrument(controller.getRentalInstrument(instrumentId));
+                case BATCH:
+
+                    runBatch(cmdLine);
+
+                    break;
+
+                case STATS:
+
+                    if (RESET_OPTION.equalsIgnoreCase(cmdLine.getParameter(0))) {
+                        controller.resetStatementStatistics();
+                        out.println("Statistics cleared");
+                    } else {
+                        printStatistics();
+                    }
+
+                    break;
+
+                case OVERDUE:
+
+                    listOverdueRentals(cmdLine);
+
+                    break;
+
+                case HISTORY:
+
+                    listRentalHistory(cmdLine);
+
+                    break;
+
+                case REPORT:
+
+                    printRentalReport(cmdLine);
 
-                        break;
+                    break;
 
-                    case QUIT:
-                        keepReceivingCmds = false;
-                        break;
+                case QUIT:
+                    keepReceivingCmds = false;
+                    break;
 
-                    default:
-                        System.out.println("illegal command");
-                }
-            } catch (Exception e) {
-                System.out.println("Operation failed");
-                System.out.println(e.getMessage());
-                e.printStackTrace();
+                default:
+                    out.println("illegal command");
+                    return false;
             }
+            return true;
+        } catch (Exception e) {
+            out.println("Operation failed");
+            out.println(e.getMessage());
+            if (interactive) e.printStackTrace(out);
+            return false;
         }
     }
 
+    /**
+     * Lists instruments for the LIST and AVAILABLE commands. Without options, the whole
+     * listing is printed. The options are:
+     * <code>page [size]</code>, prints the first page of the listing,
+     * <code>next</code>, prints the page after the one printed last and
+     * <code>stream [fetch size]</code>, prints the listing while reading it through a cursor and
+     * <code>format text|table|csv|json</code>, prints the listing in the specified format.
+     */
+    private void listInstruments(CmdLine cmdLine, boolean availableOnly) throws RentalInstrumentException {
+
+        if (NEXT_OPTION.equalsIgnoreCase(cmdLine.getParameter(0))) {
+            printNextPage();
+            return;
+        }
+
+        String instrumentName = "";
+        int pageSize = 0;
+        int fetchSize = 0;
+        InstrumentRenderer.Format format = InstrumentRenderer.Format.TEXT;
+
+        for (int i = 0; cmdLine.getParameter(i) != null; i++) {
+            String parameter = cmdLine.getParameter(i);
+
+            if (FORMAT_OPTION.equalsIgnoreCase(parameter)) {
+                format = readFormat(cmdLine.getParameter(++i));
+                if (format == null) return;
+            } else if (PAGE_OPTION.equalsIgnoreCase(parameter)) {
+                pageSize = DEFAULT_PAGE_SIZE;
+                if (isNumber(cmdLine.getParameter(i + 1))) pageSize = Integer.parseInt(cmdLine.getParameter(++i));
+            } else if (STREAM_OPTION.equalsIgnoreCase(parameter)) {
+                fetchSize = Controller.DEFAULT_FETCH_SIZE;
+                if (isNumber(cmdLine.getParameter(i + 1))) fetchSize = Integer.parseInt(cmdLine.getParameter(++i));
+            } else if (Objects.equals(instrumentName, "")) {
+                instrumentName = parameter;
+            }
+        }
+
+        String nameFilter = Objects.equals(instrumentName, "") ? null : instrumentName;
+
+        if (pageSize > 0) {
+            pagedInstrumentName = nameFilter;
+            pagedAvailableOnly = availableOnly;
+            pagedPageSize = pageSize;
+            pagedFormat = format;
+            currentPage = null;
+            printNextPage();
+            return;
+        }
+
+        if (fetchSize > 0) {
+            int streamed;
+            renderer.begin(format);
+            try {
+                controller.streamRentalInstruments(nameFilter, availableOnly, fetchSize, renderer::render);
+            } finally {
+                streamed = renderer.finish();
+            }
+            if (streamed == 0) checkForNoResult(List.of(), instrumentName);
+            return;
+        }
+
+        List<? extends RentalInstrumentDTO> instrumentsToPrint;
+
+        if (nameFilter == null) {
+            instrumentsToPrint = availableOnly
+                    ? controller.getAllAvailableRentalInstruments()
+                    : controller.getAllRentalInstruments();
+        } else {
+            instrumentsToPrint = availableOnly
+                    ? controller.getAllAvailableRentalInstrumentsByName(instrumentName)
+                    : controller.getAllRentalInstrumentsByName(instrumentName);
+        }
+
+        checkForNoResult(instrumentsToPrint, instrumentName);
+
+        printInstruments(instrumentsToPrint, format);
+    }
+
+    private void printNextPage() throws RentalInstrumentException {
+
+        if (pagedPageSize == 0 || (currentPage != null && !currentPage.hasNextPage())) {
+            out.println("No more pages, start a new listing with the page option");
+            return;
+        }
+
+        currentPage = controller.getRentalInstrumentPage(
+                pagedInstrumentName, pagedAvailableOnly, currentPage, pagedPageSize);
+
+        checkForNoResult(currentPage.getInstruments(), pagedInstrumentName == null ? "" : pagedInstrumentName);
+
+        printInstruments(currentPage.getInstruments(), pagedFormat);
+
+        if (currentPage.hasNextPage()) out.println("-- more instruments, use the next option to continue --");
+    }
+
+    /**
+     * Performs the FILTER command,
+     * <code>filter [instrument] [available] [min kr] [max kr] [condition c] [format f]</code>.
+     */
+    private void filterInstruments(CmdLine cmdLine) throws RentalInstrumentException {
+
+        String instrumentName = null;
+        boolean availableOnly = false;
+        Double minMonthlyCost = null;
+        Double maxMonthlyCost = null;
+        String condition = null;
+        InstrumentRenderer.Format format = InstrumentRenderer.Format.TEXT;
+
+        for (int i = 0; cmdLine.getParameter(i) != null; i++) {
+            String parameter = cmdLine.getParameter(i);
+
+            if (AVAILABLE_OPTION.equalsIgnoreCase(parameter)) {
+                availableOnly = true;
+            } else if (MIN_OPTION.equalsIgnoreCase(parameter) && cmdLine.getParameter(i + 1) != null) {
+                minMonthlyCost = Double.parseDouble(cmdLine.getParameter(++i));
+            } else if (MAX_OPTION.equalsIgnoreCase(parameter) && cmdLine.getParameter(i + 1) != null) {
+                maxMonthlyCost = Double.parseDouble(cmdLine.getParameter(++i));
+            } else if (CONDITION_OPTION.equalsIgnoreCase(parameter) && cmdLine.getParameter(i + 1) != null) {
+                condition = cmdLine.getParameter(++i);
+            } else if (FORMAT_OPTION.equalsIgnoreCase(parameter)) {
+                format = readFormat(cmdLine.getParameter(++i));
+                if (format == null) return;
+            } else if (instrumentName == null) {
+                instrumentName = parameter;
+            }
+        }
+
+        List<? extends RentalInstrumentDTO> instrumentsToPrint = controller.filterRentalInstruments(
+                new CatalogFilter(instrumentName, availableOnly, minMonthlyCost, maxMonthlyCost, condition));
+
+        checkForNoResult(instrumentsToPrint, instrumentName == null ? "" : instrumentName);
+
+        printInstruments(instrumentsToPrint, format);
+    }
+
+    /**
+     * Performs the SEARCH command,
+     * <code>search words... [available] [limit n] [format f]</code>.
+     */
+    private void searchInstruments(CmdLine cmdLine) throws RentalInstrumentException {
+
+        StringBuilder query = new StringBuilder();
+        boolean availableOnly = false;
+        int limit = DEFAULT_SEARCH_LIMIT;
+        InstrumentRenderer.Format format = InstrumentRenderer.Format.TEXT;
+
+        for (int i = 0; cmdLine.getParameter(i) != null; i++) {
+            String parameter = cmdLine.getParameter(i);
+
+            if (AVAILABLE_OPTION.equalsIgnoreCase(parameter)) {
+                availableOnly = true;
+            } else if (LIMIT_OPTION.equalsIgnoreCase(parameter) && isNumber(cmdLine.getParameter(i + 1))) {
+                limit = Integer.parseInt(cmdLine.getParameter(++i));
+            } else if (FORMAT_OPTION.equalsIgnoreCase(parameter)) {
+                format = readFormat(cmdLine.getParameter(++i));
+                if (format == null) return;
+            } else {
+                query.append(parameter).append(' ');
+            }
+        }
+
+        List<? extends RentalInstrumentDTO> instrumentsToPrint =
+                controller.searchRentalInstruments(query.toString(), availableOnly, limit);
+
+        checkForNoResult(instrumentsToPrint, query.toString().trim());
+
+        printInstruments(instrumentsToPrint, format);
+    }
+
+    /**
+     * Performs the RENTANY command, <code>rentany instrument student [cheapest|condition]</code>.
+     * Without an option, the available instrument with the lowest rental id is rented.
+     */
+    private void rentAnyInstrument(CmdLine cmdLine) throws RentalInstrumentException {
+
+        String instrumentName = cmdLine.getParameter(0);
+        String studentId = cmdLine.getParameter(1);
+        String option = cmdLine.getParameter(2);
+
+        ClaimPreference preference = ClaimPreference.FIRST;
+        if (CHEAPEST_OPTION.equalsIgnoreCase(option)) preference = ClaimPreference.CHEAPEST;
+        else if (CONDITION_OPTION.equalsIgnoreCase(option)) preference = ClaimPreference.BEST_CONDITION;
+
+        InstrumentClaim claim = controller.rentAnyInstrument(instrumentName, studentId, preference);
+
+        if (claim.getOutcome() == RentalOutcome.INSTRUMENT_UNAVAILABLE) {
+            out.println("No " + instrumentName + " available");
+            return;
+        }
+
+        out.println(claim.getOutcome().getDescription());
+        if (claim.isSuccessful()) {
+            out.println("New status: ");
+            printInstrument(controller.getRentalInstrument(claim.getRentalInstrumentId()));
+        }
+    }
+
+    /**
+     * Performs the BATCH command, <code>batch rent|end file [single]</code>. Each line of
+     * the file is one item, <code>rentalInstrumentId studentId</code> for rent and
+     * <code>rentalInstrumentId</code> for end. With the single option, the items are
+     * performed one at a time, as with RENT and END, which makes it possible to compare
+     * the throughput of the two. Sessions that may not read files, such as those of
+     * network clients, can't perform the command.
+     */
+    private void runBatch(CmdLine cmdLine) throws IOException, RentalInstrumentException {
+
+        String operation = cmdLine.getParameter(0);
+        String fileName = cmdLine.getParameter(1);
+        boolean renting = BATCH_RENT.equalsIgnoreCase(operation);
+
+        if ((!renting && !BATCH_END.equalsIgnoreCase(operation)) || fileName == null) {
+            out.println("Usage: batch rent|end <file> [single]");
+            return;
+        }
+        if (!readsFiles) {
+            out.println("Batch files can't be read in this session");
+            return;
+        }
+
+        List<RentalRequest> requests = new ArrayList<>();
+        for (String line : Files.readAllLines(Path.of(fileName))) {
+            String[] item = line.trim().split("\\s+");
+            if (item[0].isEmpty()) continue;
+            requests.add(new RentalRequest(item[0], item.length > 1 ? item[1] : null));
+        }
+
+        boolean singleItemPath = SINGLE_OPTION.equalsIgnoreCase(cmdLine.getParameter(2));
+        long startTime = System.nanoTime();
+        List<RentalRequestResult> results = new ArrayList<>(requests.size());
+
+        if (singleItemPath) {
+            for (RentalRequest request : requests) {
+                RentalOutcome outcome = renting
+                        ? controller.rentInstrumentToStudent(request.getRentalInstrumentId(), request.getStudentId())
+                        : controller.terminateRental(request.getRentalInstrumentId());
+                results.add(RentalRequestResult.handled(request, outcome));
+            }
+        } else if (renting) {
+            results = controller.rentInstruments(requests);
+        } else {
+            List<String> rentalInstrumentIds = new ArrayList<>(requests.size());
+            for (RentalRequest request : requests) rentalInstrumentIds.add(request.getRentalInstrumentId());
+            results = controller.terminateRentals(rentalInstrumentIds);
+        }
+
+        long elapsedNanos = System.nanoTime() - startTime;
+        int successful = 0;
+
+        for (RentalRequestResult result : results) {
+            if (result.isSuccessful()) successful++;
+            out.println(result);
+        }
+
+        double elapsedMillis = elapsedNanos / 1_000_000.0;
+        double itemsPerSecond = results.isEmpty() ? 0 : results.size() / (elapsedNanos / 1_000_000_000.0);
+        out.printf("%d of %d items succeeded in %.1f ms, %.0f items per second (%s path)%n",
+                successful, results.size(), elapsedMillis, itemsPerSecond, singleItemPath ? "single-item" : "batch");
+    }
+
+    /**
+     * Performs the OVERDUE command, <code>overdue [scan] [format f]</code>. With the scan
+     * option, the rentals that have become overdue since the previous scan are first
+     * searched for and appended to the overdue report.
+     */
+    private void listOverdueRentals(CmdLine cmdLine) throws RentalInstrumentException {
+
+        boolean scanFirst = false;
+        InstrumentRenderer.Format format = InstrumentRenderer.Format.TEXT;
+
+        for (int i = 0; cmdLine.getParameter(i) != null; i++) {
+            String parameter = cmdLine.getParameter(i);
+
+            if (SCAN_OPTION.equalsIgnoreCase(parameter)) {
+                scanFirst = true;
+            } else if (FORMAT_OPTION.equalsIgnoreCase(parameter)) {
+                format = readFormat(cmdLine.getParameter(++i));
+                if (format == null) return;
+            }
+        }
+
+        if (scanFirst) {
+            out.println("Overdue report " + Controller.OVERDUE_REPORT_FILE + ", "
+                    + controller.scanOverdueRentals());
+        }
+
+        List<? extends RentalInstrumentDTO> overdue = controller.getOverdueRentals();
+        if (overdue.isEmpty()) {
+            out.println("No overdue rentals");
+        } else {
+            printInstruments(overdue, format);
+        }
+    }
+
+    /**
+     * Performs the HISTORY command, <code>history student</code>,
+     * <code>history instrument rentalInstrumentId</code> or <code>history archive</code>.
+     */
+    private void listRentalHistory(CmdLine cmdLine) throws RentalInstrumentException {
+
+        String option = cmdLine.getParameter(0);
+
+        if (ARCHIVE_OPTION.equalsIgnoreCase(option)) {
+            out.println(controller.archiveTerminatedRentals() + " terminated rentals moved to the history");
+            return;
+        }
+
+        List<RentalHistoryEntry> history;
+        if (INSTRUMENT_OPTION.equalsIgnoreCase(option) && cmdLine.getParameter(1) != null) {
+            history = controller.getRentalHistoryOfInstrument(cmdLine.getParameter(1));
+        } else if (option != null && !INSTRUMENT_OPTION.equalsIgnoreCase(option)) {
+            history = controller.getRentalHistoryOfStudent(option);
+        } else {
+            out.println("Usage: history <student>|instrument <rental id>|archive");
+            return;
+        }
+
+        if (history.isEmpty()) {
+            out.println("No terminated rentals");
+        }
+        for (RentalHistoryEntry entry : history) {
+            out.println(entry);
+        }
+    }
+
+    /**
+     * Performs the REPORT command, <code>report [months n]</code> or <code>report recompute</code>.
+     */
+    private void printRentalReport(CmdLine cmdLine) throws RentalInstrumentException {
+
+        int months = DEFAULT_REPORT_MONTHS;
+
+        for (int i = 0; cmdLine.getParameter(i) != null; i++) {
+            String parameter = cmdLine.getParameter(i);
+
+            if (RECOMPUTE_OPTION.equalsIgnoreCase(parameter)) {
+                controller.recomputeRentalUtilization();
+                out.println("Utilization recomputed from the rentals");
+            } else if (MONTHS_OPTION.equalsIgnoreCase(parameter) && isNumber(cmdLine.getParameter(i + 1))) {
+                months = Integer.parseInt(cmdLine.getParameter(++i));
+            }
+        }
+
+        RentalReport report = controller.getRentalReport(months);
+
+        out.println("Utilization per instrument type:");
+        for (TypeUtilization utilization : report.getUtilization()) {
+            out.println("  " + utilization);
+        }
+        out.println("Revenue of rentals started per month:");
+        if (report.getRevenue().isEmpty()) {
+            out.println("  No rentals");
+        }
+        for (MonthlyRevenue revenue : report.getRevenue()) {
+            out.println("  " + revenue);
+        }
+    }
+
+    private void printStatistics() {
+
+        out.printf("%-42s %8s %6s %10s %10s %10s %10s%n",
+                "operation", "count", "errors", "rows", "p50 us", "p99 us", "max us");
+
+        for (StatementStatistics statistics : controller.getStatementStatistics()) {
+            if (statistics.getCount() == 0) continue;
+            out.printf("%-42s %8d %6d %10d %10.1f %10.1f %10.1f%n",
+                    statistics.getOperation(), statistics.getCount(), statistics.getErrors(), statistics.getRows(),
+                    statistics.getP50Micros(), statistics.getP99Micros(), statistics.getMaxMicros());
+        }
+
+        out.println("connection pool: " + controller.getConnectionPoolUsage());
+
+        PoolUsage replicaUsage = controller.getReplicaPoolUsage();
+        if (replicaUsage != null) out.println("replica connection pool: " + replicaUsage);
+
+        long remoteChanges = controller.getRemoteChangesApplied();
+        if (remoteChanges >= 0) out.println("changes from other clients applied: " + remoteChanges);
+
+        if (controller.getWriteMode() == WriteMode.OPTIMISTIC)
+            out.println("optimistic writes: " + controller.getContentionStatistics());
+
+        RentalCountDrift reconciliation = controller.getLastReconciliation();
+        if (reconciliation != null) out.println("rental counters: " + reconciliation);
+
+        OverdueScan overdueScan = controller.getLastOverdueScan();
+        if (overdueScan != null) out.println("overdue rentals " + overdueScan);
+
+        long archived = controller.getRentalsArchived();
+        if (archived > 0) out.println("terminated rentals archived: " + archived);
+    }
+
+    private void printInstruments(List<? extends RentalInstrumentDTO> instruments, InstrumentRenderer.Format format) {
+        renderer.begin(format);
+        try {
+            for (RentalInstrumentDTO instrument : instruments)
+                renderer.render(instrument);
+        } finally {
+            renderer.finish();
+        }
+    }
+
+    private InstrumentRenderer.Format readFormat(String name) {
+        InstrumentRenderer.Format format = InstrumentRenderer.formatNamed(name);
+        if (format == null) out.println("Unknown format " + name + ", use text, table, csv or json");
+        return format;
+    }
+
+    private boolean isNumber(String parameter) {
+        return parameter != null && parameter.matches("\\d+");
+    }
+
     private void resetObject(List<? extends RentalInstrumentDTO> list) {
         list = null;
     }
@@ -180,24 +737,31 @@ public class BlockingInterpreter {
 
     private void printInstrument(RentalInstrumentDTO instrumentToFind) {
 
+        if (instrumentToFind == null) {
+            out.println(RentalOutcome.INSTRUMENT_NOT_FOUND.getDescription());
+            return;
+        }
+
         String status;
 
         if (instrumentToFind.isAvailable()) status = "[AVAILABLE] ";
         else status = "";
 
-        System.out.println(status + instrumentToFind);
+        out.println(status + instrumentToFind);
 
     }
 
     private void checkForNoResult(List<? extends RentalInstrumentDTO> instrumentsToPrint, String instrumentName) {
         if(instrumentsToPrint.isEmpty())
             if (Objects.equals(instrumentName, ""))
-                System.out.println("No instruments found");
-            else System.out.println("No " + instrumentName + " found");
+                out.println("No instruments found");
+            else out.println("No " + instrumentName + " found");
     }
 
     private String readNextLine() {
-        System.out.print(PROMPT);
+        out.print(PROMPT);
+        out.flush();
+        if (!console.hasNextLine()) return Command.QUIT.name();
         return console.nextLine();
     }
 }
\ No newline at end of file
@@ -6,7 +6,8 @@ package se.kth.iv1351.db.soundgood.view;
 public enum Command {
 
     /**
-     * Lists all existing instruments.
+     * Lists all existing instruments. Takes the options page [size], next,
+     * stream [fetch size] and format text|table|csv|json.
      */
     LIST,
 
@@ -15,6 +16,12 @@ public enum Command {
      */
     RENT,
 
+    /**
+     * Rents any available instrument with a given name, "rentany guitar student
+     * [cheapest|condition]"
+     */
+    RENTANY,
+
     /**
      * Lists all commands.
      */
@@ -22,10 +29,23 @@ public enum Command {
     HELP,
 
     /**
-     * List all available instruments
+     * List all available instruments. Takes the same options as LIST.
      */
     AVAILABLE,
 
+    /**
+     * Lists the instruments matching a filter, "filter [instrument] [available]
+     * [min kr] [max kr] [condition c] [format f]"
+     */
+    FILTER,
+
+    /**
+     * Searches instruments by name, brand and condition, "search yamaha guit", also
+     * matching the start of a word and misspelled words. Takes the options available,
+     * limit n and format text|table|csv|json.
+     */
+    SEARCH,
+
     /**
      * Find a specific rental instrument
      * and print information about it
@@ -39,6 +59,36 @@ public enum Command {
 
     END,
 
+    /**
+     * Rents or returns all instruments listed in a file, as one bulk operation
+     */
+    BATCH,
+
+    /**
+     * Prints call counts and latencies of all database operations,
+     * "stats reset" clears them
+     */
+    STATS,
+
+    /**
+     * Lists the rentals that were overdue at the latest scan, "overdue scan" scans
+     * for newly overdue rentals now. Takes the option format text|table|csv|json.
+     */
+    OVERDUE,
+
+    /**
+     * Lists the terminated rentals of a student, "history instrument 12" those of a
+     * rental instrument. "history archive" moves terminated rentals to the history now.
+     */
+    HISTORY,
+
+    /**
+     * Prints the utilization of each instrument type and the revenue of the latest
+     * months, "report months 24" of more months. "report recompute" computes the
+     * utilization from the rentals.
+     */
+    REPORT,
+
     /**
      * Leave the chat application.
      */
@@ -0,0 +1,286 @@
+package se.kth.iv1351.db.soundgood.view;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.sql.Timestamp;
+
+import se.kth.iv1351.db.soundgood.model.RentalInstrument;
+import se.kth.iv1351.db.soundgood.model.RentalInstrumentDTO;
+
+/**
+ * Prints listings of rental instruments. Each instrument is formatted into one line
+ * buffer, which is copied to a buffered writer that writes to the output stream
+ * whenever it holds {@link #CHUNK_SIZE} characters, instead of printing, and
+ * flushing, one line at a time. One renderer, with its buffers, is used for all
+ * listings of an interpreter. Call {@link #begin} before and {@link #finish} after
+ * each listing. A renderer may only be used by one thread at a time.
+ */
+class InstrumentRenderer {
+
+    /**
+     * The number of characters that are buffered before they are written.
+     */
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The ways a listing can be printed.
+     */
+    enum Format {
+        /**
+         * One line per instrument, as the instrument describes itself.
+         */
+        TEXT,
+
+        /**
+         * A table with a header and one fixed-width column per field.
+         */
+        TABLE,
+
+        /**
+         * Comma-separated values with a header line.
+         */
+        CSV,
+
+        /**
+         * One JSON object per line.
+         */
+        JSON
+    }
+
+    private static final String[] COLUMNS =
+            {"id", "name", "brand", "condition", "monthly_cost", "available", "return_date", "student_id"};
+    private static final int[] COLUMN_WIDTHS = {8, 14, 14, 11, 12, 9, 23, 10};
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final int LINE_SIZE = 256;
+
+    private final Writer out;
+    private final StringBuilder buffer = new StringBuilder(LINE_SIZE);
+    private char[] chars = new char[LINE_SIZE];
+    private Format format = Format.TEXT;
+    private int rendered;
+
+    /**
+     * Creates a renderer for the listings printed to a stream.
+     *
+     * @param out     The stream the listings are printed to.
+     * @param charset The charset the characters are encoded with.
+     */
+    InstrumentRenderer(OutputStream out, Charset charset) {
+        this(new BufferedWriter(new OutputStreamWriter(out, charset), CHUNK_SIZE));
+    }
+
+    /**
+     * Creates a renderer for the listings written to a writer.
+     *
+     * @param out The writer the listings are written to.
+     */
+    InstrumentRenderer(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Returns the format with the specified name, ignoring case.
+     *
+     * @param name The name of a format, f.e. csv.
+     * @return The format, or <code>null</code> if there is no format with that name.
+     */
+    static Format formatNamed(String name) {
+        for (Format format : Format.values()) {
+            if (format.name().equalsIgnoreCase(name)) return format;
+        }
+        return null;
+    }
+
+    /**
+     * Starts a new listing.
+     *
+     * @param format The format of the listing.
+     */
+    void begin(Format format) {
+        this.format = format;
+        this.rendered = 0;
+    }
+
+    /**
+     * Adds one instrument to the listing. The header of the table and CSV formats is
+     * added before the first instrument.
+     *
+     * @param instrument The instrument to print.
+     * @throws UncheckedIOException If the listing could not be written.
+     */
+    void render(RentalInstrumentDTO instrument) {
+        buffer.setLength(0);
+        if (rendered++ == 0) appendHeader();
+
+        switch (format) {
+            case TABLE:
+                appendTableRow(instrument);
+                break;
+            case CSV:
+                appendCsvRow(instrument);
+                break;
+            case JSON:
+                appendJsonRow(instrument);
+                break;
+            default:
+                appendTextRow(instrument);
+        }
+        buffer.append('\n');
+
+        writeBuffer();
+    }
+
+    /**
+     * Writes everything that is still buffered. Must also be called if the listing
+     * ends early, so that nothing of it is left in the buffer.
+     *
+     * @return The number of instruments in the listing.
+     * @throws UncheckedIOException If the listing could not be written.
+     */
+    int finish() {
+        try {
+            out.flush();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        return rendered;
+    }
+
+    private void appendHeader() {
+        if (format == Format.TABLE) {
+            for (int i = 0; i < COLUMNS.length; i++) appendColumn(COLUMNS[i], i);
+            trimTrailingSpaces();
+            buffer.append('\n');
+        } else if (format == Format.CSV) {
+            buffer.append(String.join(",", COLUMNS)).append('\n');
+        }
+    }
+
+    private void appendTextRow(RentalInstrumentDTO instrument) {
+        RentalInstrument.appendDescription(instrument, buffer);
+    }
+
+    private void appendTableRow(RentalInstrumentDTO instrument) {
+        Timestamp returnDate = instrument.getReturnDate();
+        appendColumn(instrument.getId(), 0);
+        appendColumn(instrument.getName(), 1);
+        appendColumn(instrument.getBrand(), 2);
+        appendColumn(instrument.getCondition(), 3);
+        int start = buffer.length();
+        buffer.append(instrument.getMonthlyCost());
+        pad(start, 4);
+        appendColumn(instrument.isAvailable() ? "yes" : "no", 5);
+        appendColumn(returnDate == null ? "" : returnDate.toString(), 6);
+        appendColumn(instrument.getStudent_id() == null ? "" : instrument.getStudent_id(), 7);
+        trimTrailingSpaces();
+    }
+
+    private void appendCsvRow(RentalInstrumentDTO instrument) {
+        appendCsvValue(instrument.getId());
+        buffer.append(',');
+        appendCsvValue(instrument.getName());
+        buffer.append(',');
+        appendCsvValue(instrument.getBrand());
+        buffer.append(',');
+        appendCsvValue(instrument.getCondition());
+        buffer.append(',').append(instrument.getMonthlyCost())
+                .append(',').append(instrument.isAvailable()).append(',');
+        if (instrument.getReturnDate() != null) buffer.append(instrument.getReturnDate());
+        buffer.append(',');
+        appendCsvValue(instrument.getStudent_id());
+    }
+
+    private void appendJsonRow(RentalInstrumentDTO instrument) {
+        buffer.append("{\"id\":");
+        appendJsonValue(instrument.getId());
+        buffer.append(",\"name\":");
+        appendJsonValue(instrument.getName());
+        buffer.append(",\"brand\":");
+        appendJsonValue(instrument.getBrand());
+        buffer.append(",\"condition\":");
+        appendJsonValue(instrument.getCondition());
+        buffer.append(",\"monthly_cost\":").append(instrument.getMonthlyCost())
+                .append(",\"available\":").append(instrument.isAvailable())
+                .append(",\"return_date\":");
+        appendJsonValue(instrument.getReturnDate() == null ? null : instrument.getReturnDate().toString());
+        buffer.append(",\"student_id\":");
+        appendJsonValue(instrument.getStudent_id());
+        buffer.append('}');
+    }
+
+    private void appendColumn(String value, int column) {
+        int start = buffer.length();
+        buffer.append(value);
+        pad(start, column);
+    }
+
+    private void pad(int start, int column) {
+        int end = start + COLUMN_WIDTHS[column] + 1;
+        do {
+            buffer.append(' ');
+        } while (buffer.length() < end);
+    }
+
+    private void trimTrailingSpaces() {
+        int length = buffer.length();
+        while (length > 0 && buffer.charAt(length - 1) == ' ') length--;
+        buffer.setLength(length);
+    }
+
+    private void appendCsvValue(String value) {
+        if (value == null) return;
+        boolean quoted = false;
+        for (int i = 0; i < value.length() && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quoted) {
+            buffer.append(value);
+            return;
+        }
+        buffer.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') buffer.append('"');
+            buffer.append(c);
+        }
+        buffer.append('"');
+    }
+
+    private void appendJsonValue(String value) {
+        if (value == null) {
+            buffer.append("null");
+            return;
+        }
+        buffer.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer.append('\\').append(c);
+            } else if (c < 0x20) {
+                buffer.append("\\u00").append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xf]);
+            } else {
+                buffer.append(c);
+            }
+        }
+        buffer.append('"');
+    }
+
+    private void writeBuffer() {
+        int length = buffer.length();
+        if (chars.length < length) chars = new char[Math.max(length, 2 * chars.length)];
+        buffer.getChars(0, length, chars, 0);
+        try {
+            out.write(chars, 0, length);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        buffer.setLength(0);
+    }
+}
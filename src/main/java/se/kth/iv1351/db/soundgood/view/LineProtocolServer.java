@@ -0,0 +1,145 @@
+package se.kth.iv1351.db.soundgood.view;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import se.kth.iv1351.db.soundgood.controller.Controller;
+
+/**
+ * Accepts clients on a localhost TCP port and serves each of them with its own
+ * {@link BlockingInterpreter}, so that several users can work at the same time. The
+ * protocol is the same as that of the console, one command per line, and the
+ * interpreter's output is written back to the client. All sessions share the same
+ * controller.
+ *
+ * Each session needs a thread for as long as the client is connected. On a Java 21
+ * or later runtime, sessions run on virtual threads, so that thousands of mostly
+ * idle sessions do not need one platform thread each. The application is built for
+ * Java 17, where sessions instead run on a fixed pool of
+ * <code>soundgood.server.maxSessions</code> platform threads (default
+ * {@value #DEFAULT_MAX_PLATFORM_SESSIONS}). At most that many clients are then served
+ * at the same time, further clients wait in the accept queue until a session ends.
+ * The property also limits the sessions on virtual threads, if it is set.
+ */
+public class LineProtocolServer {
+    private static final int ACCEPT_BACKLOG = 1024;
+    static final int DEFAULT_MAX_PLATFORM_SESSIONS = 256;
+    private static final String MAX_SESSIONS_PROPERTY = "soundgood.server.maxSessions";
+    private final Controller controller;
+    private final int port;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final ExecutorService sessions;
+    private final Semaphore sessionSlots;
+    private volatile ServerSocket serverSocket;
+
+    /**
+     * Creates a new server that will use the specified controller for all sessions.
+     *
+     * @param ctrl The controller shared by all sessions.
+     * @param port The localhost port to listen on.
+     */
+    public LineProtocolServer(Controller ctrl, int port) {
+        this.controller = ctrl;
+        this.port = port;
+        ExecutorService virtualThreads = newVirtualThreadExecutor();
+        int maxSessions = Integer.getInteger(MAX_SESSIONS_PROPERTY,
+                virtualThreads == null ? DEFAULT_MAX_PLATFORM_SESSIONS : Integer.MAX_VALUE);
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException(MAX_SESSIONS_PROPERTY + " must be at least 1, was " + maxSessions);
+        }
+        this.sessions = virtualThreads != null ? virtualThreads : newPlatformThreadExecutor(maxSessions);
+        this.sessionSlots = new Semaphore(maxSessions);
+    }
+
+    /**
+     * Accepts clients until the server is stopped. This method will not return
+     * until {@link #stop()} has been called.
+     *
+     * @throws IOException If the port could not be opened.
+     */
+    public void serve() throws IOException {
+        serverSocket = new ServerSocket(port, ACCEPT_BACKLOG, InetAddress.getLoopbackAddress());
+        System.out.println("Listening on " + serverSocket.getLocalSocketAddress());
+
+        try (ServerSocket listening = serverSocket) {
+            while (!listening.isClosed()) {
+                sessionSlots.acquireUninterruptibly();
+                Socket client;
+                try {
+                    client = listening.accept();
+                } catch (SocketException closed) {
+                    sessionSlots.release();
+                    break;
+                }
+                sessions.execute(() -> handleSession(client));
+            }
+        } finally {
+            sessions.shutdownNow();
+        }
+    }
+
+    /**
+     * Stops accepting clients and interrupts all sessions.
+     */
+    public void stop() {
+        ServerSocket listening = serverSocket;
+        if (listening == null) return;
+        try {
+            listening.close();
+        } catch (IOException ioe) {
+            System.out.println("Could not close the server socket: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * @return The number of clients that are currently connected.
+     */
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    private void handleSession(Socket client) {
+        activeSessions.incrementAndGet();
+        try (Socket connection = client;
+             PrintStream out = new PrintStream(connection.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            new BlockingInterpreter(controller, connection.getInputStream(), out, StandardCharsets.UTF_8,
+                    false, false).handleCmds();
+        } catch (IOException ioe) {
+            System.out.println("Session with " + client.getRemoteSocketAddress() + " failed: " + ioe.getMessage());
+        } finally {
+            activeSessions.decrementAndGet();
+            sessionSlots.release();
+        }
+    }
+
+    /**
+     * @return An executor that starts a virtual thread per task, or <code>null</code>
+     *         if the Java runtime has no virtual threads.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method virtualThreadPerTask = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtualThreadPerTask.invoke(null);
+        } catch (ReflectiveOperationException noVirtualThreads) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "soundgood-session");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
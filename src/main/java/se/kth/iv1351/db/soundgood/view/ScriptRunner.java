@@ -0,0 +1,198 @@
+package se.kth.iv1351.db.soundgood.view;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import se.kth.iv1351.db.soundgood.controller.Controller;
+import se.kth.iv1351.db.soundgood.integration.StatementStatistics;
+
+/**
+ * Performs the commands of a script, one command per line, without prompts. Blank
+ * lines and lines starting with # are skipped, and a quit line ends the script. When
+ * all commands have been performed, the number of commands, the throughput and the
+ * latencies of each kind of command are printed.
+ *
+ * With a parallelism above one, that many commands are performed at the same time,
+ * so the commands of such a script must not depend on each other. The output of each
+ * command is still printed in the order of the script. Every thread has its own
+ * interpreter, the next option of LIST and AVAILABLE therefore only works in scripts
+ * that are run without parallelism.
+ */
+public class ScriptRunner {
+
+    private static final String COMMENT_PREFIX = "#";
+    private static final int IN_FLIGHT_PER_THREAD = 4;
+
+    private final Controller controller;
+    private final PrintStream out;
+    private final int parallelism;
+    private final Map<Command, StatementStatistics> statistics = new EnumMap<>(Command.class);
+    private long commands;
+    private long failures;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param controller  The controller used by all commands.
+     * @param out         The stream the output of the commands and the summary are printed to.
+     * @param parallelism The number of commands that are performed at the same time.
+     */
+    public ScriptRunner(Controller controller, PrintStream out, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+        }
+        this.controller = controller;
+        this.out = out;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Performs all commands of a script and prints the summary.
+     *
+     * @param script The lines of the script.
+     * @return The number of commands that were illegal or failed.
+     * @throws IOException If the script could not be read.
+     */
+    public long run(BufferedReader script) throws IOException {
+        long startTime = System.nanoTime();
+
+        if (parallelism == 1) {
+            runSequentially(script);
+        } else {
+            runInParallel(script);
+        }
+
+        printSummary(System.nanoTime() - startTime);
+        out.flush();
+        return failures;
+    }
+
+    private void runSequentially(BufferedReader script) throws IOException {
+        BlockingInterpreter interpreter =
+                new BlockingInterpreter(controller, InputStream.nullInputStream(), out, false);
+
+        for (CmdLine cmdLine = nextCommand(script); cmdLine != null; cmdLine = nextCommand(script)) {
+            long startTime = System.nanoTime();
+            boolean succeeded = interpreter.execute(cmdLine);
+            record(cmdLine.getCmd(), System.nanoTime() - startTime, succeeded);
+        }
+    }
+
+    private void runInParallel(BufferedReader script) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "soundgood-script");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ThreadLocal<Session> sessions = ThreadLocal.withInitial(() -> new Session(controller));
+        Deque<Future<Outcome>> inFlight = new ArrayDeque<>();
+
+        try {
+            for (CmdLine cmdLine = nextCommand(script); cmdLine != null; cmdLine = nextCommand(script)) {
+                CmdLine command = cmdLine;
+                inFlight.addLast(workers.submit(() -> sessions.get().execute(command)));
+                if (inFlight.size() >= parallelism * IN_FLIGHT_PER_THREAD) {
+                    printOutcome(inFlight.removeFirst());
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                printOutcome(inFlight.removeFirst());
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void printOutcome(Future<Outcome> pending) throws IOException {
+        Outcome outcome;
+        try {
+            outcome = pending.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running the script", ie);
+        } catch (ExecutionException ee) {
+            throw new IOException("Could not run a script command", ee.getCause());
+        }
+        out.writeBytes(outcome.output);
+        record(outcome.command, outcome.elapsedNanos, outcome.succeeded);
+    }
+
+    private CmdLine nextCommand(BufferedReader script) throws IOException {
+        String line;
+        while ((line = script.readLine()) != null) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith(COMMENT_PREFIX)) continue;
+            CmdLine cmdLine = new CmdLine(trimmed);
+            return cmdLine.getCmd() == Command.QUIT ? null : cmdLine;
+        }
+        return null;
+    }
+
+    private void record(Command command, long elapsedNanos, boolean succeeded) {
+        statistics.computeIfAbsent(command, cmd -> new StatementStatistics(cmd.name().toLowerCase()))
+                .recordElapsed(elapsedNanos, 0, succeeded);
+        commands++;
+        if (!succeeded) failures++;
+    }
+
+    private void printSummary(long elapsedNanos) {
+        double elapsedMillis = elapsedNanos / 1_000_000.0;
+        double commandsPerSecond = commands == 0 ? 0 : commands / (elapsedNanos / 1_000_000_000.0);
+
+        out.printf("%d commands, %d failed, in %.1f ms, %.0f commands per second (parallelism %d)%n",
+                commands, failures, elapsedMillis, commandsPerSecond, parallelism);
+        out.printf("%-16s %8s %6s %10s %10s %10s%n", "command", "count", "errors", "p50 us", "p99 us", "max us");
+
+        for (StatementStatistics command : statistics.values()) {
+            out.printf("%-16s %8d %6d %10.1f %10.1f %10.1f%n",
+                    command.getOperation(), command.getCount(), command.getErrors(),
+                    command.getP50Micros(), command.getP99Micros(), command.getMaxMicros());
+        }
+    }
+
+    /**
+     * The interpreter of one worker thread, which prints to a buffer that holds the
+     * output of the command it is performing.
+     */
+    private static class Session {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final BlockingInterpreter interpreter;
+
+        private Session(Controller controller) {
+            interpreter = new BlockingInterpreter(controller, InputStream.nullInputStream(),
+                    new PrintStream(buffer, false), false);
+        }
+
+        private Outcome execute(CmdLine cmdLine) {
+            buffer.reset();
+            long startTime = System.nanoTime();
+            boolean succeeded = interpreter.execute(cmdLine);
+            return new Outcome(cmdLine.getCmd(), System.nanoTime() - startTime, succeeded, buffer.toByteArray());
+        }
+    }
+
+    private static class Outcome {
+        private final Command command;
+        private final long elapsedNanos;
+        private final boolean succeeded;
+        private final byte[] output;
+
+        private Outcome(Command command, long elapsedNanos, boolean succeeded, byte[] output) {
+            this.command = command;
+            this.elapsedNanos = elapsedNanos;
+            this.succeeded = succeeded;
+            this.output = output;
+        }
+    }
+}
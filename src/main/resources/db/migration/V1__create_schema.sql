@@ -0,0 +1,22 @@
+-- The tables read and written by SoundgoodDAO. Existing tables are left as they are,
+-- so the migration can be applied to a database created before migrations existed.
+
+CREATE TABLE IF NOT EXISTS instrument (
+    id INT PRIMARY KEY,
+    name VARCHAR(100) NOT NULL,
+    type VARCHAR(100) NOT NULL
+);
+
+-- One row per rental of an instrument. A terminated rental is kept as history, and a
+-- new available row with the same rental_instrument_foreign_id replaces it.
+CREATE TABLE IF NOT EXISTS rental_instrument (
+    rental_instrument_foreign_id VARCHAR(20) NOT NULL,
+    brand VARCHAR(100),
+    is_available BOOLEAN NOT NULL,
+    condition VARCHAR(50),
+    instrument_id INT NOT NULL REFERENCES instrument (id),
+    student_id VARCHAR(20),
+    return_date TIMESTAMP,
+    monthly_cost DECIMAL(10, 2) NOT NULL,
+    terminated BOOLEAN NOT NULL DEFAULT false
+);
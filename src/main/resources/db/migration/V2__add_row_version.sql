@@ -0,0 +1,4 @@
+-- The row version checked by the optimistic write mode. Every change of a rental
+-- instrument increases it.
+
+ALTER TABLE rental_instrument ADD COLUMN IF NOT EXISTS version INT NOT NULL DEFAULT 0;
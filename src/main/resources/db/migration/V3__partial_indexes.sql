@@ -0,0 +1,26 @@
+-- Every query of SoundgoodDAO filters on terminated IS false. The indexes are partial
+-- on exactly that predicate, so that the growing rental history does not grow them,
+-- and the planner can prove that a query's WHERE clause implies the index predicate.
+
+-- One instrument by rental id: FIND, RENT, END and the batched statements.
+CREATE INDEX IF NOT EXISTS rental_instrument_active_by_id
+    ON rental_instrument (rental_instrument_foreign_id)
+    WHERE terminated IS false;
+
+-- The catalog listings, joined to instrument and filtered by name.
+CREATE INDEX IF NOT EXISTS rental_instrument_active_by_instrument
+    ON rental_instrument (instrument_id, rental_instrument_foreign_id)
+    WHERE terminated IS false;
+
+-- The available listings and RENTANY.
+CREATE INDEX IF NOT EXISTS rental_instrument_available_by_instrument
+    ON rental_instrument (instrument_id, rental_instrument_foreign_id)
+    WHERE terminated IS false AND is_available IS true;
+
+-- A student's rentals, the rental limit check and the per-student rental counts.
+CREATE INDEX IF NOT EXISTS rental_instrument_active_by_student
+    ON rental_instrument (student_id)
+    WHERE terminated IS false AND student_id IS NOT NULL;
+
+CREATE INDEX IF NOT EXISTS instrument_by_name
+    ON instrument (name, id);
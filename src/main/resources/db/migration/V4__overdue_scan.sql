@@ -0,0 +1,14 @@
+-- The high-water mark of the overdue scanner: every active rental with a return date
+-- up to scanned_until has been reported as overdue. NULL until the first scan.
+
+CREATE TABLE IF NOT EXISTS overdue_scan (
+    scanner VARCHAR(40) PRIMARY KEY,
+    scanned_until TIMESTAMP
+);
+
+INSERT INTO overdue_scan (scanner, scanned_until) VALUES ('overdue', NULL) ON CONFLICT DO NOTHING;
+
+-- The rentals that became overdue since the last scan, and the OVERDUE listing.
+CREATE INDEX IF NOT EXISTS rental_instrument_active_by_return_date
+    ON rental_instrument (return_date, rental_instrument_foreign_id)
+    WHERE terminated IS false AND student_id IS NOT NULL;
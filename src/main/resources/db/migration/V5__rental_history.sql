@@ -0,0 +1,29 @@
+-- Terminated rentals are moved out of rental_instrument into rental_history by the
+-- archiver, so that rental_instrument keeps about one row per physical instrument.
+-- The history is partitioned by the month the rental ended. The archiver creates the
+-- partition of a month before it moves the first rental that ended in it, rentals
+-- without an end date are kept in the default partition.
+
+CREATE TABLE IF NOT EXISTS rental_history (
+    rental_instrument_foreign_id VARCHAR(20) NOT NULL,
+    brand VARCHAR(100),
+    condition VARCHAR(50),
+    instrument_id INT NOT NULL,
+    student_id VARCHAR(20),
+    monthly_cost DECIMAL(10, 2) NOT NULL,
+    ended_at TIMESTAMP
+) PARTITION BY RANGE (ended_at);
+
+CREATE TABLE IF NOT EXISTS rental_history_undated PARTITION OF rental_history DEFAULT;
+
+-- The HISTORY listings, of one student or of one rental instrument.
+CREATE INDEX IF NOT EXISTS rental_history_by_student
+    ON rental_history (student_id, ended_at);
+
+CREATE INDEX IF NOT EXISTS rental_history_by_instrument
+    ON rental_history (rental_instrument_foreign_id, ended_at);
+
+-- The terminated rentals that have not been archived yet, oldest first.
+CREATE INDEX IF NOT EXISTS rental_instrument_terminated_by_return_date
+    ON rental_instrument (return_date)
+    WHERE terminated IS true;
@@ -0,0 +1,40 @@
+-- Summaries of the rentals, read by the REPORT command. They are computed here from the
+-- rentals, and after that every rent and termination changes them in its own
+-- transaction, so they are never computed from rental_instrument again.
+
+-- Per instrument type: the non-terminated instruments, how many of them are rented, and
+-- the sum of the monthly cost of the rented ones.
+CREATE TABLE IF NOT EXISTS rental_utilization (
+    instrument_type VARCHAR(100) PRIMARY KEY,
+    instruments INT NOT NULL,
+    rented INT NOT NULL,
+    monthly_revenue DECIMAL(12, 2) NOT NULL
+);
+
+-- Per month: the rentals started in the month and the sum of their monthly cost. Every
+-- rental is for one month, its return date is set one month after it starts.
+CREATE TABLE IF NOT EXISTS monthly_rental_revenue (
+    month DATE PRIMARY KEY,
+    rentals INT NOT NULL,
+    revenue DECIMAL(12, 2) NOT NULL
+);
+
+INSERT INTO rental_utilization (instrument_type, instruments, rented, monthly_revenue)
+SELECT instrument.type,
+       count(rental_instrument.rental_instrument_foreign_id),
+       count(rental_instrument.student_id),
+       coalesce(sum(rental_instrument.monthly_cost) FILTER (WHERE rental_instrument.student_id IS NOT NULL), 0)
+FROM instrument
+LEFT JOIN rental_instrument
+    ON rental_instrument.instrument_id = instrument.id AND rental_instrument.terminated IS false
+GROUP BY instrument.type
+ON CONFLICT DO NOTHING;
+
+-- The start of a rental is not stored, only its return date. The rentals that are still
+-- active are counted in the month before their return date, terminated rentals are lost.
+INSERT INTO monthly_rental_revenue (month, rentals, revenue)
+SELECT date_trunc('month', return_date - interval '1 month')::date, count(*), sum(monthly_cost)
+FROM rental_instrument
+WHERE terminated IS false AND student_id IS NOT NULL AND return_date IS NOT NULL
+GROUP BY 1
+ON CONFLICT DO NOTHING;
@@ -0,0 +1,22 @@
+-- The catalog is ordered by instrument name and then by rental id, with shorter ids
+-- first. The application orders its in-memory catalog the same way, comparing strings
+-- by character code, so both columns get the C collation whatever the database's
+-- default collation is.
+
+ALTER TABLE instrument ALTER COLUMN name TYPE VARCHAR(100) COLLATE "C";
+
+ALTER TABLE rental_instrument ALTER COLUMN rental_instrument_foreign_id TYPE VARCHAR(20) COLLATE "C";
+
+-- The catalog listings, joined to instrument and filtered by name, in catalog order.
+DROP INDEX IF EXISTS rental_instrument_active_by_instrument;
+
+CREATE INDEX IF NOT EXISTS rental_instrument_active_in_catalog_order
+    ON rental_instrument (instrument_id, length(rental_instrument_foreign_id), rental_instrument_foreign_id)
+    WHERE terminated IS false;
+
+-- The available listings and RENTANY.
+DROP INDEX IF EXISTS rental_instrument_available_by_instrument;
+
+CREATE INDEX IF NOT EXISTS rental_instrument_available_in_catalog_order
+    ON rental_instrument (instrument_id, length(rental_instrument_foreign_id), rental_instrument_foreign_id)
+    WHERE terminated IS false AND is_available IS true;
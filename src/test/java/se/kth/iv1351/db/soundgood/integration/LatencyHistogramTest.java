@@ -0,0 +1,66 @@
+package se.kth.iv1351.db.soundgood.integration;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    void keepsSmallValuesInBucketsOfTheirOwn() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, LatencyHistogram.bucketOf(value));
+            assertEquals(value, LatencyHistogram.upperBoundOf(value));
+        }
+    }
+
+    @Test
+    void coversAllValuesWithAdjacentBuckets() {
+        int bucket = LatencyHistogram.bucketOf(0);
+        while (LatencyHistogram.upperBoundOf(bucket) < Long.MAX_VALUE) {
+            long upperBound = LatencyHistogram.upperBoundOf(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(upperBound));
+            assertEquals(bucket + 1, LatencyHistogram.bucketOf(upperBound + 1));
+            bucket++;
+        }
+        assertEquals(bucket, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    void roundsUpByAtMostOneEighth() {
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 2; value = value * 3 + 1) {
+            long upperBound = LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(value));
+            assertTrue(upperBound >= value && upperBound <= value + value / 8, value + " -> " + upperBound);
+        }
+    }
+
+    @Test
+    void reportsPercentilesAsBucketUpperBounds() {
+        assertEquals(0, histogram.percentile(0.5));
+
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(511, histogram.percentile(0.5));
+        assertEquals(959, histogram.percentile(0.9));
+        assertEquals(1000, histogram.percentile(0.99), "The bucket of 990 ends at 1023, above the highest latency");
+        assertEquals(1000, histogram.percentile(1.0));
+        assertEquals(1000, histogram.getMax());
+        assertEquals(1, histogram.percentile(0.0));
+    }
+
+    @Test
+    void countsNegativeLatenciesAsZeroAndForgetsAllOnReset() {
+        histogram.record(-5);
+        assertEquals(0, histogram.percentile(1.0));
+
+        histogram.record(100);
+        histogram.reset();
+        assertEquals(0, histogram.percentile(1.0));
+        assertEquals(0, histogram.getMax());
+    }
+}
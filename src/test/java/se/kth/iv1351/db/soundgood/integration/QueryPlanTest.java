@@ -0,0 +1,126 @@
+package se.kth.iv1351.db.soundgood.integration;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that every statement of {@link SoundgoodDAO} can use an index on
+ * <code>rental_instrument</code>. Each statement is explained with sequential scans
+ * disabled. The planner then still chooses a sequential scan only if no index matches
+ * the statement's predicates, so the amount of data in the database does not matter.
+ *
+ * Needs a PostgreSQL database, and is skipped unless one is selected:
+ * <pre>
+ * mvn test -Dsoundgood.db.url=jdbc:postgresql://localhost:5432/soundgood
+ * </pre>
+ * The schema of the database is migrated by the DAO.
+ */
+class QueryPlanTest {
+
+    private static final String CHECKED_SCAN = "Seq Scan on rental_instrument";
+
+    private static SoundgoodDAO dao;
+    private static Connection connection;
+
+    @BeforeAll
+    static void connect() throws Exception {
+        String url = System.getProperty("soundgood.db.url");
+        assumeTrue(url != null && url.startsWith("jdbc:postgresql:"),
+                "The query plans are only checked against a PostgreSQL database");
+
+        dao = new SoundgoodDAO();
+        connection = DriverManager.getConnection(url,
+                System.getProperty("soundgood.db.user", "postgres"),
+                System.getProperty("soundgood.db.password", "VgS4HN"));
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET enable_seqscan = off");
+        }
+    }
+
+    @AfterAll
+    static void disconnect() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (dao != null) {
+            dao.close();
+        }
+    }
+
+    @TestFactory
+    Stream<DynamicTest> noStatementScansRentalInstrumentSequentially() {
+        return dao.getStatementSql().entrySet().stream().map(statement ->
+                DynamicTest.dynamicTest(statement.getKey(), () -> {
+                    String plan = explain(statement.getValue());
+                    assertFalse(plan.contains(CHECKED_SCAN),
+                            () -> statement.getKey() + " scans rental_instrument sequentially:\n" + plan);
+                }));
+    }
+
+    /**
+     * Explains a statement, binding a sample value of the right type to each parameter.
+     * The sample values do not matter, since sequential scans are disabled.
+     */
+    private static String explain(String sql) throws SQLException {
+        ParameterMetaData parameters;
+        try (PreparedStatement described = connection.prepareStatement(sql)) {
+            parameters = described.getParameterMetaData();
+
+            try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql)) {
+                for (int i = 1; i <= parameters.getParameterCount(); i++) {
+                    bindSample(explain, i, parameters.getParameterType(i));
+                }
+
+                StringBuilder plan = new StringBuilder();
+                try (ResultSet result = explain.executeQuery()) {
+                    while (result.next()) {
+                        plan.append("    ").append(result.getString(1)).append('\n');
+                    }
+                }
+                return plan.toString();
+            }
+        }
+    }
+
+    private static void bindSample(PreparedStatement statement, int index, int sqlType) throws SQLException {
+        switch (sqlType) {
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.SMALLINT:
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                statement.setInt(index, 1);
+                break;
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+            case Types.DATE:
+                statement.setTimestamp(index, new Timestamp(System.currentTimeMillis()));
+                break;
+            case Types.BOOLEAN:
+            case Types.BIT:
+                statement.setBoolean(index, true);
+                break;
+            case Types.ARRAY:
+                statement.setArray(index, statement.getConnection().createArrayOf("varchar", new Object[] {"1"}));
+                break;
+            default:
+                statement.setString(index, "1");
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package se.kth.iv1351.db.soundgood.integration;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import se.kth.iv1351.db.soundgood.model.CatalogSnapshot;
+import se.kth.iv1351.db.soundgood.model.RentalInstrument;
+import se.kth.iv1351.db.soundgood.model.RentalInstrumentDTO;
+import se.kth.iv1351.db.soundgood.model.RentalOutcome;
+import se.kth.iv1351.db.soundgood.model.TypeUtilization;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks {@link SoundgoodDAO} against a PostgreSQL database, and is skipped unless one
+ * is selected:
+ * <pre>
+ * mvn test -Dsoundgood.db.url=jdbc:postgresql://localhost:5432/soundgood
+ * </pre>
+ * The tests add an instrument with a name and type of their own, with rental ids that
+ * are not used by other instruments, and remove it, its rentals and its summary
+ * afterwards.
+ */
+class SoundgoodDAOTest {
+
+    private static SoundgoodDAO dao;
+    private static Connection connection;
+    private static int instrumentId;
+    private static String name;
+    private static String type;
+    private static List<String> rentalIds;
+
+    @BeforeAll
+    static void connect() throws Exception {
+        String url = System.getProperty("soundgood.db.url");
+        assumeTrue(url != null && url.startsWith("jdbc:postgresql:"),
+                "The DAO is only checked against a PostgreSQL database");
+
+        dao = new SoundgoodDAO();
+        connection = DriverManager.getConnection(url,
+                System.getProperty("soundgood.db.user", "postgres"),
+                System.getProperty("soundgood.db.password", "VgS4HN"));
+
+        String tag = String.valueOf(ThreadLocalRandom.current().nextInt(100_000, 1_000_000));
+        name = "test-" + tag;
+        type = "test-type-" + tag;
+        rentalIds = List.of(tag + "1a", tag + "10", "x-" + tag, tag + "9", tag + "2");
+        try (PreparedStatement unused = connection.prepareStatement(
+                "SELECT count(*) FROM rental_instrument WHERE rental_instrument_foreign_id = ANY (?)")) {
+            unused.setArray(1, connection.createArrayOf("varchar", rentalIds.toArray()));
+            try (ResultSet result = unused.executeQuery()) {
+                result.next();
+                assumeTrue(result.getInt(1) == 0, "The rental ids of the test are in use");
+            }
+        }
+
+        try (ResultSet result = connection.createStatement()
+                .executeQuery("SELECT coalesce(max(id), 0) + 1 FROM instrument")) {
+            result.next();
+            instrumentId = result.getInt(1);
+        }
+        execute("INSERT INTO instrument (id, name, type) VALUES (?, ?, ?)", instrumentId, name, type);
+        for (String rentalId : rentalIds) {
+            execute("INSERT INTO rental_instrument (rental_instrument_foreign_id, brand, is_available, condition,"
+                    + " instrument_id, monthly_cost) VALUES (?, 'Yamaha', true, 'good', ?, 100)", rentalId, instrumentId);
+        }
+    }
+
+    @AfterAll
+    static void disconnect() throws Exception {
+        if (connection != null) {
+            execute("DELETE FROM rental_instrument WHERE instrument_id = ?", instrumentId);
+            execute("DELETE FROM rental_history WHERE instrument_id = ?", instrumentId);
+            execute("DELETE FROM rental_utilization WHERE instrument_type = ?", type);
+            execute("DELETE FROM instrument WHERE id = ?", instrumentId);
+            connection.close();
+        }
+        if (dao != null) {
+            dao.close();
+        }
+    }
+
+    @Test
+    void listsAndPagesInTheOrderOfTheCatalogSnapshot() throws Exception {
+        List<String> expected = List.of(rentalIds.get(4), rentalIds.get(3), rentalIds.get(1), rentalIds.get(0),
+                rentalIds.get(2));
+
+        List<RentalInstrument> listed = dao.findAllRentalInstrumentsByName(name);
+        assertEquals(expected, idsOf(listed));
+        assertEquals(expected, idsOf(CatalogSnapshot.of(0, listed).getAll()));
+
+        List<RentalInstrumentDTO> all = new ArrayList<>();
+        for (RentalInstrument instrument : dao.findAllRentalInstruments()) {
+            if (name.equals(instrument.getName())) all.add(instrument);
+        }
+        assertEquals(expected, idsOf(all));
+
+        List<RentalInstrumentDTO> paged = new ArrayList<>();
+        String afterId = null;
+        for (List<RentalInstrument> page = dao.findRentalInstrumentPage(name, false, null, null, 2);
+             !page.isEmpty();
+             page = dao.findRentalInstrumentPage(name, false, name, afterId, 2)) {
+            paged.addAll(page);
+            afterId = page.get(page.size() - 1).getId();
+        }
+        assertEquals(expected, idsOf(paged));
+
+        List<RentalInstrument> pageOfAllNames = dao.findRentalInstrumentPage(null, false, name, "", 5);
+        assertEquals(expected, idsOf(pageOfAllNames));
+    }
+
+    @Test
+    void summarizesTheRentalsOfATypeAddedAfterTheSummaries() throws Exception {
+        Map<Date, Object[]> revenueBefore = readMonthlyRevenue();
+        try {
+            assertEquals(null, utilizationOfTestType());
+
+            assertEquals(RentalOutcome.RENTED, dao.rentInstrument(rentalIds.get(0), "test-student", 2));
+            TypeUtilization rented = utilizationOfTestType();
+            assertEquals(rentalIds.size(), rented.getInstruments());
+            assertEquals(1, rented.getRented());
+            assertEquals(100.0, rented.getMonthlyRevenue());
+
+            assertEquals(RentalOutcome.RENTED, dao.rentInstrument(rentalIds.get(1), "test-student", 2));
+            assertEquals(2, utilizationOfTestType().getRented());
+            assertEquals(200.0, utilizationOfTestType().getMonthlyRevenue());
+
+            assertEquals(RentalOutcome.TERMINATED, dao.terminateRental(rentalIds.get(0)));
+            assertEquals(RentalOutcome.TERMINATED, dao.terminateRental(rentalIds.get(1)));
+            TypeUtilization returned = utilizationOfTestType();
+            assertEquals(rentalIds.size(), returned.getInstruments());
+            assertEquals(0, returned.getRented());
+            assertEquals(0.0, returned.getMonthlyRevenue());
+        } finally {
+            restoreMonthlyRevenue(revenueBefore);
+        }
+    }
+
+    private static TypeUtilization utilizationOfTestType() throws Exception {
+        for (TypeUtilization utilization : dao.readRentalReport(1).getUtilization()) {
+            if (type.equals(utilization.getInstrumentType())) return utilization;
+        }
+        return null;
+    }
+
+    /**
+     * The rents of the test are added to the revenue of the current month, which is
+     * restored afterwards.
+     */
+    private static Map<Date, Object[]> readMonthlyRevenue() throws SQLException {
+        Map<Date, Object[]> revenue = new HashMap<>();
+        try (ResultSet result = connection.createStatement()
+                .executeQuery("SELECT month, rentals, revenue FROM monthly_rental_revenue")) {
+            while (result.next()) {
+                revenue.put(result.getDate(1), new Object[] {result.getInt(2), result.getBigDecimal(3)});
+            }
+        }
+        return revenue;
+    }
+
+    private static void restoreMonthlyRevenue(Map<Date, Object[]> revenue) throws SQLException {
+        for (Date month : readMonthlyRevenue().keySet()) {
+            Object[] before = revenue.get(month);
+            if (before == null) {
+                execute("DELETE FROM monthly_rental_revenue WHERE month = ?", month);
+            } else {
+                execute("UPDATE monthly_rental_revenue SET rentals = ?, revenue = ? WHERE month = ?",
+                        before[0], before[1], month);
+            }
+        }
+    }
+
+    private static void execute(String sql, Object... parameters) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    private static List<String> idsOf(List<? extends RentalInstrumentDTO> instruments) {
+        List<String> ids = new ArrayList<>();
+        for (RentalInstrumentDTO instrument : instruments) ids.add(instrument.getId());
+        return ids;
+    }
+}
@@ -0,0 +1,21 @@
+package se.kth.iv1351.db.soundgood.integration;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StatementStatisticsTest {
+
+    private final StatementStatistics statistics = new StatementStatistics("test");
+
+    @Test
+    void recordsTheElapsedTimeAsGiven() {
+        statistics.recordElapsed(2_500_000, 3, true);
+        statistics.recordElapsed(1_000, 0, false);
+
+        assertEquals(2, statistics.getCount());
+        assertEquals(1, statistics.getErrors());
+        assertEquals(3, statistics.getRows());
+        assertEquals(2_500.0, statistics.getMaxMicros());
+    }
+}
@@ -0,0 +1,148 @@
+package se.kth.iv1351.db.soundgood.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogSnapshotTest {
+
+    private final CatalogSnapshot snapshot = CatalogSnapshot.of(3, List.of(
+            instrument("10", "piano", true, null),
+            instrument("2", "guitar", false, "s1"),
+            instrument("9", "guitar", true, null),
+            instrument("11", "drums", true, null)));
+
+    @Test
+    void ordersTheCatalogByNameAndNumericId() {
+        assertEquals(List.of("11", "2", "9", "10"), idsOf(snapshot.getAll()));
+        assertEquals(List.of("11", "9", "10"), idsOf(snapshot.getAvailable()));
+        assertEquals(List.of("2", "9"), idsOf(snapshot.getByName("guitar")));
+        assertEquals(List.of("9"), idsOf(snapshot.getAvailableByName("guitar")));
+        assertEquals(List.of(), snapshot.getByName("violin"));
+    }
+
+    @Test
+    void ordersMixedIdsByLengthAndThenAsText() {
+        List<RentalInstrument> instruments = new ArrayList<>(List.of(
+                instrument("1a", "guitar", true, null),
+                instrument("10", "guitar", true, null),
+                instrument("x-5", "guitar", true, null),
+                instrument("9", "guitar", true, null),
+                instrument("2", "guitar", true, null),
+                instrument("1", null, true, null),
+                instrument("3", "bass", true, null)));
+        List<String> expected = List.of("3", "2", "9", "10", "1a", "x-5", "1");
+
+        for (int seed = 0; seed < 20; seed++) {
+            Collections.shuffle(instruments, new Random(seed));
+            assertEquals(expected, idsOf(CatalogSnapshot.of(0, instruments).getAll()));
+        }
+    }
+
+    @Test
+    void ordersConsistentlyWithEveryPairOfIds() {
+        List<RentalInstrument> instruments = new ArrayList<>();
+        for (String id : List.of("9", "10", "1a", "a", "A", "09", "100", "z", "\uD83C\uDFB8", "\uFFFD")) {
+            instruments.add(instrument(id, "guitar", true, null));
+        }
+        for (RentalInstrument a : instruments) {
+            for (RentalInstrument b : instruments) {
+                int ab = CatalogSnapshot.CATALOG_ORDER.compare(a, b);
+                assertEquals(-Integer.signum(ab), Integer.signum(CatalogSnapshot.CATALOG_ORDER.compare(b, a)));
+                for (RentalInstrument c : instruments) {
+                    if (ab < 0 && CatalogSnapshot.CATALOG_ORDER.compare(b, c) < 0) {
+                        assertTrue(CatalogSnapshot.CATALOG_ORDER.compare(a, c) < 0,
+                                a.getId() + " < " + b.getId() + " < " + c.getId());
+                    }
+                }
+            }
+        }
+        assertTrue(CatalogSnapshot.CATALOG_ORDER.compare(instruments.get(9), instruments.get(8)) < 0,
+                "Compared by code point, as the C collation");
+    }
+
+    @Test
+    void replacesAnInstrumentInANewSnapshot() {
+        CatalogSnapshot changed = snapshot.withInstrument("2", instrument("2", "guitar", true, null));
+
+        assertEquals(4, changed.getVersion());
+        assertEquals(List.of("11", "2", "9", "10"), idsOf(changed.getAvailable()));
+        assertEquals(List.of("2", "9"), idsOf(changed.getAvailableByName("guitar")));
+        assertEquals("s1", snapshot.getById("2").getStudent_id());
+        assertNull(changed.getById("2").getStudent_id());
+        assertEquals(List.of("11", "9", "10"), idsOf(snapshot.getAvailable()));
+    }
+
+    @Test
+    void sharesTheBucketsOfOtherNames() {
+        CatalogSnapshot changed = snapshot.withInstrument("9", instrument("9", "guitar", false, "s2"));
+
+        assertSame(snapshot.getByName("piano"), changed.getByName("piano"));
+        assertSame(snapshot.getAvailableByName("drums"), changed.getAvailableByName("drums"));
+    }
+
+    @Test
+    void addsAndRemovesInstrumentsAndNames() {
+        CatalogSnapshot changed = snapshot
+                .withInstrument("12", instrument("12", "violin", true, null))
+                .withInstrument("11", null)
+                .withInstrument("3", instrument("3", "guitar", true, null));
+
+        assertEquals(6, changed.getVersion());
+        assertEquals(List.of("2", "3", "9", "10", "12"), idsOf(changed.getAll()));
+        assertEquals(List.of("3", "9", "10", "12"), idsOf(changed.getAvailable()));
+        assertEquals(List.of(), changed.getByName("drums"));
+        assertNull(changed.getById("11"));
+        assertEquals("violin", changed.getById("12").getName());
+    }
+
+    @Test
+    void movesAnInstrumentWhoseNameChanged() {
+        CatalogSnapshot changed = snapshot.withInstrument("10", instrument("10", "organ", true, null));
+
+        assertEquals(List.of("11", "2", "9", "10"), idsOf(changed.getAll()));
+        assertEquals(List.of(), changed.getByName("piano"));
+        assertEquals(List.of("10"), idsOf(changed.getByName("organ")));
+    }
+
+    @Test
+    void findsEveryInstrumentOfALargeCatalogAfterChanges() {
+        List<RentalInstrument> instruments = new ArrayList<>();
+        IntStream.range(0, 1000).forEach(i ->
+                instruments.add(instrument(String.valueOf(i), "type" + i % 7, i % 3 != 0, null)));
+        CatalogSnapshot large = CatalogSnapshot.of(0, instruments);
+
+        for (int i = 0; i < 1000; i += 10) {
+            large = large.withInstrument(String.valueOf(i), instrument(String.valueOf(i), "type" + i % 7, false, "s"));
+        }
+
+        List<RentalInstrumentDTO> expected = new ArrayList<>();
+        for (RentalInstrument instrument : instruments) {
+            int id = Integer.parseInt(instrument.getId());
+            expected.add(id % 10 == 0 ? large.getById(instrument.getId()) : instrument);
+            assertEquals(id % 10 == 0 ? "s" : null, large.getById(instrument.getId()).getStudent_id());
+        }
+        expected.sort(CatalogSnapshot.CATALOG_ORDER);
+        assertEquals(expected, large.getAll());
+        assertEquals(expected.stream().filter(RentalInstrumentDTO::isAvailable).count(), large.getAvailable().size());
+    }
+
+    private static RentalInstrument instrument(String id, String name, boolean available, String studentId) {
+        return new RentalInstrument(id, "Yamaha", name, "string", available, 100, "good", 1, null, studentId);
+    }
+
+    private static List<String> idsOf(List<? extends RentalInstrumentDTO> instruments) {
+        List<String> ids = new ArrayList<>();
+        for (RentalInstrumentDTO instrument : instruments) ids.add(instrument.getId());
+        return ids;
+    }
+}
@@ -0,0 +1,73 @@
+package se.kth.iv1351.db.soundgood.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ColumnarCatalogTest {
+
+    private static final Timestamp RETURN_DATE = Timestamp.valueOf("2026-01-15 12:00:00");
+
+    private final List<RentalInstrument> instruments = List.of(
+            new RentalInstrument("1", "Yamaha", "guitar", "string", true, 100, "good", 11, null, null),
+            new RentalInstrument("2", "Fender", "guitar", "string", false, 250, "Good", 12, RETURN_DATE, "s1"),
+            new RentalInstrument("3", "Steinway", "piano", "keyboard", true, 400, "excellent", 13, null, null),
+            new RentalInstrument("4", "Roland", "piano", "keyboard", true, 300, "fair", 14, null, null),
+            new RentalInstrument("x-5", "Pearl", "drums", null, true, 200, null, 15, null, null));
+
+    private final ColumnarCatalog catalog = new ColumnarCatalog(instruments);
+
+    @Test
+    void filtersLikeTheObjectFilter() {
+        List<CatalogFilter> filters = List.of(
+                new CatalogFilter(null, false, null, null, null),
+                new CatalogFilter("guitar", false, null, null, null),
+                new CatalogFilter("piano", true, null, 300.0, null),
+                new CatalogFilter(null, false, 150.0, 300.0, null),
+                new CatalogFilter(null, false, null, null, "GOOD"),
+                new CatalogFilter("guitar", true, null, null, "good"),
+                new CatalogFilter("violin", false, null, null, null),
+                new CatalogFilter(null, false, null, null, "poor"));
+
+        for (CatalogFilter filter : filters) {
+            List<String> expected = new ArrayList<>();
+            for (RentalInstrument instrument : instruments) {
+                if (filter.matches(instrument)) expected.add(instrument.getId());
+            }
+            assertEquals(expected, idsOf(catalog.filter(filter)));
+            assertEquals(expected.size(), catalog.count(filter));
+        }
+    }
+
+    @Test
+    void matchesConditionsWithoutRegardToCase() {
+        assertEquals(List.of("1", "2"), idsOf(catalog.filter(new CatalogFilter(null, false, null, null, "gOOd"))));
+    }
+
+    @Test
+    void keepsEveryFieldOfTheInstruments() {
+        List<RentalInstrumentDTO> all = catalog.filter(new CatalogFilter(null, false, null, null, null));
+
+        for (int i = 0; i < instruments.size(); i++) {
+            assertEquals(instruments.get(i).toString(), all.get(i).toString());
+            assertEquals(instruments.get(i).getType(), all.get(i).getType());
+            assertEquals(instruments.get(i).getInstrument_id(), all.get(i).getInstrument_id());
+            assertEquals(instruments.get(i).getStudent_id(), all.get(i).getStudent_id());
+        }
+        assertEquals(RETURN_DATE, all.get(1).getReturnDate());
+        assertEquals("x-5", all.get(4).getId());
+        assertNull(all.get(4).getType());
+        assertNull(all.get(4).getCondition());
+    }
+
+    private static List<String> idsOf(List<? extends RentalInstrumentDTO> instruments) {
+        List<String> ids = new ArrayList<>();
+        for (RentalInstrumentDTO instrument : instruments) ids.add(instrument.getId());
+        return ids;
+    }
+}
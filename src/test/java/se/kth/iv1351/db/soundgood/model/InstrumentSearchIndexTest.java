@@ -0,0 +1,75 @@
+package se.kth.iv1351.db.soundgood.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InstrumentSearchIndexTest {
+
+    private final InstrumentSearchIndex index = new InstrumentSearchIndex(List.of(
+            instrument("1", "guitar", "Yamaha", "good", true),
+            instrument("2", "guitar", "Fender", "excellent", false),
+            instrument("3", "bass guitar", "Yamaha", "fair", true),
+            instrument("4", "piano", "Yamaha", "good", true),
+            instrument("5", "drums", "Pearl", "excellent", true)));
+
+    @Test
+    void matchesWordsPrefixesAndMisspellings() {
+        assertEquals(List.of("3", "1", "2"), idsOf(index.search("guitar", false, 10)));
+        assertEquals(List.of("3", "1", "2"), idsOf(index.search("guit", false, 10)));
+        assertEquals(List.of("3", "1", "2"), idsOf(index.search("gutiar", false, 10)));
+        assertEquals(List.of(), idsOf(index.search("violin", false, 10)));
+        assertEquals(List.of(), idsOf(index.search("gi", false, 10)));
+    }
+
+    @Test
+    void ranksBetterMatchesOfMoreWordsFirst() {
+        assertEquals(List.of("2", "3", "1", "5"), idsOf(index.search("guitar excel", false, 10)));
+        assertEquals(List.of("3", "1", "4", "2"), idsOf(index.search("yamaha gutiar", false, 10)));
+        assertEquals(List.of("1", "4"), idsOf(index.search("yamaha good", false, 2)));
+    }
+
+    @Test
+    void returnsOnlyAvailableInstrumentsIfAsked() {
+        assertEquals(List.of("3", "1"), idsOf(index.search("guitar", true, 10)));
+        assertEquals(List.of("3"), idsOf(index.search("guitar", true, 1)));
+    }
+
+    @Test
+    void findsChangedInstrumentsAndNewValues() {
+        index.update("2", instrument("2", "guitar", "Fender", "excellent", true));
+        index.update("6", instrument("6", "violin", "Stentor", "good", true));
+        index.update("5", null);
+
+        assertEquals(List.of("3", "1", "2"), idsOf(index.search("guitar", true, 10)));
+        assertEquals(List.of("6"), idsOf(index.search("violn", false, 10)));
+        assertEquals(List.of(), idsOf(index.search("pearl drums", false, 10)));
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    void forgetsValuesThatAreNoLongerUsed() {
+        index.update("5", instrument("5", "drums", "Ludwig", "excellent", true));
+        assertEquals(List.of(), idsOf(index.search("pearl", false, 10)));
+
+        index.rebuild(List.of(instrument("7", "flute", "Pearl", "good", true)));
+        assertEquals(List.of("7"), idsOf(index.search("pearl", false, 10)));
+        assertEquals(List.of(), idsOf(index.search("guitar", false, 10)));
+        assertEquals(1, index.size());
+    }
+
+    private static RentalInstrument instrument(String id, String name, String brand, String condition,
+                                               boolean available) {
+        return new RentalInstrument(id, brand, name, "string", available, 100, condition, 1, null,
+                available ? null : "s1");
+    }
+
+    private static List<String> idsOf(List<? extends RentalInstrumentDTO> instruments) {
+        List<String> ids = new ArrayList<>();
+        for (RentalInstrumentDTO instrument : instruments) ids.add(instrument.getId());
+        return ids;
+    }
+}
@@ -0,0 +1,75 @@
+package se.kth.iv1351.db.soundgood.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class RentalCountersTest {
+
+    private final RentalCounters counters = new RentalCounters(Map.of("s1", 1, "s2", 2));
+
+    @Test
+    void countsFinishedChanges() {
+        counters.beginChange("s1");
+        assertEquals(1, counters.get("s1"));
+        counters.endChange("s1", 1);
+        counters.beginChange("s3");
+        counters.endChange("s3", 1);
+        counters.beginChange("s2");
+        counters.endChange("s2", 0);
+
+        assertEquals(2, counters.get("s1"));
+        assertEquals(2, counters.get("s2"));
+        assertEquals(1, counters.get("s3"));
+        assertEquals(0, counters.get("s4"));
+        assertEquals(0, counters.get(null));
+    }
+
+    @Test
+    void correctsCountersThatDrifted() {
+        long readAfter = counters.getSequence();
+        RentalCountDrift drift = counters.reconcile(Map.of("s1", 1, "s2", 1, "s3", 2), readAfter);
+
+        assertEquals(3, drift.getStudentsChecked());
+        assertEquals(0, drift.getStudentsSkipped());
+        assertEquals(2, drift.getStudentsDrifted());
+        assertEquals(3, drift.getTotalDrift());
+        assertEquals(List.of("s2: 2 -> 1", "s3: 0 -> 2"), drift.getExamples().stream().sorted().toList());
+        assertEquals(1, counters.get("s2"));
+        assertEquals(2, counters.get("s3"));
+    }
+
+    @Test
+    void skipsStudentsWithAChangeInProgress() {
+        counters.beginChange("s1");
+        RentalCountDrift drift = counters.reconcile(Map.of("s1", 0, "s2", 2), counters.getSequence());
+
+        assertEquals(1, drift.getStudentsSkipped());
+        assertFalse(drift.hasDrift());
+        assertEquals(1, counters.get("s1"));
+
+        counters.endChange("s1", 1);
+        assertEquals(2, counters.get("s1"));
+    }
+
+    @Test
+    void skipsStudentsChangedAfterTheCountsWereRead() {
+        long readAfter = counters.getSequence();
+        counters.beginChange("s2");
+        counters.endChange("s2", -1);
+
+        RentalCountDrift drift = counters.reconcile(Map.of("s1", 1, "s2", 2), readAfter);
+
+        assertEquals(1, drift.getStudentsSkipped());
+        assertFalse(drift.hasDrift());
+        assertEquals(1, counters.get("s2"));
+
+        drift = counters.reconcile(Map.of("s1", 1, "s2", 3), counters.getSequence());
+        assertEquals(0, drift.getStudentsSkipped());
+        assertEquals(3, counters.get("s2"));
+    }
+}
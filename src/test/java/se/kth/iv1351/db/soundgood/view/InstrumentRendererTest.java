@@ -0,0 +1,68 @@
+package se.kth.iv1351.db.soundgood.view;
+
+import org.junit.jupiter.api.Test;
+import se.kth.iv1351.db.soundgood.model.RentalInstrument;
+
+import java.io.StringWriter;
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InstrumentRendererTest {
+
+    private static final RentalInstrument PLAIN =
+            new RentalInstrument("1", "Yamaha", "guitar", "string", true, 100.0, "good", 11, null, null);
+    private static final RentalInstrument SPECIAL =
+            new RentalInstrument("2", "Fender, \"Pro\"", "bass\nguitar", "string", false, 250.5, "back\\slash\t",
+                    12, Timestamp.valueOf("2026-01-15 12:00:00"), "s1");
+
+    private final StringWriter written = new StringWriter();
+    private final InstrumentRenderer renderer = new InstrumentRenderer(written);
+
+    @Test
+    void quotesCsvValuesWithSeparatorsQuotesOrLineBreaks() {
+        assertEquals(2, render(InstrumentRenderer.Format.CSV, PLAIN, SPECIAL));
+
+        assertEquals("id,name,brand,condition,monthly_cost,available,return_date,student_id\n"
+                        + "1,guitar,Yamaha,good,100.0,true,,\n"
+                        + "2,\"bass\nguitar\",\"Fender, \"\"Pro\"\"\",back\\slash\t,250.5,false,2026-01-15 12:00:00.0,s1\n",
+                written.toString());
+    }
+
+    @Test
+    void escapesJsonStringsAndControlCharacters() {
+        render(InstrumentRenderer.Format.JSON, PLAIN, SPECIAL);
+
+        assertEquals("{\"id\":\"1\",\"name\":\"guitar\",\"brand\":\"Yamaha\",\"condition\":\"good\","
+                        + "\"monthly_cost\":100.0,\"available\":true,\"return_date\":null,\"student_id\":null}\n"
+                        + "{\"id\":\"2\",\"name\":\"bass\\u000aguitar\",\"brand\":\"Fender, \\\"Pro\\\"\","
+                        + "\"condition\":\"back\\\\slash\\u0009\",\"monthly_cost\":250.5,\"available\":false,"
+                        + "\"return_date\":\"2026-01-15 12:00:00.0\",\"student_id\":\"s1\"}\n",
+                written.toString());
+    }
+
+    @Test
+    void describesInstrumentsAsToStringInTextFormat() {
+        render(InstrumentRenderer.Format.TEXT, PLAIN, SPECIAL);
+
+        assertEquals(PLAIN + "\n" + SPECIAL + "\n", written.toString());
+    }
+
+    @Test
+    void startsEachListingWithItsOwnHeader() {
+        render(InstrumentRenderer.Format.CSV, PLAIN);
+        render(InstrumentRenderer.Format.TEXT);
+        render(InstrumentRenderer.Format.CSV, PLAIN);
+
+        String listing = "id,name,brand,condition,monthly_cost,available,return_date,student_id\n"
+                + "1,guitar,Yamaha,good,100.0,true,,\n";
+        assertEquals(listing + listing, written.toString());
+    }
+
+    private int render(InstrumentRenderer.Format format, RentalInstrument... instruments) {
+        renderer.begin(format);
+        for (RentalInstrument instrument : List.of(instruments)) renderer.render(instrument);
+        return renderer.finish();
+    }
+}
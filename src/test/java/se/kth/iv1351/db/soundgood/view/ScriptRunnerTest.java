@@ -0,0 +1,75 @@
+package se.kth.iv1351.db.soundgood.view;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The scripts only use commands that are answered without the controller, an
+ * unknown listing format and illegal commands, so no database is needed.
+ */
+class ScriptRunnerTest {
+
+    private static final int COMMANDS = 400;
+
+    @Test
+    void printsTheOutputOfEachCommandInScriptOrder() throws IOException {
+        StringBuilder script = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < COMMANDS; i++) {
+            if (i % 3 == 0) {
+                script.append("bogus").append(i).append('\n');
+                expected.add("illegal command");
+            } else {
+                script.append("list format f").append(i).append('\n');
+                expected.add("Unknown format f" + i + ", use text, table, csv or json");
+            }
+            if (i % 50 == 0) {
+                script.append("# comment ").append(i).append("\n\n");
+            }
+        }
+        script.append("quit\nlist format after-quit\n");
+
+        for (int parallelism : new int[] {1, 2, 8}) {
+            List<String> lines = run(script.toString(), parallelism, (COMMANDS + 2) / 3);
+
+            assertEquals(expected, lines.subList(0, COMMANDS), "parallelism " + parallelism);
+            assertTrue(lines.get(COMMANDS).startsWith(COMMANDS + " commands, " + (COMMANDS + 2) / 3 + " failed"),
+                    lines.get(COMMANDS));
+        }
+    }
+
+    @Test
+    void summarizesAnEmptyScript() throws IOException {
+        List<String> lines = run("# nothing\n\n", 4, 0);
+
+        assertTrue(lines.get(0).startsWith("0 commands, 0 failed"), lines.get(0));
+        assertEquals(2, lines.size());
+    }
+
+    @Test
+    void rejectsAParallelismBelowOne() {
+        assertThrows(IllegalArgumentException.class, () -> new ScriptRunner(null, System.out, 0));
+    }
+
+    private static List<String> run(String script, int parallelism, long expectedFailures) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true);
+
+        long failures = new ScriptRunner(null, out, parallelism).run(new BufferedReader(new StringReader(script)));
+
+        assertEquals(expectedFailures, failures);
+        return Arrays.asList(output.toString().split(System.lineSeparator()));
+    }
+}